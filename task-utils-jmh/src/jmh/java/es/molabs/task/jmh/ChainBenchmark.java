@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import es.molabs.task.Task;
+import es.molabs.task.base.SequenceTask;
+import es.molabs.task.base.SingleThreadTaskExecutor;
+import es.molabs.task.run.MaxRunTask;
+
+/**
+ * Cost of moving through the steps of a SequenceTask and through a getNext chain.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChainBenchmark 
+{
+	private static final int STEPS = 100;
+	
+	private SequenceTask sequence = null;
+	
+	private SingleThreadTaskExecutor taskExecutor = null;
+	private StepTask[] chain = null;
+	
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		Task[] steps = new Task[STEPS];
+		for (int i=0; i<STEPS; i++)
+		{
+			steps[i] = new StepTask();
+		}
+		
+		sequence = new SequenceTask(Integer.MAX_VALUE, steps);
+		
+		taskExecutor = new SingleThreadTaskExecutor();
+		
+		chain = new StepTask[STEPS];
+		for (int i=STEPS-1; i>=0; i--)
+		{
+			chain[i] = new StepTask();
+			
+			if (i < STEPS - 1) chain[i].setNext(chain[i + 1]);
+		}
+	}
+	
+	/**
+	 * One step of the sequence.
+	 */
+	@Benchmark
+	public void sequenceStep()
+	{
+		sequence.execute(0.016f);
+	}
+	
+	/**
+	 * A whole chain of tasks that finish in one execution, ticking till the executor is empty.
+	 * 
+	 * @return the amount of ticks.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int chain()
+	{
+		for (int i=0; i<STEPS; i++)
+		{
+			chain[i].reset();
+		}
+		
+		taskExecutor.add(chain[0]);
+		
+		int ticks = 0;
+		while (taskExecutor.size() > 0)
+		{
+			taskExecutor.execute(0.016f);
+			
+			ticks++;
+		}
+		
+		return ticks;
+	}
+	
+	static class StepTask extends MaxRunTask
+	{
+		StepTask()
+		{
+			super(1);
+		}
+		
+		protected void doProcess() 
+		{
+		}
+	}
+}
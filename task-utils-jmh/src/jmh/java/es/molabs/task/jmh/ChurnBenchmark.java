@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import es.molabs.task.base.DenseTaskExecutor;
+import es.molabs.task.base.SingleThreadTaskExecutor;
+
+/**
+ * Time of adding and removing a task from an executor that already has some tasks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChurnBenchmark 
+{
+	@Param({"1000", "100000"})
+	private int tasks;
+	
+	private SingleThreadTaskExecutor singleExecutor = null;
+	private DenseTaskExecutor denseExecutor = null;
+	
+	private ExecutorBenchmark.IdleTask task = null;
+	
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		singleExecutor = new SingleThreadTaskExecutor();
+		denseExecutor = new DenseTaskExecutor();
+		
+		for (int i=0; i<tasks; i++)
+		{
+			singleExecutor.add(new ExecutorBenchmark.IdleTask());
+			denseExecutor.add(new ExecutorBenchmark.IdleTask());
+		}
+		
+		task = new ExecutorBenchmark.IdleTask();
+	}
+	
+	@Benchmark
+	public void single()
+	{
+		singleExecutor.add(task);
+		singleExecutor.remove(task);
+	}
+	
+	@Benchmark
+	public void denseByTask()
+	{
+		denseExecutor.add(task);
+		denseExecutor.remove(task);
+	}
+	
+	@Benchmark
+	public void denseByHandle()
+	{
+		denseExecutor.removeTask(denseExecutor.addTask(task));
+	}
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import es.molabs.task.time.precise.PreciseRepeatTimeTask;
+import es.molabs.task.time.precise.PreciseTimeTask;
+import es.molabs.task.time.simple.SimpleRepeatTimeTask;
+import es.molabs.task.time.simple.SimpleTimeTask;
+
+/**
+ * Cost of one execution of the time tasks compared with the clock read they are built on.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimeTaskBenchmark 
+{
+	private PreciseTimeTask preciseTask = null;
+	private PreciseRepeatTimeTask preciseRepeatTask = null;
+	private SimpleTimeTask simpleTask = null;
+	private SimpleRepeatTimeTask simpleRepeatTask = null;
+	
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		preciseTask = new PreciseTimeTask()
+		{
+			protected void doProcess(float delta)
+			{
+			}
+		};
+		
+		preciseRepeatTask = new PreciseRepeatTimeTask(3600f)
+		{
+			protected void doProcess(float delta)
+			{
+			}
+		};
+		
+		simpleTask = new SimpleTimeTask()
+		{
+			protected void doProcess(float delta)
+			{
+			}
+		};
+		
+		simpleRepeatTask = new SimpleRepeatTimeTask(3600f)
+		{
+			protected void doProcess(float delta)
+			{
+			}
+		};
+	}
+	
+	@Benchmark
+	public long nanoTime()
+	{
+		return System.nanoTime();
+	}
+	
+	@Benchmark
+	public void preciseTimeTask()
+	{
+		preciseTask.execute(0.016f);
+	}
+	
+	@Benchmark
+	public void preciseRepeatTimeTask()
+	{
+		preciseRepeatTask.execute(0.016f);
+	}
+	
+	@Benchmark
+	public void simpleTimeTask()
+	{
+		simpleTask.execute(0.016f);
+	}
+	
+	@Benchmark
+	public void simpleRepeatTimeTask()
+	{
+		simpleRepeatTask.execute(0.016f);
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import es.molabs.task.TaskExecutor;
+import es.molabs.task.base.SingleThreadTaskExecutor;
+import es.molabs.task.time.TimingWheelTaskExecutor;
+import es.molabs.task.time.precise.PreciseRepeatTimeTask;
+
+/**
+ * Time of one tick of an executor full of repeat time tasks that are waiting.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TimerExecutorBenchmark 
+{
+	@Param({"100000"})
+	private int tasks;
+	
+	@Param({"single", "wheel"})
+	private String executor;
+	
+	private TaskExecutor taskExecutor = null;
+	
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		taskExecutor = (executor.equals("wheel") ? new TimingWheelTaskExecutor() : new SingleThreadTaskExecutor());
+		
+		for (int i=0; i<tasks; i++)
+		{
+			taskExecutor.add(new PreciseRepeatTimeTask(3600f, 3600f)
+			{
+				protected void doProcess(float delta)
+				{
+				}
+			});
+		}
+		
+		// First tick, where every task starts counting its time
+		taskExecutor.execute(0.016f);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		taskExecutor.clear();
+	}
+	
+	@Benchmark
+	public void tick()
+	{
+		taskExecutor.execute(0.016f);
+	}
+}
@@ -15,6 +15,8 @@
  */
 package es.molabs.task;
 
+import es.molabs.task.error.ErrorPolicy;
+
 public interface Task 
 {
 	public void execute(float delta);
@@ -47,4 +49,22 @@ public interface Task
 	 * @return task to execute after this one is finished.
 	 */
 	public Task getNext();
+	
+	/**
+	 * Sets the time source the task should read the time from. It is called by the executors when the task is added.
+	 * 
+	 * @param timeSource to read the time from.
+	 */
+	public default void setTimeSource(TimeSource timeSource)
+	{
+	}
+	
+	/**
+	 * Sets the policy that handles the errors of the task. It is called by the executors that have one when the task is added.
+	 * 
+	 * @param errorPolicy that handles the errors of the task.
+	 */
+	public default void setErrorPolicy(ErrorPolicy errorPolicy)
+	{
+	}
 }
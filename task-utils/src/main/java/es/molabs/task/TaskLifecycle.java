@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task;
+
+/**
+ * Codes of the lifecycle events of a task, shared by the journal and the event publisher.
+ */
+public final class TaskLifecycle 
+{
+	public static final int ADDED = 1;
+	public static final int EXECUTED = 2;
+	public static final int FAILED = 3;
+	public static final int REMOVED = 4;
+	
+	private TaskLifecycle()
+	{
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the loggers by task class, shared by the tasks and the error policies, so a logger is looked up once 
+ * for each class.
+ */
+public final class TaskLoggers 
+{
+	private static final ClassValue<Logger> LOGGERS = new ClassValue<Logger>()
+	{
+		protected Logger computeValue(Class<?> type)
+		{
+			return LoggerFactory.getLogger(type);
+		}
+	};
+	
+	private TaskLoggers()
+	{
+	}
+	
+	/**
+	 * Returns the logger of a class.
+	 * 
+	 * @param type of the task.
+	 * 
+	 * @return the logger of the class.
+	 */
+	public static Logger get(Class<?> type)
+	{
+		return LOGGERS.get(type);
+	}
+}
@@ -0,0 +1,348 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task;
+
+import es.molabs.task.base.ParallelGroupTask;
+import es.molabs.task.base.SequenceTask;
+import es.molabs.task.run.MaxRunTask;
+import es.molabs.task.run.SingleRunTask;
+import es.molabs.task.time.precise.PreciseRepeatTimeTask;
+import es.molabs.task.time.precise.PreciseWaitTimeTask;
+
+/**
+ * Factory of the common tasks from an action, so they do not need a subclass. 
+ * 
+ * The tasks built are small final classes that only add the action to the fields of the task they extend, 
+ * and share the logger of their class. The actions that do not need the delta are run directly as a Runnable.
+ */
+public final class Tasks 
+{
+	private Tasks()
+	{
+	}
+	
+	/**
+	 * Returns a task that runs an action every period, starting at the first execution.
+	 * 
+	 * @param period in seconds.
+	 * @param action to run.
+	 * 
+	 * @return the task.
+	 */
+	public static PreciseRepeatTimeTask every(float period, Runnable action)
+	{
+		return new RunnableRepeatTask(0f, period, action);
+	}
+	
+	/**
+	 * Returns a task that runs an action every period, starting at the first execution.
+	 * 
+	 * @param period in seconds.
+	 * @param action to run, it receives the time passed since its last run.
+	 * 
+	 * @return the task.
+	 */
+	public static PreciseRepeatTimeTask every(float period, TaskAction action)
+	{
+		return every(0f, period, action);
+	}
+	
+	/**
+	 * Returns a task that runs an action every period once the delay has passed.
+	 * 
+	 * @param delay in seconds.
+	 * @param period in seconds.
+	 * @param action to run.
+	 * 
+	 * @return the task.
+	 */
+	public static PreciseRepeatTimeTask every(float delay, float period, Runnable action)
+	{
+		return new RunnableRepeatTask(delay, period, action);
+	}
+	
+	/**
+	 * Returns a task that runs an action every period once the delay has passed.
+	 * 
+	 * @param delay in seconds.
+	 * @param period in seconds.
+	 * @param action to run, it receives the time passed since its last run.
+	 * 
+	 * @return the task.
+	 */
+	public static PreciseRepeatTimeTask every(float delay, float period, TaskAction action)
+	{
+		return new RepeatTask(delay, period, action);
+	}
+	
+	/**
+	 * Returns a task that runs an action once after a time.
+	 * 
+	 * @param time to wait in seconds.
+	 * @param action to run.
+	 * 
+	 * @return the task.
+	 */
+	public static PreciseWaitTimeTask after(float time, Runnable action)
+	{
+		return new RunnableWaitTask(time, action);
+	}
+	
+	/**
+	 * Returns a task that runs an action once after a time.
+	 * 
+	 * @param time to wait in seconds.
+	 * @param action to run, it receives the time passed since the last execution of the task.
+	 * 
+	 * @return the task.
+	 */
+	public static PreciseWaitTimeTask after(float time, TaskAction action)
+	{
+		return new WaitTask(time, action);
+	}
+	
+	/**
+	 * Returns a task that runs an action in its first executions.
+	 * 
+	 * @param times to run the action.
+	 * @param action to run.
+	 * 
+	 * @return the task.
+	 */
+	public static MaxRunTask times(int times, Runnable action)
+	{
+		return new RunnableTimesTask(times, action);
+	}
+	
+	/**
+	 * Returns a task that runs an action in its first executions.
+	 * 
+	 * @param times to run the action.
+	 * @param action to run, it receives the delta of the execution.
+	 * 
+	 * @return the task.
+	 */
+	public static MaxRunTask times(int times, TaskAction action)
+	{
+		return new TimesTask(times, action);
+	}
+	
+	/**
+	 * Returns a task that runs an action in its first execution.
+	 * 
+	 * @param action to run.
+	 * 
+	 * @return the task.
+	 */
+	public static SingleRunTask once(Runnable action)
+	{
+		return new RunnableOnceTask(action);
+	}
+	
+	/**
+	 * Returns a task that runs an action in its first execution.
+	 * 
+	 * @param action to run, it receives the delta of the execution.
+	 * 
+	 * @return the task.
+	 */
+	public static SingleRunTask once(TaskAction action)
+	{
+		return new OnceTask(action);
+	}
+	
+	/**
+	 * Returns a task that runs some tasks one after the other.
+	 * 
+	 * @param tasks to run.
+	 * 
+	 * @return the task.
+	 */
+	public static SequenceTask sequence(Task...tasks)
+	{
+		return new SequenceTask(tasks);
+	}
+	
+	/**
+	 * Returns a task that runs some tasks one after the other a number of times.
+	 * 
+	 * @param times to run the sequence.
+	 * @param tasks to run.
+	 * 
+	 * @return the task.
+	 */
+	public static SequenceTask sequence(int times, Task...tasks)
+	{
+		return new SequenceTask(times, tasks);
+	}
+	
+	/**
+	 * Returns a task that runs some tasks together and finishes when all of them have finished.
+	 * 
+	 * @param tasks to run.
+	 * 
+	 * @return the task.
+	 */
+	public static ParallelGroupTask parallel(Task...tasks)
+	{
+		return new ParallelGroupTask(tasks);
+	}
+	
+	private static final class RepeatTask extends PreciseRepeatTimeTask
+	{
+		private final TaskAction action;
+		
+		private RepeatTask(float delay, float period, TaskAction action)
+		{
+			super(delay, period);
+			
+			this.action = action;
+		}
+		
+		protected void doProcess(float delta)
+		{
+			action.run(delta);
+		}
+	}
+	
+	private static final class WaitTask extends PreciseWaitTimeTask
+	{
+		private final TaskAction action;
+		
+		private WaitTask(float time, TaskAction action)
+		{
+			super(time);
+			
+			this.action = action;
+		}
+		
+		protected void doProcess(float delta)
+		{
+			action.run(delta);
+		}
+	}
+	
+	private static final class TimesTask extends MaxRunTask
+	{
+		private final TaskAction action;
+		private float delta;
+		
+		private TimesTask(int times, TaskAction action)
+		{
+			super(times);
+			
+			this.action = action;
+		}
+		
+		protected void doExecute(float delta)
+		{
+			// Keeps the delta for doProcess
+			this.delta = delta;
+			
+			super.doExecute(delta);
+		}
+		
+		protected void doProcess()
+		{
+			action.run(delta);
+		}
+	}
+	
+	private static final class OnceTask extends SingleRunTask
+	{
+		private final TaskAction action;
+		
+		private OnceTask(TaskAction action)
+		{
+			this.action = action;
+		}
+		
+		protected void doExecute(float delta)
+		{
+			action.run(delta);
+		}
+		
+		protected void doProcess()
+		{
+		}
+	}
+	
+	private static final class RunnableRepeatTask extends PreciseRepeatTimeTask
+	{
+		private final Runnable action;
+		
+		private RunnableRepeatTask(float delay, float period, Runnable action)
+		{
+			super(delay, period);
+			
+			this.action = action;
+		}
+		
+		protected void doProcess(float delta)
+		{
+			action.run();
+		}
+	}
+	
+	private static final class RunnableWaitTask extends PreciseWaitTimeTask
+	{
+		private final Runnable action;
+		
+		private RunnableWaitTask(float time, Runnable action)
+		{
+			super(time);
+			
+			this.action = action;
+		}
+		
+		protected void doProcess(float delta)
+		{
+			action.run();
+		}
+	}
+	
+	private static final class RunnableTimesTask extends MaxRunTask
+	{
+		private final Runnable action;
+		
+		private RunnableTimesTask(int times, Runnable action)
+		{
+			super(times);
+			
+			this.action = action;
+		}
+		
+		protected void doProcess()
+		{
+			action.run();
+		}
+	}
+	
+	private static final class RunnableOnceTask extends SingleRunTask
+	{
+		private final Runnable action;
+		
+		private RunnableOnceTask(Runnable action)
+		{
+			this.action = action;
+		}
+		
+		protected void doProcess()
+		{
+			action.run();
+		}
+	}
+}
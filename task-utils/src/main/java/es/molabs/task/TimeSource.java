@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task;
+
+/**
+ * Source of the time used by the tasks and the executors.
+ */
+public interface TimeSource 
+{
+	/**
+	 * Time source that reads System.nanoTime.
+	 */
+	public static final TimeSource SYSTEM = new TimeSource()
+	{
+		public long nanoTime()
+		{
+			return System.nanoTime();
+		}
+	};
+	
+	/**
+	 * Returns the current time. Like System.nanoTime it is only meaningful to measure elapsed time.
+	 * 
+	 * @return the current time in nanoseconds.
+	 */
+	public long nanoTime();
+}
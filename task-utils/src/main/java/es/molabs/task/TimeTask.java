@@ -0,0 +1,30 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task;
+
+/**
+ * Task that knows when it will need to be processed again, so the executors can skip it until then.
+ */
+public interface TimeTask extends Task 
+{
+	/**
+	 * Returns the time left till the task needs to be executed again, measured since its last execution.
+	 * Executing the task before that time must be harmless, executing it later will delay it.
+	 * 
+	 * @return time in seconds, 0 if the task should be executed every time.
+	 */
+	public float getTimeToProcess();
+}
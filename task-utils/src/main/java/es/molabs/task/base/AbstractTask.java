@@ -15,18 +15,32 @@
  */
 package es.molabs.task.base;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import es.molabs.task.Task;
+import es.molabs.task.TaskLoggers;
+import es.molabs.task.TimeSource;
+import es.molabs.task.error.ErrorAction;
+import es.molabs.task.error.ErrorPolicy;
 
 public abstract class AbstractTask implements Task
 {
-	private final Logger logger = LoggerFactory.getLogger(getClass());
+	private static final AtomicIntegerFieldUpdater<AbstractTask> JOURNAL_ID = AtomicIntegerFieldUpdater.newUpdater(AbstractTask.class, "journalId");
 
-	private Exception error = null;	
 	private Task next = null;
 	
+	private TimeSource timeSource = TimeSource.SYSTEM;
+	
+	// Created when the task gets another error policy or fails, so the tasks that do not fail do not pay for it
+	private ErrorState errorState = null;
+	
+	private TaskPool<?> pool = null;
+	
+	// Id given by the journals, 0 while it has none
+	private volatile int journalId = 0;
+	
 	protected AbstractTask()
 	{
 		this(null);
@@ -39,11 +53,26 @@ public abstract class AbstractTask implements Task
 	
 	public void reset()
 	{
-		error = null;
+		// If it had an error state
+		if (errorState != null)
+		{
+			// Only keeps it for another error policy
+			if (errorState.policy == ErrorPolicy.LOG)
+			{
+				errorState = null;
+			}
+			else
+			{
+				errorState.reset();
+			}
+		}
 	}
 			
 	public void execute(float delta)
 	{	
+		// If the task was stopped by the error policy
+		if (errorState != null && (errorState.failed || (errorState.paused && !resume()))) return;
+		
 		try
 		{
 			beforeProcess();
@@ -51,12 +80,16 @@ public abstract class AbstractTask implements Task
 			doExecute(delta);
 			
 			afterProcess();
+			
+			if (errorState != null) errorState.errorCount = 0;
 		}
 		catch (Exception e)
 		{
-			error = e;
+			if (errorState == null) errorState = new ErrorState(ErrorPolicy.LOG);
 			
-			logger.error(e.getLocalizedMessage(), e);
+			errorState.error = e;
+			
+			handleError(e);
 			
 			onError(e);
 		}
@@ -72,6 +105,25 @@ public abstract class AbstractTask implements Task
 		this.next = next;
 	}	
 	
+	public void setTimeSource(TimeSource timeSource)
+	{
+		this.timeSource = timeSource;
+	}
+	
+	public void setErrorPolicy(ErrorPolicy errorPolicy)
+	{
+		// If it already has an error state
+		if (errorState != null)
+		{
+			errorState.policy = errorPolicy;
+		}
+		// If it is not the default policy
+		else if (errorPolicy != ErrorPolicy.LOG)
+		{
+			errorState = new ErrorState(errorPolicy);
+		}
+	}
+	
 	public void added()
 	{
 		onCreate();
@@ -89,12 +141,63 @@ public abstract class AbstractTask implements Task
 	 */
 	public Exception getError()
 	{
-		return error;
+		return (errorState != null ? errorState.error : null);
+	}
+	
+	/**
+	 * Returns the amount of consecutive executions that threw an error. 0 if the last execution did not fail.
+	 * 
+	 * @return The amount of consecutive executions that threw an error.
+	 */
+	public int getErrorCount()
+	{
+		return (errorState != null ? errorState.errorCount : 0);
+	}
+	
+	/**
+	 * Returns if the error policy removed this task after it failed. A failed task does nothing when executed,
+	 * the executors remove it without adding its next task.
+	 * 
+	 * @return if the error policy removed this task.
+	 */
+	public boolean isFailed()
+	{
+		return (errorState != null && errorState.failed);
+	}
+	
+	/**
+	 * Returns if the error policy paused this task after it failed.
+	 * 
+	 * @return if the task is paused.
+	 */
+	public boolean isPaused()
+	{
+		return (errorState != null && errorState.paused);
+	}
+	
+	/**
+	 * Returns the time source set by the executor of this task, System.nanoTime if there is none.
+	 * 
+	 * @return the time source of this task.
+	 */
+	protected TimeSource getTimeSource()
+	{
+		return timeSource;
+	}
+	
+	/**
+	 * Returns the error policy set by the executor of this task, ErrorPolicy.LOG if there is none.
+	 * 
+	 * @return the error policy of this task.
+	 */
+	protected ErrorPolicy getErrorPolicy()
+	{
+		return (errorState != null ? errorState.policy : ErrorPolicy.LOG);
 	}
 	
 	protected Logger getLogger()
 	{
-		return logger;
+		return TaskLoggers.get(getClass());
 	}
 	
 	/**
@@ -146,4 +249,146 @@ public abstract class AbstractTask implements Task
 	 * @throws Exception if an error occurs.
 	 */
 	protected abstract void doExecute(float delta) throws Exception;
+	
+	/**
+	 * Returns if a task has to be removed: it is finished or its error policy removed it.
+	 * 
+	 * @param task to check.
+	 * 
+	 * @return if the task has to be removed.
+	 */
+	static boolean isFinished(Task task)
+	{
+		return task.isFinished() || isFailed(task);
+	}
+	
+	/**
+	 * Returns if a task was removed by its error policy, or it is a group that failed because of its tasks.
+	 * 
+	 * @param task to check.
+	 * 
+	 * @return if the task failed.
+	 */
+	static boolean isFailed(Task task)
+	{
+		if (task instanceof AbstractTask) return ((AbstractTask) task).isFailed();
+		
+		return (task instanceof ParallelGroupTask && ((ParallelGroupTask) task).isFailed());
+	}
+	
+	/**
+	 * Returns the last error of a task, or of the task that failed a group.
+	 * 
+	 * @param task to check.
+	 * 
+	 * @return the last error of the task, null if there is none.
+	 */
+	static Exception getError(Task task)
+	{
+		if (task instanceof AbstractTask) return ((AbstractTask) task).getError();
+		
+		return (task instanceof ParallelGroupTask ? ((ParallelGroupTask) task).getError() : null);
+	}
+	
+	/**
+	 * Returns the id the journals gave to this task.
+	 * 
+	 * @return the id of the task, 0 if it has none.
+	 */
+	public int getJournalId()
+	{
+		return journalId;
+	}
+	
+	/**
+	 * Changes the id the journals gave to this task if it is still the expected one.
+	 * 
+	 * @param expected id of the task.
+	 * @param journalId new id of the task, 0 to release it.
+	 * 
+	 * @return if the id was changed.
+	 */
+	public boolean compareAndSetJournalId(int expected, int journalId)
+	{
+		return JOURNAL_ID.compareAndSet(this, expected, journalId);
+	}
+	
+	/**
+	 * Sets the pool where this task is returned once it finishes.
+	 * 
+	 * @param pool of the task.
+	 */
+	void setPool(TaskPool<?> pool)
+	{
+		this.pool = pool;
+	}
+	
+	/**
+	 * Returns this task to its pool, if it has one.
+	 */
+	void recycle()
+	{
+		// If the task is pooled
+		if (pool != null)
+		{
+			pool.release(this);
+		}
+	}
+	
+	private void handleError(Exception e)
+	{
+		// Increases the consecutive errors counter
+		errorState.errorCount++;
+		
+		ErrorAction action = errorState.policy.onError(this, e, errorState.errorCount);
+		
+		// If the task has to be removed
+		if (action.isRemove())
+		{
+			errorState.failed = true;
+		}
+		// If the task has to be paused
+		else if (action.isPause())
+		{
+			errorState.pausedUntil = timeSource.nanoTime() + action.getPauseTime();
+			errorState.paused = true;
+		}
+	}
+	
+	private boolean resume()
+	{
+		// If the pause has ended
+		if (timeSource.nanoTime() - errorState.pausedUntil >= 0)
+		{
+			errorState.paused = false;
+		}
+		
+		return !errorState.paused;
+	}
+	
+	private static class ErrorState
+	{
+		private ErrorPolicy policy = null;
+		private Exception error = null;
+		private int errorCount;
+		private long pausedUntil;
+		private boolean paused;
+		private boolean failed;
+		
+		private ErrorState(ErrorPolicy policy)
+		{
+			this.policy = policy;
+			
+			reset();
+		}
+		
+		private void reset()
+		{
+			error = null;
+			errorCount = 0;
+			pausedUntil = 0;
+			paused = false;
+			failed = false;
+		}
+	}
 }
\ No newline at end of file
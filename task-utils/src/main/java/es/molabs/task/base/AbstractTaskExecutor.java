@@ -0,0 +1,862 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import es.molabs.task.Task;
+import es.molabs.task.TaskExecutor;
+import es.molabs.task.TaskLifecycle;
+import es.molabs.task.TimeSource;
+import es.molabs.task.TimeTask;
+import es.molabs.task.error.ErrorPolicy;
+import es.molabs.task.event.TaskEventPublisher;
+import es.molabs.task.journal.TaskJournal;
+import es.molabs.task.metric.TaskMetrics;
+
+/**
+ * Base executor that manages the task storage, the add/remove hooks and the execution time tracking.
+ * Subclasses only have to define how the tasks are run in each call to execute.
+ */
+public abstract class AbstractTaskExecutor implements TaskExecutor
+{
+	private Collection<Task> taskCollection = null;
+	
+	private long lastUpdate;
+	private long lastExecutionTime;
+	
+	private TickTimeSource timeSource = null;
+	
+	private TaskMetrics metrics = null;
+	
+	private TaskJournal journal = null;
+	private TaskEventPublisher eventPublisher = null;
+	
+	private Map<Task, TaskFuture> futureMap = null;
+	private ConcurrentLinkedQueue<TaskFuture> cancelledQueue = null;
+	private ArrayDeque<TaskFuture> removedFutureQueue = null;
+	
+	// Pending task of each key and key of each pending task
+	private Map<Object, Task> keyMap = null;
+	private Map<Task, Object> taskKeyMap = null;
+	
+	private ErrorPolicy errorPolicy = null;
+	
+	private int maxContinuationDepth;
+	private long maxContinuationTime;
+	private int continuationDepth;
+	private long continuationDeadline;
+	private List<Task> continuedList = null;
+	
+	private boolean executing;
+	private float tickDelta;
+	
+	// If tasks were added since the last execution started
+	private volatile boolean tasksAdded;
+	
+	/**
+	 * Creates a new TaskExecutor with the collection implementation parameter as underlying storage. 
+	 * 
+	 * @param collection underlying storage.
+	 */
+	protected AbstractTaskExecutor(Collection<Task> collection)
+	{
+		this.taskCollection = collection;
+		
+		timeSource = new TickTimeSource(TimeSource.SYSTEM);
+		
+		lastUpdate = 0;
+		lastExecutionTime = 0;
+		
+		maxContinuationDepth = 0;
+		maxContinuationTime = 0;
+		continuationDepth = 0;
+		continuedList = new ArrayList<Task>();
+		
+		futureMap = new IdentityHashMap<Task, TaskFuture>();
+		cancelledQueue = new ConcurrentLinkedQueue<TaskFuture>();
+		removedFutureQueue = new ArrayDeque<TaskFuture>();
+		
+		keyMap = new HashMap<Object, Task>();
+		taskKeyMap = new IdentityHashMap<Task, Object>();
+		
+		executing = false;
+		tasksAdded = false;
+	}
+	
+	public void add(Task task)
+	{
+		// Sets up the task
+		prepare(task);
+		
+		// Adds the task to the collection
+		taskCollection.add(task);
+	}
+	
+	/**
+	 * Adds a task with a key. If the key has a pending task, one that was added with the key and was not removed yet, 
+	 * the policy decides which one is kept, so there is at most one task for each key in the executor. Replacing the 
+	 * pending task removes it as remove does. A pending task that already finished, but was not taken out of the 
+	 * executor yet, is not taken into account.
+	 * 
+	 * @param key of the task.
+	 * @param task to add.
+	 * @param policy that decides which task is kept when the key has a pending task.
+	 * 
+	 * @return the pending task of the key after adding.
+	 */
+	public Task add(Object key, Task task, CoalescePolicy policy)
+	{
+		Task pending = keyMap.get(key);
+		
+		// If the pending task finished it only waits to be taken out, so the key is free
+		if (pending != null && isFinished(pending))
+		{
+			keyMap.remove(key);
+			taskKeyMap.remove(pending);
+			
+			pending = null;
+		}
+		
+		Task kept = (pending != null ? policy.coalesce(pending, task) : task);
+		
+		// If the pending task is not kept
+		if (kept != pending)
+		{
+			if (pending != null) remove(pending);
+			
+			keyMap.put(key, kept);
+			taskKeyMap.put(kept, key);
+			
+			try
+			{
+				add(kept);
+			}
+			catch (RuntimeException re)
+			{
+				keyMap.remove(key);
+				taskKeyMap.remove(kept);
+				
+				throw re;
+			}
+		}
+		
+		return kept;
+	}
+	
+	/**
+	 * Returns the pending task of a key.
+	 * 
+	 * @param key of the task.
+	 * 
+	 * @return the pending task of the key, null if there is none or it already finished.
+	 */
+	public Task getPending(Object key)
+	{
+		Task task = keyMap.get(key);
+		
+		return (task != null && !isFinished(task) ? task : null);
+	}
+	
+	/**
+	 * Adds a task to the executor and returns a future that completes with the task when the executor removes it 
+	 * finished. If its error policy removes it, the future completes exceptionally with the error of the task, and if 
+	 * it is removed before finishing the future is cancelled. Cancelling the future, from any thread, removes the task 
+	 * in the next execution. The future completes on the executor thread, so its dependent actions run there unless 
+	 * they are async. It is completed once the task was disposed, at the end of the execution if it was removed while
+	 * executing. A pooled task is taken out of its pool when submitted, so the task the future completes with is not 
+	 * reused.
+	 * 
+	 * Like add, it must be called from the executor thread, as the submitted tasks are tracked in a map that only that
+	 * thread uses. To submit tasks from other threads use a StagedTaskExecutor, which applies the call on the executor 
+	 * thread.
+	 * 
+	 * @param task to add.
+	 * @return the future of the task.
+	 */
+	public CompletableFuture<Task> submit(Task task)
+	{
+		TaskFuture future = new TaskFuture(task);
+		
+		// If it is a pooled task it is no longer returned to the pool
+		if (task instanceof AbstractTask)
+		{
+			((AbstractTask) task).setPool(null);
+		}
+		
+		futureMap.put(task, future);
+		
+		try
+		{
+			add(task);
+		}
+		catch (RuntimeException re)
+		{
+			futureMap.remove(task);
+			
+			throw re;
+		}
+		
+		return future;
+	}
+	
+	public void remove(Task task)
+	{
+		// Calls the task executor task removed hook
+		removed(task);
+		
+		// Removes the task from the collection
+		taskCollection.remove(task);
+		
+		// If the task was continued in this execution it is not stored yet
+		for (int i=0; i<continuedList.size(); i++)
+		{
+			if (continuedList.get(i) == task)
+			{
+				continuedList.remove(i);
+				
+				break;
+			}
+		}
+		
+		afterRemove(task);
+		
+		// Calls the task removed hook
+		task.removed();
+		
+		completeFutures();
+	}	
+	
+	public void execute()
+	{
+		// Samples the time of the tick
+		long startTime = timeSource.update();
+		
+		long timeSinceLastUpdate = (lastUpdate > 0 ? startTime - lastUpdate : 0);
+		
+		execute(startTime, (timeSinceLastUpdate + lastExecutionTime) / 1_000_000_000f);
+	}
+	
+	public void execute(float delta)
+	{
+		// Samples the time of the tick
+		execute(timeSource.update(), delta);
+	}
+	
+	public void clear() 
+	{
+		// For each task in the collection
+		Iterator<Task> iterator = taskCollection.iterator();
+		while (iterator.hasNext())
+		{	
+			Task task = iterator.next();
+			
+			// Calls the task executor task removed hook
+			removed(task);			
+			
+			// Removes the task from the collection
+			iterator.remove();
+			
+			afterRemove(task);
+			
+			// Calls the task removed hook
+			task.removed();
+		}
+		
+		// For each task continued in this execution that is not stored yet
+		for (int i=0; i<continuedList.size(); i++)
+		{
+			Task task = continuedList.get(i);
+			
+			// Calls the task executor task removed hook
+			removed(task);
+			
+			afterRemove(task);
+			
+			// Calls the task removed hook
+			task.removed();
+		}
+		
+		continuedList.clear();
+		
+		completeFutures();
+	}
+	
+	public int size() 
+	{
+		return taskCollection.size();
+	}
+	
+	/**
+	 * Returns the time left till the first task needs to be executed. Tasks that are not a TimeTask need to be
+	 * executed every time.
+	 * 
+	 * @return time in seconds, 0 if some task should be executed every time, Float.POSITIVE_INFINITY if there are no tasks.
+	 */
+	public float getTimeToProcess()
+	{
+		float timeToProcess = Float.POSITIVE_INFINITY;
+		
+		// For each task in the collection while there is time left
+		Iterator<Task> iterator = taskCollection.iterator();
+		while (iterator.hasNext() && timeToProcess > 0)
+		{
+			Task task = iterator.next();
+			
+			timeToProcess = Math.min(timeToProcess, (task instanceof TimeTask ? ((TimeTask) task).getTimeToProcess() : 0f));
+		}
+		
+		return timeToProcess;
+	}
+	
+	/**
+	 * Returns if tasks were added since the last execution started, so they have not been executed yet. A TimeTask 
+	 * that was not executed has to be executed right away, as it starts counting its time on its first execution.
+	 * 
+	 * @return if tasks were added since the last execution started.
+	 */
+	public boolean hasAddedTasks()
+	{
+		return tasksAdded;
+	}
+	
+	/**
+	 * Sets the source of the time. It is read once at the beginning of each tick and the tasks added to 
+	 * this executor read that time.
+	 * 
+	 * @param timeSource source of the time.
+	 */
+	public void setTimeSource(TimeSource timeSource)
+	{
+		this.timeSource.setSource(timeSource);
+	}
+	
+	/**
+	 * Sets the policy that handles the errors of the tasks added from now on. Null keeps the policy of each task.
+	 * 
+	 * @param errorPolicy that handles the errors of the tasks.
+	 */
+	public void setErrorPolicy(ErrorPolicy errorPolicy)
+	{
+		this.errorPolicy = errorPolicy;
+	}
+	
+	/**
+	 * Returns the policy that handles the errors of the tasks added to this executor.
+	 * 
+	 * @return the error policy, null if there is none.
+	 */
+	public ErrorPolicy getErrorPolicy()
+	{
+		return errorPolicy;
+	}
+	
+	/**
+	 * Sets the same tick continuation. When a task finishes while executing, its next task is executed right away 
+	 * instead of in the next execution, and so on while the next tasks finish, till the chain is deeper than the 
+	 * maximum depth or takes longer than the maximum time. A next task that does not finish is stored after the 
+	 * execution, so it does not run twice in it.
+	 * 
+	 * @param maxDepth maximum amount of next tasks executed right away in a chain, 0 disables the continuation.
+	 * @param maxTime maximum time in nanoseconds a chain can take.
+	 */
+	public void setContinuation(int maxDepth, long maxTime)
+	{
+		if (maxDepth < 0) throw new IllegalArgumentException("Maximum depth can not be negative: " + maxDepth);
+		
+		this.maxContinuationDepth = maxDepth;
+		this.maxContinuationTime = maxTime;
+	}
+	
+	/**
+	 * Returns the maximum amount of next tasks executed right away in a chain.
+	 * 
+	 * @return the maximum depth of the continuation, 0 if it is disabled.
+	 */
+	public int getContinuationDepth()
+	{
+		return maxContinuationDepth;
+	}
+	
+	/**
+	 * Returns the maximum time a chain of next tasks executed right away can take.
+	 * 
+	 * @return the maximum time of the continuation in nanoseconds.
+	 */
+	public long getContinuationTime()
+	{
+		return maxContinuationTime;
+	}
+	
+	/**
+	 * Returns the time source that the tasks of this executor read, it returns the time of the current tick.
+	 * 
+	 * @return the time source of the tasks.
+	 */
+	public TimeSource getTimeSource()
+	{
+		return timeSource;
+	}
+	
+	/**
+	 * Returns the time in nanoseconds that the last call to execute took.
+	 * 
+	 * @return time in nanoseconds that the last call to execute took.
+	 */
+	public long getLastExecutionTime()
+	{
+		return lastExecutionTime;
+	}
+	
+	/**
+	 * Sets where the execution metrics of the tasks are recorded. Without metrics the tasks are executed 
+	 * without any instrumentation.
+	 * 
+	 * @param metrics where to record, null to disable the recording.
+	 */
+	public void setMetrics(TaskMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+	
+	public TaskMetrics getMetrics()
+	{
+		return metrics;
+	}
+	
+	/**
+	 * Sets where the lifecycle events of the tasks are recorded: when they are added, executed, failed and removed.
+	 * 
+	 * @param journal where to record, null to disable the recording.
+	 */
+	public void setJournal(TaskJournal journal)
+	{
+		this.journal = journal;
+	}
+	
+	public TaskJournal getJournal()
+	{
+		return journal;
+	}
+	
+	/**
+	 * Sets where the lifecycle events of the tasks are published to the subscribers on other threads.
+	 * 
+	 * @param eventPublisher where to publish, null to disable the publishing.
+	 */
+	public void setEventPublisher(TaskEventPublisher eventPublisher)
+	{
+		this.eventPublisher = eventPublisher;
+	}
+	
+	public TaskEventPublisher getEventPublisher()
+	{
+		return eventPublisher;
+	}
+	
+	private void execute(long startTime, float delta)
+	{
+		// Removes the tasks which future was cancelled
+		TaskFuture cancelled;
+		while ((cancelled = cancelledQueue.poll()) != null)
+		{
+			if (futureMap.get(cancelled.task) == cancelled) remove(cancelled.task);
+		}
+		
+		executing = true;
+		tickDelta = delta;
+		tasksAdded = false;
+		
+		try
+		{
+			// Runs the tasks
+			doExecute(delta);
+		}
+		finally
+		{
+			executing = false;
+			
+			// Stores the next tasks that were continued and did not finish
+			for (int i=0; i<continuedList.size(); i++)
+			{
+				taskCollection.add(continuedList.get(i));
+			}
+			
+			continuedList.clear();
+			
+			// Completes the futures of the tasks removed in this execution
+			completeFutures();
+		}
+		
+		long endTime = timeSource.getSource().nanoTime();
+		
+		lastExecutionTime = endTime - startTime;
+		lastUpdate = endTime;
+	}
+	
+	/**
+	 * Returns the underlying storage.
+	 * 
+	 * @return the underlying storage.
+	 */
+	protected Collection<Task> getTaskCollection()
+	{
+		return taskCollection;
+	}
+	
+	/**
+	 * Executes a task, recording its metrics and its execution event if enabled.
+	 * 
+	 * @param task to execute.
+	 * @param delta time passed in seconds.
+	 */
+	protected void executeTask(Task task, float delta)
+	{
+		// If the metrics, the journal and the events are disabled
+		if (metrics == null && journal == null && eventPublisher == null)
+		{
+			task.execute(delta);
+		}
+		else
+		{
+			// The tasks that handle their errors count the consecutive ones
+			int lastErrorCount = (task instanceof AbstractTask ? ((AbstractTask) task).getErrorCount() : 0);
+			
+			long startTime = System.nanoTime();
+			
+			try
+			{
+				task.execute(delta);
+			}
+			catch (RuntimeException re)
+			{
+				recordExecution(task, System.nanoTime() - startTime, true);
+				
+				throw re;
+			}
+			
+			long executionTime = System.nanoTime() - startTime;
+			
+			int errorCount = (task instanceof AbstractTask ? ((AbstractTask) task).getErrorCount() : 0);
+			
+			// If the execution failed, the counter is increased even if the same exception is thrown again
+			recordExecution(task, executionTime, errorCount > lastErrorCount);
+		}
+	}
+	
+	/**
+	 * Records a lifecycle event of a task in the journal and publishes it, if enabled.
+	 * 
+	 * @param event of the task.
+	 * @param task of the event.
+	 * @param value of the event.
+	 */
+	protected void recordEvent(int event, Task task, long value)
+	{
+		if (journal != null) journal.record(event, task, value, timeSource.getSource().nanoTime());
+		
+		if (eventPublisher != null) eventPublisher.publish(event, task, value);
+	}
+	
+	/**
+	 * Records the removal event of a task, releases its key and resolves the outcome of its future, if any. Subclasses 
+	 * that remove the tasks in their own way must call it after taking the task out of the storage, and call 
+	 * completeFutures once the task was disposed.
+	 * 
+	 * @param task removed.
+	 */
+	protected void afterRemove(Task task)
+	{
+		recordEvent(TaskLifecycle.REMOVED, task, 0);
+		
+		// If the task was added with a key, the key has no pending task anymore
+		if (!taskKeyMap.isEmpty())
+		{
+			Object key = taskKeyMap.remove(task);
+			
+			// Only if the key was not taken by another task meanwhile
+			if (key != null) keyMap.remove(key, task);
+		}
+		
+		TaskFuture future = (futureMap.isEmpty() ? null : futureMap.remove(task));
+		
+		// If the task was submitted
+		if (future != null)
+		{
+			// If its error policy removed it
+			if (AbstractTask.isFailed(task))
+			{
+				Exception error = AbstractTask.getError(task);
+				
+				future.failure = (error != null ? error : new IllegalStateException("Task removed by its error policy."));
+			}
+			// If it is not finished
+			else if (!task.isFinished())
+			{
+				future.failure = new CancellationException("Task removed before finishing.");
+			}
+			
+			// It is completed once the task is disposed
+			removedFutureQueue.add(future);
+		}
+	}
+	
+	/**
+	 * Completes the futures of the submitted tasks that were removed. If the executor is executing they are completed 
+	 * at the end of the execution. Subclasses that remove the tasks in their own way must call it after disposing them.
+	 */
+	protected void completeFutures()
+	{
+		// If it is not executing
+		if (!executing)
+		{
+			TaskFuture future;
+			while ((future = removedFutureQueue.poll()) != null)
+			{
+				// If it did not finish
+				if (future.failure != null)
+				{
+					future.completeExceptionally(future.failure);
+				}
+				else
+				{
+					future.complete(future.task);
+				}
+			}
+		}
+	}
+	
+	private void recordExecution(Task task, long executionTime, boolean error)
+	{
+		if (metrics != null) metrics.record(task.getClass(), executionTime, error);
+		
+		recordEvent(error ? TaskLifecycle.FAILED : TaskLifecycle.EXECUTED, task, executionTime);
+	}
+	
+	/**
+	 * Sets up a task before it is stored: it gives the task the time source and the error policy of this executor
+	 * and calls the added hooks. Subclasses that store the tasks in their own way must call it before storing them.
+	 * 
+	 * @param task to set up.
+	 */
+	protected void prepare(Task task)
+	{
+		// The task will read the time of the ticks
+		task.setTimeSource(timeSource);
+		
+		tasksAdded = true;
+		
+		// If the errors of the tasks are handled by a policy
+		if (errorPolicy != null)
+		{
+			task.setErrorPolicy(errorPolicy);
+		}
+		
+		// Calls the task executor task added hook
+		added(task);
+		
+		recordEvent(TaskLifecycle.ADDED, task, 0);
+		
+		// Calls the task added hook
+		task.added();
+	}
+	
+	/**
+	 * Returns if a task has to be removed: it is finished or its error policy removed it.
+	 * 
+	 * @param task to check.
+	 * 
+	 * @return if the task has to be removed.
+	 */
+	protected boolean isFinished(Task task)
+	{
+		return AbstractTask.isFinished(task);
+	}
+	
+	/**
+	 * Removes a finished task using the iterator that is visiting it and adds its next task, if any.
+	 * 
+	 * @param iterator visiting the task.
+	 * @param task finished.
+	 */
+	protected void finish(Iterator<Task> iterator, Task task)
+	{
+		// Calls the task executor task removed hook
+		removed(task);
+		
+		// Removes the task from the collection
+		iterator.remove();
+		
+		afterRemove(task);
+		
+		// Disposes the task
+		dispose(task);
+	}
+	
+	/**
+	 * Calls the removed hook of a finished task that is already out of the storage, adds its next task, if any, and
+	 * returns it to its pool, if it has one.
+	 * 
+	 * @param task finished.
+	 */
+	protected void dispose(Task task)
+	{
+		// Calls the task removed hook
+		task.removed();
+		
+		// If it has next task and it did not fail
+		if (task.getNext() != null && !AbstractTask.isFailed(task))
+		{
+			// If it can continue in this execution
+			if (canContinue())
+			{
+				continueWith(task.getNext());
+			}
+			else
+			{
+				// Adds it to the executor
+				add(task.getNext());
+			}
+		}
+		
+		// If it is a task that can be reused
+		if (task instanceof AbstractTask)
+		{
+			// Returns it to its pool, if it has one, now that the next task was read
+			((AbstractTask) task).recycle();
+		}
+	}
+	
+	private boolean canContinue()
+	{
+		boolean canContinue = false;
+		
+		// If it is executing and the chain is not too deep
+		if (executing && continuationDepth < maxContinuationDepth)
+		{
+			// If it is the start of a chain
+			if (continuationDepth == 0)
+			{
+				continuationDeadline = System.nanoTime() + maxContinuationTime;
+			}
+			
+			canContinue = (System.nanoTime() - continuationDeadline < 0);
+		}
+		
+		return canContinue;
+	}
+	
+	private void continueWith(Task task)
+	{
+		// Sets up the task
+		prepare(task);
+		
+		continuationDepth++;
+		
+		try
+		{
+			try
+			{
+				// Executes the task
+				executeTask(task, tickDelta);
+			}
+			catch (RuntimeException re)
+			{
+				// Keeps the task as if it was added
+				continuedList.add(task);
+				
+				throw re;
+			}
+			
+			// If the task if finished after executing it
+			if (isFinished(task))
+			{
+				// Calls the task executor task removed hook
+				removed(task);
+				
+				afterRemove(task);
+				
+				// Disposes the task, which continues with its next task
+				dispose(task);
+			}
+			else
+			{
+				// Stores it after the execution
+				continuedList.add(task);
+			}
+		}
+		finally
+		{
+			continuationDepth--;
+		}
+	}
+	
+	/**
+	 * Hook that will be called before a task is added to the queue.
+	 * 
+	 * @param task to be added to the queue.
+	 */
+	protected void added(Task task)
+	{		
+	}
+	
+	/**
+	 * Hook that will be called before a task is removed from the queue.
+	 * 
+	 * @param task to be removed from the queue.
+	 */
+	protected void removed(Task task)
+	{		
+	}
+	
+	/**
+	 * Main method where the tasks of the executor should be run.
+	 * 
+	 * @param delta time passed in seconds.
+	 */
+	protected abstract void doExecute(float delta);
+	
+	private class TaskFuture extends CompletableFuture<Task>
+	{
+		private final Task task;
+		private Throwable failure = null;
+		
+		private TaskFuture(Task task)
+		{
+			this.task = task;
+		}
+		
+		public boolean cancel(boolean mayInterruptIfRunning)
+		{
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			
+			// The task is removed from the executor thread
+			if (cancelled) cancelledQueue.offer(this);
+			
+			return cancelled;
+		}
+	}
+}
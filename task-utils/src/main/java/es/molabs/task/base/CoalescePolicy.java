@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base;
+
+import es.molabs.task.Task;
+
+/**
+ * Decides what happens when a task is added with a key that already has a pending task in the executor: the 
+ * added task replaces the pending one, is dropped, or is merged into the pending one.
+ */
+public interface CoalescePolicy 
+{
+	/**
+	 * Policy that removes the pending task and adds the new one.
+	 */
+	public static final CoalescePolicy REPLACE = new CoalescePolicy()
+	{
+		public Task coalesce(Task pending, Task added)
+		{
+			return added;
+		}
+	};
+	
+	/**
+	 * Policy that keeps the pending task and drops the new one.
+	 */
+	public static final CoalescePolicy DROP = new CoalescePolicy()
+	{
+		public Task coalesce(Task pending, Task added)
+		{
+			return pending;
+		}
+	};
+	
+	/**
+	 * Called each time a task is added with the key of a pending task. To merge them, the added task can be merged 
+	 * into the pending one and the pending one returned, or both merged into a new task that replaces the pending one.
+	 * 
+	 * @param pending task of the key.
+	 * @param added task with the same key.
+	 * 
+	 * @return the task to keep: the pending one keeps its place, any other replaces it.
+	 */
+	public Task coalesce(Task pending, Task added);
+}
@@ -0,0 +1,351 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import es.molabs.task.Task;
+
+/**
+ * Collection that keeps the tasks packed in an array and returns a handle for each added task.
+ * 
+ * Removing by handle or through the iterator is O(1) as the last task is moved to the freed position. 
+ * Removing by task needs to look for it first, so it is O(n). Because of that the iteration order is 
+ * the insertion order only till the first removal:
+ * <ul>
+ * <li>Removing through the iterator moves the last task to the current position and it will be the next one returned.</li>
+ * <li>Tasks added while iterating are appended at the end and will be returned in the same iteration.</li>
+ * <li>Tasks removed while iterating, but not through the iterator, can make the last task be skipped in that iteration,
+ * except the task last returned by the iterator: its removal is handled as if it was done through the iterator, and 
+ * removing it through the iterator afterwards does nothing.</li>
+ * </ul>
+ * 
+ * A handle is only valid till its task is removed, after that it is never reused for another task.
+ * 
+ * This class is not thread safe.
+ */
+public class DenseTaskCollection extends AbstractCollection<Task>
+{
+	private static final int DEFAULT_CAPACITY = 16;
+	
+	private static final int NO_SLOT = -1;
+	
+	private Task[] tasks = null;
+	private int size;
+	
+	// Handle index of each task slot
+	private int[] slotHandles = null;
+	
+	// Task slot of each handle index, or next free handle index if it is not in use
+	private int[] handleSlots = null;
+	private int[] handleGenerations = null;
+	private int handleCount;
+	private int freeHandle;
+	
+	/**
+	 * Creates a new collection with the default capacity.
+	 */
+	public DenseTaskCollection()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Creates a new collection with the capacity parameter.
+	 * 
+	 * @param capacity initial capacity.
+	 */
+	public DenseTaskCollection(int capacity)
+	{
+		capacity = Math.max(capacity, 1);
+		
+		tasks = new Task[capacity];
+		slotHandles = new int[capacity];
+		size = 0;
+		
+		handleSlots = new int[capacity];
+		handleGenerations = new int[capacity];
+		handleCount = 0;
+		freeHandle = NO_SLOT;
+	}
+	
+	public boolean add(Task task)
+	{
+		insert(task);
+		
+		return true;
+	}
+	
+	/**
+	 * Adds a task to the collection.
+	 * 
+	 * @param task to add.
+	 * 
+	 * @return the handle of the task.
+	 */
+	public long insert(Task task)
+	{
+		if (task == null) throw new NullPointerException();
+		
+		// If the storage is full
+		if (size == tasks.length)
+		{
+			// Doubles its size
+			tasks = Arrays.copyOf(tasks, size * 2);
+			slotHandles = Arrays.copyOf(slotHandles, size * 2);
+		}
+		
+		int handle = allocateHandle();
+		
+		// Appends the task
+		tasks[size] = task;
+		slotHandles[size] = handle;
+		handleSlots[handle] = size;
+		
+		size++;
+		
+		return toHandle(handle);
+	}
+	
+	/**
+	 * Returns the task of a handle.
+	 * 
+	 * @param handle of the task.
+	 * 
+	 * @return the task, null if the handle is no longer valid.
+	 */
+	public Task get(long handle)
+	{
+		int slot = resolve(handle);
+		
+		return (slot != NO_SLOT ? tasks[slot] : null);
+	}
+	
+	/**
+	 * Removes the task of a handle.
+	 * 
+	 * @param handle of the task.
+	 * 
+	 * @return the removed task, null if the handle is no longer valid.
+	 */
+	public Task remove(long handle)
+	{
+		Task task = null;
+		
+		int slot = resolve(handle);
+		
+		// If the handle is valid
+		if (slot != NO_SLOT)
+		{
+			task = tasks[slot];
+			
+			removeAt(slot);
+		}
+		
+		return task;
+	}
+	
+	public boolean remove(Object object)
+	{
+		boolean removed = false;
+		
+		// Looks for the task
+		for (int slot=0; slot<size && !removed; slot++)
+		{
+			if (tasks[slot] == object || (object != null && object.equals(tasks[slot])))
+			{
+				removeAt(slot);
+				
+				removed = true;
+			}
+		}
+		
+		return removed;
+	}
+	
+	public void clear()
+	{
+		// Frees every handle in use
+		for (int slot=0; slot<size; slot++)
+		{
+			freeHandle(slotHandles[slot]);
+		}
+		
+		Arrays.fill(tasks, 0, size, null);
+		
+		size = 0;
+	}
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	public Iterator<Task> iterator()
+	{
+		return new DenseIterator();
+	}
+	
+	private void removeAt(int slot)
+	{
+		int last = size - 1;
+		
+		freeHandle(slotHandles[slot]);
+		
+		// If it is not the last task
+		if (slot != last)
+		{
+			// Moves the last task to the freed slot
+			tasks[slot] = tasks[last];
+			slotHandles[slot] = slotHandles[last];
+			handleSlots[slotHandles[slot]] = slot;
+		}
+		
+		tasks[last] = null;
+		
+		size--;
+	}
+	
+	private int resolve(long handle)
+	{
+		int index = (int) handle;
+		int generation = (int) (handle >>> 32);
+		
+		// If the handle is in use and is from the same generation
+		if (index >= 0 && index < handleCount && handleGenerations[index] == generation && handleSlots[index] >= 0)
+		{
+			int slot = handleSlots[index];
+			
+			if (slot < size && slotHandles[slot] == index) return slot;
+		}
+		
+		return NO_SLOT;
+	}
+	
+	private int allocateHandle()
+	{
+		int handle;
+		
+		// If there is a free handle
+		if (freeHandle != NO_SLOT)
+		{
+			handle = freeHandle;
+			
+			// The free handles are encoded as negative numbers to tell them apart from the slots
+			freeHandle = -handleSlots[handle] - 2;
+		}
+		else
+		{
+			// If the handle storage is full
+			if (handleCount == handleSlots.length)
+			{
+				// Doubles its size
+				handleSlots = Arrays.copyOf(handleSlots, handleCount * 2);
+				handleGenerations = Arrays.copyOf(handleGenerations, handleCount * 2);
+			}
+			
+			handle = handleCount++;
+		}
+		
+		return handle;
+	}
+	
+	private void freeHandle(int handle)
+	{
+		// Invalidates the handles already returned
+		handleGenerations[handle]++;
+		
+		handleSlots[handle] = -freeHandle - 2;
+		freeHandle = handle;
+	}
+	
+	private long toHandle(int handle)
+	{
+		return (((long) handleGenerations[handle]) << 32) | handle;
+	}
+	
+	private class DenseIterator implements Iterator<Task>
+	{
+		private int cursor;
+		private int last;
+		
+		// Handle of the task last returned, to know if it was removed by other means
+		private long lastHandle;
+		private boolean lastRemoved;
+		
+		private DenseIterator()
+		{
+			cursor = 0;
+			last = NO_SLOT;
+			lastRemoved = false;
+		}
+		
+		public boolean hasNext()
+		{
+			update();
+			
+			return cursor < size;
+		}
+		
+		public Task next()
+		{
+			update();
+			
+			if (cursor >= size) throw new NoSuchElementException();
+			
+			last = cursor++;
+			lastHandle = toHandle(slotHandles[last]);
+			lastRemoved = false;
+			
+			return tasks[last];
+		}
+		
+		public void remove()
+		{
+			if (last == NO_SLOT) throw new IllegalStateException();
+			
+			update();
+			
+			// If it was not removed by other means
+			if (!lastRemoved)
+			{
+				// It may have been moved if other task was removed by other means
+				int slot = resolve(lastHandle);
+				
+				removeAt(slot);
+				
+				// If the last task was moved to the current position it has to be returned next
+				if (slot == last) cursor = last;
+			}
+			
+			last = NO_SLOT;
+		}
+		
+		private void update()
+		{
+			// If the task last returned was removed by handle or by task, for example by itself while executing
+			if (last != NO_SLOT && !lastRemoved && resolve(lastHandle) == NO_SLOT)
+			{
+				// The last task was moved to its position so it has to be returned next
+				cursor = last;
+				lastRemoved = true;
+			}
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base;
+
+import es.molabs.task.Task;
+
+/**
+ * SingleThreadTaskExecutor that stores the tasks in a DenseTaskCollection. Tasks added with addTask return a handle
+ * that allows removing them in O(1). See DenseTaskCollection for the iteration order.
+ * 
+ * The storage is not thread safe so all the methods must be called from the thread that calls execute.
+ */
+public class DenseTaskExecutor extends SingleThreadTaskExecutor
+{
+	private DenseTaskCollection taskCollection = null;
+	
+	/**
+	 * Creates a new TaskExecutor with the default initial capacity.
+	 */
+	public DenseTaskExecutor()
+	{
+		this(new DenseTaskCollection());
+	}
+	
+	/**
+	 * Creates a new TaskExecutor with the capacity parameter.
+	 * 
+	 * @param capacity initial capacity.
+	 */
+	public DenseTaskExecutor(int capacity)
+	{
+		this(new DenseTaskCollection(capacity));
+	}
+	
+	private DenseTaskExecutor(DenseTaskCollection collection)
+	{
+		super(collection);
+		
+		this.taskCollection = collection;
+	}
+	
+	/**
+	 * Adds a task to the executor.
+	 * 
+	 * @param task to add.
+	 * 
+	 * @return the handle of the task, valid till it is removed.
+	 */
+	public long addTask(Task task)
+	{
+		// Sets up the task
+		prepare(task);
+		
+		// Adds the task to the collection
+		return taskCollection.insert(task);
+	}
+	
+	/**
+	 * Removes an existing task from the executor in O(1).
+	 * 
+	 * @param handle of the task to remove.
+	 * 
+	 * @return if the handle was valid and the task was removed.
+	 */
+	public boolean removeTask(long handle)
+	{
+		Task task = taskCollection.get(handle);
+		
+		// If the handle is valid
+		if (task != null)
+		{
+			// Calls the task executor task removed hook
+			removed(task);
+			
+			// Removes the task from the collection
+			taskCollection.remove(handle);
+			forget(task);
+			
+			afterRemove(task);
+			
+			// Calls the task removed hook
+			task.removed();
+			
+			completeFutures();
+		}
+		
+		return task != null;
+	}
+	
+	/**
+	 * Returns the task of a handle.
+	 * 
+	 * @param handle of the task.
+	 * 
+	 * @return the task, null if the handle is no longer valid.
+	 */
+	public Task getTask(long handle)
+	{
+		return taskCollection.get(handle);
+	}
+}
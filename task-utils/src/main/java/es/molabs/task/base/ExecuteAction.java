@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base;
+
+import java.util.concurrent.RecursiveAction;
+
+import es.molabs.task.Task;
+
+/**
+ * Fork join action that executes a range of tasks, splitting it in halves till the ranges are small enough to be 
+ * run sequentially. The finished tasks are skipped. 
+ */
+class ExecuteAction extends RecursiveAction
+{
+	private static final long serialVersionUID = 1L;
+	
+	private final Task[] tasks;
+	private final int from;
+	private final int to;
+	private final float delta;
+	private final int chunkSize;
+	private final AbstractTaskExecutor taskExecutor;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param tasks to execute.
+	 * @param from first index of the range, inclusive.
+	 * @param to last index of the range, exclusive.
+	 * @param delta time passed in seconds.
+	 * @param chunkSize maximum amount of tasks run sequentially by a pool thread.
+	 * @param taskExecutor that records the executions, null to execute the tasks directly.
+	 */
+	ExecuteAction(Task[] tasks, int from, int to, float delta, int chunkSize, AbstractTaskExecutor taskExecutor)
+	{
+		this.tasks = tasks;
+		this.from = from;
+		this.to = to;
+		this.delta = delta;
+		this.chunkSize = chunkSize;
+		this.taskExecutor = taskExecutor;
+	}
+	
+	protected void compute()
+	{
+		// If the range is small enough
+		if (to - from <= chunkSize)
+		{
+			// For each task in the range
+			for (int i=from; i<to; i++)
+			{
+				// If the task in not finished
+				if (!AbstractTask.isFinished(tasks[i]))
+				{
+					// Executes the task
+					if (taskExecutor != null) taskExecutor.executeTask(tasks[i], delta);
+					else tasks[i].execute(delta);
+				}
+			}
+		}
+		else
+		{
+			int middle = (from + to) >>> 1;
+			
+			// Splits the range in two halves and waits for both
+			invokeAll(new ExecuteAction(tasks, from, middle, delta, chunkSize, taskExecutor), new ExecuteAction(tasks, middle, to, delta, chunkSize, taskExecutor));
+		}
+	}
+}
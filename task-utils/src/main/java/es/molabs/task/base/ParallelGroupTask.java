@@ -0,0 +1,245 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import es.molabs.task.Task;
+import es.molabs.task.TimeSource;
+import es.molabs.task.error.ErrorPolicy;
+
+/**
+ * Task that runs its tasks together, each one in every execution till it finishes. A run of the group ends when 
+ * the required amount of its tasks have finished: all of them, any of them or a number in between. Then the tasks 
+ * are reset, including the ones that did not finish, and the group runs again till it has run the times to run.
+ * 
+ * A task removed by its error policy does not finish. If the failed tasks leave less tasks than the required ones, 
+ * the group fails as a task removed by its error policy: the executors remove it without adding its next task and 
+ * its future fails with the error of the first failed task.
+ * 
+ * The tasks can run in parallel on a ForkJoinPool, which is worth it when they are CPU heavy.
+ */
+public class ParallelGroupTask implements Task 
+{
+	/**
+	 * Required amount to wait for all the tasks.
+	 */
+	public static final int ALL = -1;
+	
+	/**
+	 * Required amount to wait for the first task.
+	 */
+	public static final int ANY = 1;
+	
+	private int timesToRun;
+	private int required;
+	private ForkJoinPool pool = null;
+	private Task[] tasks = null;
+	
+	private boolean[] finished = null;
+	private Task[] running = null;
+	private int finishedCount;
+	private int failedCount;
+	private int timesRan;
+	
+	private boolean failed;
+	private Exception error = null;
+	
+	public ParallelGroupTask(Task...tasks)
+	{
+		this(1, tasks);
+	}
+	
+	public ParallelGroupTask(int timesToRun, Task...tasks)
+	{
+		this(timesToRun, ALL, tasks);
+	}
+	
+	public ParallelGroupTask(int timesToRun, int required, Task...tasks)
+	{
+		this(timesToRun, required, null, tasks);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param timesToRun the group.
+	 * @param required amount of finished tasks that ends a run, ALL, ANY or a number in between.
+	 * @param pool where the tasks will run, null to run them on the calling thread.
+	 * @param tasks of the group.
+	 */
+	public ParallelGroupTask(int timesToRun, int required, ForkJoinPool pool, Task...tasks)
+	{
+		if (required == ALL) required = tasks.length;
+		
+		if (required < 1 || required > tasks.length) throw new IllegalArgumentException("Required tasks must be between 1 and " + tasks.length + ": " + required);
+		
+		this.timesToRun = timesToRun;
+		this.required = required;
+		this.pool = pool;
+		this.tasks = tasks;
+		
+		finished = new boolean[tasks.length];
+		running = new Task[tasks.length];
+		
+		reset();
+	}
+	
+	public void added()
+	{
+	}
+
+	public void removed() 
+	{	
+	}
+	
+	public void setTimeSource(TimeSource timeSource)
+	{
+		// The tasks of the group read the time from the same source
+		for (int i=0; i<tasks.length; i++)
+		{
+			tasks[i].setTimeSource(timeSource);
+		}
+	}
+	
+	public void setErrorPolicy(ErrorPolicy errorPolicy)
+	{
+		// The tasks of the group handle their errors with the same policy
+		for (int i=0; i<tasks.length; i++)
+		{
+			tasks[i].setErrorPolicy(errorPolicy);
+		}
+	}
+	
+	public boolean isFinished() 
+	{
+		return timesRan == timesToRun;
+	}
+	
+	public void reset()
+	{
+		Arrays.fill(finished, false);
+		finishedCount = 0;
+		failedCount = 0;
+		timesRan = 0;
+		
+		failed = false;
+		error = null;
+	}
+	
+	/**
+	 * Returns if the group failed because too many of its tasks were removed by their error policy.
+	 * 
+	 * @return if the group failed.
+	 */
+	public boolean isFailed()
+	{
+		return failed;
+	}
+	
+	/**
+	 * Returns the last error of the first task that failed in the current run. Null if there was no error.
+	 * 
+	 * @return the error of the first failed task.
+	 */
+	public Exception getError()
+	{
+		return error;
+	}
+
+	public Task getNext() 
+	{
+		return null;
+	}
+	
+	public void execute(float delta) 
+	{
+		// If the group failed
+		if (failed) return;
+		
+		int count = 0;
+		
+		// Collects the tasks that have not finished
+		for (int i=0; i<tasks.length; i++)
+		{
+			if (!finished[i]) running[count++] = tasks[i];
+		}
+		
+		// If there is a pool and more than one task to run
+		if (pool != null && count > 1)
+		{
+			// Runs the tasks on the pool and waits till all are done
+			pool.invoke(new ExecuteAction(running, 0, count, delta, 1, null));
+		}
+		else
+		{
+			for (int i=0; i<count; i++)
+			{
+				running[i].execute(delta);
+			}
+		}
+		
+		Arrays.fill(running, 0, count, null);
+		
+		// For each task that has not finished
+		for (int i=0; i<tasks.length; i++)
+		{
+			if (finished[i]) continue;
+			
+			// If its error policy removed it, it is not run anymore but it does not count as finished
+			if (AbstractTask.isFailed(tasks[i]))
+			{
+				finished[i] = true;
+				failedCount++;
+				
+				if (error == null) error = AbstractTask.getError(tasks[i]);
+			}
+			// If it is finished after executing it
+			else if (tasks[i].isFinished())
+			{
+				finished[i] = true;
+				finishedCount++;
+			}
+		}
+		
+		// If the tasks left can not finish the run
+		if (failedCount > tasks.length - required)
+		{
+			failed = true;
+			
+			return;
+		}
+		
+		// If enough tasks have finished
+		if (finishedCount >= required)
+		{
+			// Resets every task for the next run
+			for (int i=0; i<tasks.length; i++)
+			{
+				tasks[i].reset();
+			}
+			
+			Arrays.fill(finished, false);
+			finishedCount = 0;
+			failedCount = 0;
+			error = null;
+			
+			// Increases the times ran counter
+			timesRan++;
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+import es.molabs.task.Task;
+
+/**
+ * Executor that splits the tasks in chunks and runs them in parallel on a ForkJoinPool.
+ * 
+ * Each call to execute takes a snapshot of the live tasks, runs it on the pool and returns once every task
+ * of the snapshot has been executed. Task state written by the pool threads is visible to the calling thread
+ * when execute returns, and to the pool threads on the next call, as submitting to and joining the pool are
+ * happens-before edges. A single task is never run by two threads at the same time. Finished tasks are removed,
+ * and their next tasks added, on the calling thread so the added and removed hooks are never run concurrently.
+ */
+public class ParallelTaskExecutor extends AbstractTaskExecutor
+{
+	private static final int DEFAULT_CHUNK_SIZE = 1024;
+	
+	private ForkJoinPool pool = null;
+	private int chunkSize;
+	
+	private Task[] snapshot = null;
+	
+	/**
+	 * Creates a new TaskExecutor that runs on the common ForkJoinPool.
+	 */
+	public ParallelTaskExecutor()
+	{
+		this(ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Creates a new TaskExecutor that runs on the pool parameter.
+	 * 
+	 * @param pool where the tasks will run.
+	 */
+	public ParallelTaskExecutor(ForkJoinPool pool)
+	{
+		this(pool, DEFAULT_CHUNK_SIZE);
+	}
+	
+	/**
+	 * Creates a new TaskExecutor that runs on the pool parameter.
+	 * 
+	 * @param pool where the tasks will run.
+	 * @param chunkSize maximum amount of tasks run sequentially by a pool thread.
+	 */
+	public ParallelTaskExecutor(ForkJoinPool pool, int chunkSize)
+	{
+		super(new ConcurrentLinkedQueue<Task>());
+		
+		if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be greater than 0: " + chunkSize);
+		
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+		
+		snapshot = new Task[chunkSize];
+	}
+	
+	protected void doExecute(float delta)
+	{
+		// Copies the live tasks
+		int count = takeSnapshot();
+		
+		// If there is something to run
+		if (count > 0)
+		{
+			// Runs the tasks on the pool and waits till all are done
+			pool.invoke(new ExecuteAction(snapshot, 0, count, delta, chunkSize, this));
+			
+			// Releases the references to the tasks
+			Arrays.fill(snapshot, 0, count, null);
+		}
+		
+		// For each task in the collection
+		Iterator<Task> iterator = getTaskCollection().iterator();
+		while (iterator.hasNext())
+		{
+			Task task = iterator.next();
+			
+			// If the task if finished after executing it
+			if (isFinished(task))
+			{
+				// Removes it and adds its next task
+				finish(iterator, task);
+			}
+		}
+	}
+	
+	private int takeSnapshot()
+	{
+		int count = 0;
+		
+		// For each task in the collection
+		Iterator<Task> iterator = getTaskCollection().iterator();
+		while (iterator.hasNext())
+		{
+			// If the snapshot is full
+			if (count == snapshot.length)
+			{
+				// Doubles its size
+				snapshot = Arrays.copyOf(snapshot, snapshot.length * 2);
+			}
+			
+			snapshot[count++] = iterator.next();
+		}
+		
+		return count;
+	}
+}
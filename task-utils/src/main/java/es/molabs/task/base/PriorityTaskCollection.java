@@ -0,0 +1,245 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base;
+
+import java.util.AbstractCollection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import es.molabs.task.Task;
+
+/**
+ * Collection that stores the tasks of each priority in its own DenseTaskCollection. It iterates the priorities 
+ * from the highest to the lowest, see DenseTaskCollection for the order inside each one.
+ * 
+ * Each task keeps where it is stored, so removing a task or changing its priority is O(1).
+ * 
+ * This class is not thread safe.
+ */
+class PriorityTaskCollection extends AbstractCollection<Task>
+{
+	private DenseTaskCollection[] priorities = null;
+	private int defaultPriority;
+	
+	private Map<Task, Slot> slots = null;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param priorities amount of priorities, from 0 to priorities - 1.
+	 * @param defaultPriority of the tasks added without one.
+	 */
+	PriorityTaskCollection(int priorities, int defaultPriority)
+	{
+		if (priorities < 1) throw new IllegalArgumentException("Priorities must be greater than 0: " + priorities);
+		
+		this.priorities = new DenseTaskCollection[priorities];
+		
+		for (int i=0; i<priorities; i++)
+		{
+			this.priorities[i] = new DenseTaskCollection();
+		}
+		
+		this.defaultPriority = checkPriority(defaultPriority);
+		
+		slots = new IdentityHashMap<Task, Slot>();
+	}
+	
+	/**
+	 * Returns the priority of the tasks added without one.
+	 * 
+	 * @return the default priority.
+	 */
+	int getDefaultPriority()
+	{
+		return defaultPriority;
+	}
+	
+	public boolean add(Task task)
+	{
+		insert(task, defaultPriority);
+		
+		return true;
+	}
+	
+	/**
+	 * Adds a task with a priority.
+	 * 
+	 * @param task to add.
+	 * @param priority of the task.
+	 */
+	void insert(Task task, int priority)
+	{
+		checkPriority(priority);
+		
+		// If the task is already stored
+		if (slots.containsKey(task)) throw new IllegalArgumentException("The task is already added: " + task);
+		
+		slots.put(task, new Slot(priority, priorities[priority].insert(task)));
+	}
+	
+	/**
+	 * Moves a task to another priority.
+	 * 
+	 * @param task to move.
+	 * @param priority new priority.
+	 * 
+	 * @return if the task was stored.
+	 */
+	boolean setPriority(Task task, int priority)
+	{
+		checkPriority(priority);
+		
+		Slot slot = slots.get(task);
+		
+		// If the task is stored in another priority
+		if (slot != null && slot.priority != priority)
+		{
+			priorities[slot.priority].remove(slot.handle);
+			
+			slot.priority = priority;
+			slot.handle = priorities[priority].insert(task);
+		}
+		
+		return slot != null;
+	}
+	
+	/**
+	 * Returns the priority of a task.
+	 * 
+	 * @param task stored.
+	 * 
+	 * @return the priority, -1 if the task is not stored.
+	 */
+	int getPriority(Task task)
+	{
+		Slot slot = slots.get(task);
+		
+		return (slot != null ? slot.priority : -1);
+	}
+	
+	/**
+	 * Returns the amount of priorities.
+	 * 
+	 * @return the amount of priorities.
+	 */
+	int getPriorities()
+	{
+		return priorities.length;
+	}
+	
+	public boolean remove(Object object)
+	{
+		Slot slot = slots.remove(object);
+		
+		// If the task is stored
+		if (slot != null)
+		{
+			priorities[slot.priority].remove(slot.handle);
+		}
+		
+		return slot != null;
+	}
+	
+	public boolean contains(Object object)
+	{
+		return slots.containsKey(object);
+	}
+	
+	public void clear()
+	{
+		for (int i=0; i<priorities.length; i++)
+		{
+			priorities[i].clear();
+		}
+		
+		slots.clear();
+	}
+	
+	public int size()
+	{
+		return slots.size();
+	}
+	
+	public Iterator<Task> iterator()
+	{
+		return new PriorityIterator();
+	}
+	
+	int checkPriority(int priority)
+	{
+		if (priority < 0 || priority >= priorities.length) throw new IllegalArgumentException("Priority must be between 0 and " + (priorities.length - 1) + ": " + priority);
+		
+		return priority;
+	}
+	
+	private static class Slot
+	{
+		private int priority;
+		private long handle;
+		
+		private Slot(int priority, long handle)
+		{
+			this.priority = priority;
+			this.handle = handle;
+		}
+	}
+	
+	private class PriorityIterator implements Iterator<Task>
+	{
+		private int priority;
+		private Iterator<Task> iterator = null;
+		private Task current = null;
+		
+		private PriorityIterator()
+		{
+			priority = priorities.length - 1;
+			iterator = priorities[priority].iterator();
+		}
+		
+		public boolean hasNext()
+		{
+			// Moves down till a priority has tasks left
+			while (!iterator.hasNext() && priority > 0)
+			{
+				iterator = priorities[--priority].iterator();
+			}
+			
+			return iterator.hasNext();
+		}
+		
+		public Task next()
+		{
+			if (!hasNext()) throw new NoSuchElementException();
+			
+			current = iterator.next();
+			
+			return current;
+		}
+		
+		public void remove()
+		{
+			if (current == null) throw new IllegalStateException();
+			
+			iterator.remove();
+			slots.remove(current);
+			
+			current = null;
+		}
+	}
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import es.molabs.task.Task;
+
+/**
+ * SingleThreadTaskExecutor that stores the tasks in a fixed amount of priorities, from 0 to priorities - 1. 
+ * In each execution the tasks of the higher priorities run first, so the latency critical tasks do not wait 
+ * behind the rest when a tick runs long.
+ * 
+ * Removing a task or changing its priority is O(1). A priority changed while executing is applied at the end 
+ * of the execution, so the task is not run twice or skipped in that tick.
+ * 
+ * The storage is not thread safe so all the methods must be called from the thread that calls execute.
+ */
+public class PriorityTaskExecutor extends SingleThreadTaskExecutor
+{
+	private PriorityTaskCollection taskCollection = null;
+	
+	private boolean executing;
+	private List<Task> pendingTasks = null;
+	private int[] pendingPriorities = null;
+	
+	/**
+	 * Creates a new TaskExecutor where the tasks added without a priority have the lowest one.
+	 * 
+	 * @param priorities amount of priorities.
+	 */
+	public PriorityTaskExecutor(int priorities)
+	{
+		this(priorities, 0);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param priorities amount of priorities.
+	 * @param defaultPriority of the tasks added without one.
+	 */
+	public PriorityTaskExecutor(int priorities, int defaultPriority)
+	{
+		this(new PriorityTaskCollection(priorities, defaultPriority));
+	}
+	
+	private PriorityTaskExecutor(PriorityTaskCollection collection)
+	{
+		super(collection);
+		
+		this.taskCollection = collection;
+		
+		executing = false;
+		pendingTasks = new ArrayList<Task>();
+		pendingPriorities = new int[16];
+	}
+	
+	public void add(Task task)
+	{
+		add(task, taskCollection.getDefaultPriority());
+	}
+	
+	/**
+	 * Adds a task to the executor with a priority.
+	 * 
+	 * @param task to add.
+	 * @param priority of the task.
+	 */
+	public void add(Task task, int priority)
+	{
+		// Validates the call before setting up the task
+		taskCollection.checkPriority(priority);
+		
+		if (taskCollection.contains(task)) throw new IllegalArgumentException("The task is already added: " + task);
+		
+		// Sets up the task
+		prepare(task);
+		
+		// Adds the task to the collection
+		taskCollection.insert(task, priority);
+	}
+	
+	/**
+	 * Changes the priority of a task in O(1).
+	 * 
+	 * @param task to change.
+	 * @param priority new priority.
+	 * 
+	 * @return if the task is in the executor.
+	 */
+	public boolean setPriority(Task task, int priority)
+	{
+		taskCollection.checkPriority(priority);
+		
+		boolean found;
+		
+		// If the tasks are being executed
+		if (executing)
+		{
+			found = taskCollection.contains(task);
+			
+			// Changes it at the end of the execution
+			if (found) addPending(task, priority);
+		}
+		else
+		{
+			found = taskCollection.setPriority(task, priority);
+		}
+		
+		return found;
+	}
+	
+	/**
+	 * Returns the priority of a task.
+	 * 
+	 * @param task in the executor.
+	 * 
+	 * @return the priority of the task, -1 if it is not in the executor.
+	 */
+	public int getPriority(Task task)
+	{
+		return taskCollection.getPriority(task);
+	}
+	
+	/**
+	 * Returns the amount of priorities.
+	 * 
+	 * @return the amount of priorities.
+	 */
+	public int getPriorities()
+	{
+		return taskCollection.getPriorities();
+	}
+	
+	protected void doExecute(float delta)
+	{
+		executing = true;
+		
+		try
+		{
+			super.doExecute(delta);
+		}
+		finally
+		{
+			executing = false;
+		}
+		
+		// For each priority changed while executing
+		for (int i=0; i<pendingTasks.size(); i++)
+		{
+			// The task may have finished in the meantime
+			taskCollection.setPriority(pendingTasks.get(i), pendingPriorities[i]);
+		}
+		
+		pendingTasks.clear();
+	}
+	
+	private void addPending(Task task, int priority)
+	{
+		// If the pending priorities are full
+		if (pendingTasks.size() == pendingPriorities.length)
+		{
+			// Doubles its size
+			pendingPriorities = Arrays.copyOf(pendingPriorities, pendingPriorities.length * 2);
+		}
+		
+		pendingPriorities[pendingTasks.size()] = priority;
+		pendingTasks.add(task);
+	}
+}
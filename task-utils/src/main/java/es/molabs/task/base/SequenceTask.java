@@ -15,9 +15,14 @@
  */
 package es.molabs.task.base;
 
+import java.nio.ByteBuffer;
+
 import es.molabs.task.Task;
+import es.molabs.task.TimeSource;
+import es.molabs.task.checkpoint.Checkpointable;
+import es.molabs.task.error.ErrorPolicy;
 
-public class SequenceTask implements Task 
+public class SequenceTask implements Task, Checkpointable 
 {	
 	private int timesToRun;
 	private Task[] tasks = null;
@@ -25,6 +30,8 @@ public class SequenceTask implements Task
 	private int currentTask;
 	private int timesRan;
 	
+	private int maxContinuation;
+	
 	public SequenceTask(Task...tasks)
 	{
 		this(1, tasks);
@@ -35,6 +42,8 @@ public class SequenceTask implements Task
 		this.timesToRun = timesToRun;		
 		this.tasks = tasks;
 		
+		maxContinuation = 0;
+		
 		reset();
 	}
 	
@@ -46,6 +55,37 @@ public class SequenceTask implements Task
 	{	
 	}
 	
+	public void setTimeSource(TimeSource timeSource)
+	{
+		// The tasks of the sequence read the time from the same source
+		for (int i=0; i<tasks.length; i++)
+		{
+			tasks[i].setTimeSource(timeSource);
+		}
+	}
+	
+	public void setErrorPolicy(ErrorPolicy errorPolicy)
+	{
+		// The tasks of the sequence handle their errors with the same policy
+		for (int i=0; i<tasks.length; i++)
+		{
+			tasks[i].setErrorPolicy(errorPolicy);
+		}
+	}
+	
+	/**
+	 * Sets the same execution continuation. When a task of the sequence finishes, the next one is executed right 
+	 * away instead of in the next execution, up to a maximum of tasks in each execution.
+	 * 
+	 * @param maxContinuation maximum amount of tasks executed right away after the first one, 0 disables it.
+	 */
+	public void setContinuation(int maxContinuation)
+	{
+		if (maxContinuation < 0) throw new IllegalArgumentException("Maximum continuation can not be negative: " + maxContinuation);
+		
+		this.maxContinuation = maxContinuation;
+	}
+	
 	public boolean isFinished() 
 	{
 		return timesRan == timesToRun;
@@ -56,6 +96,41 @@ public class SequenceTask implements Task
 		currentTask = 0;
 		timesRan = 0;
 	}
+	
+	/**
+	 * Saves the progress of the sequence and of its tasks that can be saved.
+	 */
+	public void saveState(ByteBuffer buffer, long now)
+	{
+		buffer.putInt(currentTask);
+		buffer.putInt(timesRan);
+		
+		// Saves the tasks of the sequence in order
+		for (int i=0; i<tasks.length; i++)
+		{
+			if (tasks[i] instanceof Checkpointable) ((Checkpointable) tasks[i]).saveState(buffer, now);
+		}
+	}
+	
+	public void restoreState(ByteBuffer buffer, long now)
+	{
+		currentTask = buffer.getInt();
+		timesRan = buffer.getInt();
+		
+		// If the state was saved by a sequence with another amount of tasks
+		if (currentTask < 0 || currentTask >= tasks.length)
+		{
+			reset();
+		}
+		else
+		{
+			// Restores the tasks of the sequence in order
+			for (int i=0; i<tasks.length; i++)
+			{
+				if (tasks[i] instanceof Checkpointable) ((Checkpointable) tasks[i]).restoreState(buffer, now);
+			}
+		}
+	}
 
 	public Task getNext() 
 	{
@@ -64,12 +139,24 @@ public class SequenceTask implements Task
 	
 	public void execute(float delta) 
 	{
+		int continuation = 0;
+		
+		// While the current task finishes, the sequence is not finished and the continuation allows it
+		while (executeCurrent(delta) && !isFinished() && continuation++ < maxContinuation);
+	}
+	
+	private boolean executeCurrent(float delta)
+	{
+		boolean finished = false;
+		
 		// Executes the current task
 		tasks[currentTask].execute(delta);
 		
 		// If the current task is finished
 		if (tasks[currentTask].isFinished())
 		{
+			finished = true;
+			
 			// Resets the current task
 			tasks[currentTask].reset();
 			
@@ -85,6 +172,8 @@ public class SequenceTask implements Task
 				// Resets the current task counter
 				currentTask = 0;
 			}
-		}		
+		}
+		
+		return finished;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,365 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base;
+
+import java.util.Arrays;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import es.molabs.task.Task;
+import es.molabs.task.TaskExecutor;
+
+/**
+ * Executor that splits the tasks in shards, each one a SingleThreadTaskExecutor that is always run by the same 
+ * worker thread, so the state of a task stays on one thread and the shards share nothing while they run.
+ * 
+ * A task is routed to a shard by a key, like an entity or tenant id, through a consistent hash ring, so the tasks of 
+ * the same key always run on the same shard and in the order they were added. Without a key the task itself is used.
+ * Each call to execute runs all the shards at the same time and returns once every shard is done. The next tasks of 
+ * a task stay in its shard.
+ * 
+ * The add, remove and clear calls must be made from the thread that calls execute, while it is not executing, a
+ * StagedTaskExecutor can be used in front to accept them from any thread. The worker threads are daemon threads 
+ * that are stopped with shutdown.
+ */
+public class ShardedTaskExecutor implements TaskExecutor
+{
+	private static final int DEFAULT_VIRTUAL_NODES = 64;
+	
+	private static final AtomicInteger EXECUTOR_COUNT = new AtomicInteger();
+	
+	private SingleThreadTaskExecutor[] shards = null;
+	
+	// Points of the hash ring, sorted, and the shard that owns each one
+	private int[] ring = null;
+	private int[] owners = null;
+	
+	// Workers wait on the first phase of a tick and report on the second
+	private Phaser phaser = null;
+	private Throwable[] errors = null;
+	
+	private float delta;
+	private boolean timed;
+	private volatile boolean stopped;
+	
+	/**
+	 * Creates a new TaskExecutor with a shard per available processor.
+	 */
+	public ShardedTaskExecutor()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Creates a new TaskExecutor with the amount of shards parameter.
+	 * 
+	 * @param shardCount amount of shards and worker threads.
+	 */
+	public ShardedTaskExecutor(int shardCount)
+	{
+		this(shardCount, DEFAULT_VIRTUAL_NODES);
+	}
+	
+	/**
+	 * Creates a new TaskExecutor with the amount of shards parameter.
+	 * 
+	 * @param shardCount amount of shards and worker threads.
+	 * @param virtualNodes amount of points of each shard in the hash ring, more points spread the keys more evenly.
+	 */
+	public ShardedTaskExecutor(int shardCount, int virtualNodes)
+	{
+		if (shardCount < 1) throw new IllegalArgumentException("Shard count must be greater than 0: " + shardCount);
+		if (virtualNodes < 1) throw new IllegalArgumentException("Virtual nodes must be greater than 0: " + virtualNodes);
+		
+		shards = new SingleThreadTaskExecutor[shardCount];
+		for (int i=0; i<shardCount; i++)
+		{
+			shards[i] = new SingleThreadTaskExecutor();
+		}
+		
+		buildRing(virtualNodes);
+		
+		phaser = new Phaser(shardCount + 1);
+		errors = new Throwable[shardCount];
+		
+		stopped = false;
+		
+		startWorkers(EXECUTOR_COUNT.incrementAndGet());
+	}
+	
+	/**
+	 * Adds a task to the shard of the task itself.
+	 * 
+	 * @param task to add.
+	 */
+	public void add(Task task)
+	{
+		add(task, task);
+	}
+	
+	/**
+	 * Adds a task to the shard of the key.
+	 * 
+	 * @param key that selects the shard.
+	 * @param task to add.
+	 */
+	public void add(Object key, Task task)
+	{
+		shards[getShardIndex(key)].add(task);
+	}
+	
+	/**
+	 * Removes a task from the shard of the task itself.
+	 * 
+	 * @param task to remove.
+	 */
+	public void remove(Task task)
+	{
+		remove(task, task);
+	}
+	
+	/**
+	 * Removes a task from the shard of the key, it must be the key the task was added with.
+	 * 
+	 * @param key that selects the shard.
+	 * @param task to remove.
+	 */
+	public void remove(Object key, Task task)
+	{
+		shards[getShardIndex(key)].remove(task);
+	}
+	
+	public void execute()
+	{
+		execute(0f, false);
+	}
+	
+	public void execute(float delta)
+	{
+		execute(delta, true);
+	}
+	
+	public void clear()
+	{
+		for (int i=0; i<shards.length; i++)
+		{
+			shards[i].clear();
+		}
+	}
+	
+	public int size()
+	{
+		int size = 0;
+		
+		for (int i=0; i<shards.length; i++)
+		{
+			size += shards[i].size();
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Stops the worker threads. Must be called from the executor thread, the executor can not be executed anymore.
+	 */
+	public void shutdown()
+	{
+		// If it is not stopped yet
+		if (!stopped)
+		{
+			stopped = true;
+			
+			// Wakes up the workers so they see the flag and leave
+			phaser.arriveAndDeregister();
+		}
+	}
+	
+	/**
+	 * Returns the amount of shards.
+	 * 
+	 * @return the amount of shards.
+	 */
+	public int getShardCount()
+	{
+		return shards.length;
+	}
+	
+	/**
+	 * Returns the index of the shard of a key.
+	 * 
+	 * @param key to look for.
+	 * @return the index of the shard of the key.
+	 */
+	public int getShardIndex(Object key)
+	{
+		int hash = mix(key.hashCode());
+		
+		// Looks for the first point of the ring at or after the hash
+		int index = Arrays.binarySearch(ring, hash);
+		if (index < 0) index = -index - 1;
+		
+		// Wraps around the ring
+		if (index == ring.length) index = 0;
+		
+		return owners[index];
+	}
+	
+	/**
+	 * Returns a shard, so it can be configured. It must not be executed directly.
+	 * 
+	 * @param index of the shard.
+	 * @return the shard.
+	 */
+	public SingleThreadTaskExecutor getShard(int index)
+	{
+		return shards[index];
+	}
+	
+	/**
+	 * Returns the amount of tasks in a shard.
+	 * 
+	 * @param index of the shard.
+	 * @return the amount of tasks in the shard.
+	 */
+	public int getShardSize(int index)
+	{
+		return shards[index].size();
+	}
+	
+	/**
+	 * Returns the time in nanoseconds that the last execution of a shard took.
+	 * 
+	 * @param index of the shard.
+	 * @return time in nanoseconds that the last execution of the shard took.
+	 */
+	public long getShardTime(int index)
+	{
+		return shards[index].getLastExecutionTime();
+	}
+	
+	private void execute(float delta, boolean timed)
+	{
+		if (stopped) throw new IllegalStateException("The executor is shut down.");
+		
+		// Publishes the tick to the workers, the phaser makes it visible to them
+		this.delta = delta;
+		this.timed = timed;
+		
+		// Starts the workers and waits till all are done
+		phaser.arriveAndAwaitAdvance();
+		phaser.arriveAndAwaitAdvance();
+		
+		// Throws the first error of the shards, if any
+		Throwable error = null;
+		for (int i=0; i<errors.length; i++)
+		{
+			if (error == null) error = errors[i];
+			
+			errors[i] = null;
+		}
+		
+		if (error instanceof RuntimeException) throw (RuntimeException) error;
+		if (error instanceof Error) throw (Error) error;
+		if (error != null) throw new IllegalStateException(error);
+	}
+	
+	private void runShard(int index)
+	{
+		while (true)
+		{
+			// Waits for the next tick
+			phaser.arriveAndAwaitAdvance();
+			
+			// If the executor was shut down
+			if (stopped)
+			{
+				phaser.arriveAndDeregister();
+				
+				return;
+			}
+			
+			try
+			{
+				// Executes the shard
+				if (timed) shards[index].execute(delta);
+				else shards[index].execute();
+			}
+			catch (Throwable t)
+			{
+				errors[index] = t;
+			}
+			
+			// Reports that the shard is done
+			phaser.arriveAndAwaitAdvance();
+		}
+	}
+	
+	private void startWorkers(int executorId)
+	{
+		for (int i=0; i<shards.length; i++)
+		{
+			final int index = i;
+			
+			Thread thread = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					runShard(index);
+				}
+			}, "task-shard-" + executorId + "-" + index);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+	
+	private void buildRing(int virtualNodes)
+	{
+		long[] points = new long[shards.length * virtualNodes];
+		
+		// For each point of each shard
+		for (int i=0; i<shards.length; i++)
+		{
+			for (int j=0; j<virtualNodes; j++)
+			{
+				// Packs the point with its shard so sorting keeps them together
+				int point = mix((i * 0x9E3779B9) ^ (j * 0x85EBCA6B) ^ 0x5BD1E995);
+				points[i * virtualNodes + j] = ((long) point << 32) | i;
+			}
+		}
+		
+		Arrays.sort(points);
+		
+		ring = new int[points.length];
+		owners = new int[points.length];
+		for (int i=0; i<points.length; i++)
+		{
+			ring[i] = (int) (points[i] >> 32);
+			owners[i] = (int) points[i];
+		}
+	}
+	
+	private static int mix(int hash)
+	{
+		// Spreads the bits of the hash so near keys land far on the ring
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		hash ^= hash >>> 13;
+		hash *= 0xC2B2AE35;
+		hash ^= hash >>> 16;
+		
+		return hash;
+	}
+}
@@ -15,21 +15,46 @@
  */
 package es.molabs.task.base;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import es.molabs.task.Task;
-import es.molabs.task.TaskExecutor;
 
-public class SingleThreadTaskExecutor implements TaskExecutor
+/**
+ * Executor that runs all its tasks in each execution on the calling thread.
+ * 
+ * With execute(delta, budget) an execution stops once the budget is used up and the next one resumes from the 
+ * same task, so the time of an execution is bounded and every task still runs in turn. Each round over the tasks 
+ * works on a snapshot taken when it starts: the tasks added meanwhile join the next round and the finished ones 
+ * are removed when it ends. A task receives the time passed since it last ran, which is exact when the collection 
+ * keeps the insertion order, like the default one, otherwise a task can receive only the time since its round started.
+ * An execution without budget always runs every task, after budgeted ones each task receives the time since it last ran.
+ */
+public class SingleThreadTaskExecutor extends AbstractTaskExecutor
 {
+	private static final long NO_BUDGET = Long.MAX_VALUE;
+	
 	//private final Logger logger = LoggerFactory.getLogger(getClass());
 	
-	private Collection<Task> taskCollection = null;
+	private long budget;
+	
+	// Time in nanoseconds, as the sum of the deltas of the budgeted executions
+	private long time;
 	
-	private long lastUpdate;
-	private long lastExecutionTime;
+	// Tasks of the current round and when they last ran, with the arrays of the previous round to swap
+	private Task[] round = null;
+	private long[] roundLastRun = null;
+	private Task[] spareRound = null;
+	private long[] spareLastRun = null;
+	private int roundSize;
+	private int roundCursor;
+	
+	// Tasks removed while there is a round, which entries are skipped, with the set of the previous round to swap
+	private IdentityHashMap<Task, Boolean> removedSet = null;
+	private IdentityHashMap<Task, Boolean> spareRemovedSet = null;
 	
 	/**
 	 * Creates a new TaskExecutor with a ConcurrentLinkedQueue as underlying storage.
@@ -46,124 +71,277 @@ public class SingleThreadTaskExecutor implements TaskExecutor
 	 */
 	public SingleThreadTaskExecutor(Collection<Task> collection)
 	{
-		this.taskCollection = collection;
+		super(collection);
+		
+		budget = NO_BUDGET;
+		time = 0;
+		
+		round = new Task[0];
+		roundLastRun = new long[0];
+		spareRound = new Task[0];
+		spareLastRun = new long[0];
+		roundSize = 0;
+		roundCursor = 0;
 		
-		lastUpdate = 0;
-		lastExecutionTime = 0;
+		removedSet = new IdentityHashMap<Task, Boolean>();
+		spareRemovedSet = new IdentityHashMap<Task, Boolean>();
 	}
 	
-	public void add(Task task)
+	/**
+	 * Executes the tasks till the budget is used up, at least one task is executed. The next execution resumes 
+	 * from the first task that was not executed.
+	 * 
+	 * @param delta time passed in seconds.
+	 * @param budget time in nanoseconds the execution can take.
+	 */
+	public void execute(float delta, long budget)
 	{
-		// Calls the task executor task added hook
-		added(task);
+		if (budget < 0) throw new IllegalArgumentException("Budget can not be negative: " + budget);
 		
-		// Calls the task added hook
-		task.added();
+		this.budget = budget;
 		
-		// Adds the task to the collection
-		taskCollection.add(task);
+		try
+		{
+			execute(delta);
+		}
+		finally
+		{
+			this.budget = NO_BUDGET;
+		}
+	}
+	
+	/**
+	 * Returns if a budgeted execution stopped before executing every task of its round.
+	 * 
+	 * @return if there are tasks waiting for the next execution.
+	 */
+	public boolean isBehind()
+	{
+		return roundCursor < roundSize;
 	}
 	
 	public void remove(Task task)
 	{
-		// Calls the task executor task removed hook
-		removed(task);
-		
-		// Removes the task from the collection
-		taskCollection.remove(task);
+		super.remove(task);
 		
-		// Calls the task removed hook
-		task.removed();
-	}	
+		forget(task);
+	}
 	
-	public void execute()
+	public void clear()
 	{
-		long timeSinceLastUpdate = (lastUpdate > 0 ? System.nanoTime() - lastUpdate : 0);
+		super.clear();
 		
-		execute((timeSinceLastUpdate + lastExecutionTime) / 1_000_000_000f);
+		discardRound();
 	}
 	
-	public void execute(float delta)
+	protected void doExecute(float delta)
+	{
+		// If it is budgeted
+		if (budget != NO_BUDGET)
+		{
+			executeRound(delta);
+		}
+		// If the tasks ran in rounds before
+		else if (roundSize > 0)
+		{
+			executeAllFromRound(delta);
+		}
+		else
+		{
+			executeAll(delta);
+		}
+	}
+	
+	/**
+	 * Marks a task as removed so its entry in the current round is skipped, it is not executed after being removed 
+	 * and the next round does not look for it.
+	 * 
+	 * @param task removed.
+	 */
+	void forget(Task task)
+	{
+		// If there is a round the task can be in
+		if (roundSize > 0) removedSet.put(task, Boolean.TRUE);
+	}
+	
+	private boolean isRemoved(Task task)
+	{
+		return !removedSet.isEmpty() && removedSet.containsKey(task);
+	}
+	
+	private void executeAll(float delta)
 	{
-		long startTime = System.nanoTime();
-		
 		// For each task in the collection
-		Iterator<Task> iterator = taskCollection.iterator();
+		Iterator<Task> iterator = getTaskCollection().iterator();
 		while (iterator.hasNext())
 		{
 			Task task = iterator.next();
 			
 			// If the task in not finished
-			if (!task.isFinished())
+			if (!isFinished(task))
 			{
 				// Executes the task
-				task.execute(delta);
+				executeTask(task, delta);
 			}
 			
 			// If the task if finished after executing it
-			if (task.isFinished())
+			if (isFinished(task))
 			{
-				// Calls the task executor task removed hook
-				removed(task);
-				
-				// Removes the task from the collection
-				iterator.remove();
-				
-				// Calls the task removed hook
-				task.removed();
-				
-				// If it has next task
-				if (task.getNext() != null)
-				{
-					// Adds it to the executor
-					add(task.getNext());
-				}
+				// Removes it and adds its next task
+				finish(iterator, task);
 			}			
 		}
-		
-		lastExecutionTime = System.nanoTime() - startTime;
-		lastUpdate = System.nanoTime();
 	}
 	
-	public void clear() 
+	private void executeAllFromRound(float delta)
 	{
+		// Updates the time of the rounds
+		time += Math.round(delta * 1_000_000_000d);
+		
+		// Starts a new round to know when each task last ran, the ones left in the last round included
+		startRound(delta);
+		
+		int index = 0;
+		
 		// For each task in the collection
-		Iterator<Task> iterator = taskCollection.iterator();
+		Iterator<Task> iterator = getTaskCollection().iterator();
 		while (iterator.hasNext())
-		{	
+		{
 			Task task = iterator.next();
 			
-			// Calls the task executor task removed hook
-			removed(task);			
+			float taskDelta = delta;
+			
+			// If it is the next task of the round it receives the time passed since it last ran
+			if (index < roundSize && round[index] == task)
+			{
+				taskDelta = (time - roundLastRun[index++]) / 1_000_000_000f;
+			}
 			
-			// Removes the task from the collection
-			iterator.remove();
+			// If the task in not finished
+			if (!isFinished(task))
+			{
+				// Executes the task
+				executeTask(task, taskDelta);
+			}
 			
-			// Calls the task removed hook
-			task.removed();
+			// If the task if finished after executing it
+			if (isFinished(task))
+			{
+				// Removes it and adds its next task
+				finish(iterator, task);
+			}
 		}
+		
+		// The tasks are up to date after this execution
+		discardRound();
 	}
 	
-	public int size() 
+	private void discardRound()
 	{
-		return taskCollection.size();
+		Arrays.fill(round, 0, roundSize, null);
+		roundSize = 0;
+		roundCursor = 0;
+		removedSet.clear();
 	}
 	
-	/**
-	 * Hook that will be called before a task is added to the queue.
-	 * 
-	 * @param task to be added to the queue.
-	 */
-	protected void added(Task task)
-	{		
+	private void executeRound(float delta)
+	{
+		long deadline = System.nanoTime() + budget;
+		
+		// Updates the time of the rounds
+		time += Math.round(delta * 1_000_000_000d);
+		
+		// If the last round is finished
+		if (roundCursor == roundSize)
+		{
+			startRound(delta);
+			
+			// If there are no tasks
+			if (roundSize == 0) return;
+		}
+		
+		// For each task left in the round while there is budget, at least one
+		do
+		{
+			Task task = round[roundCursor];
+			
+			// If the task was not removed and is not finished
+			if (!isRemoved(task) && !isFinished(task))
+			{
+				// Executes the task with the time passed since it last ran
+				executeTask(task, (time - roundLastRun[roundCursor]) / 1_000_000_000f);
+				
+				roundLastRun[roundCursor] = time;
+			}
+			
+			roundCursor++;
+		}
+		while (roundCursor < roundSize && (budget == NO_BUDGET || System.nanoTime() - deadline < 0));
 	}
 	
-	/**
-	 * Hook that will be called before a task is removed from the queue.
-	 * 
-	 * @param task to be removed from the queue.
-	 */
-	protected void removed(Task task)
-	{		
+	private void startRound(float delta)
+	{
+		// The tasks that did not run in the last round receive the time since this round started
+		long defaultLastRun = time - Math.round(delta * 1_000_000_000d);
+		
+		Task[] lastRound = round;
+		long[] lastRoundLastRun = roundLastRun;
+		int lastRoundSize = roundSize;
+		int lastRoundIndex = 0;
+		
+		IdentityHashMap<Task, Boolean> lastRemovedSet = removedSet;
+		
+		// Swaps the arrays
+		round = spareRound;
+		roundLastRun = spareLastRun;
+		roundSize = 0;
+		roundCursor = 0;
+		removedSet = spareRemovedSet;
+		
+		// For each task in the collection
+		Iterator<Task> iterator = getTaskCollection().iterator();
+		while (iterator.hasNext())
+		{
+			Task task = iterator.next();
+			
+			// Skips the tasks of the last round that were removed
+			while (lastRoundIndex < lastRoundSize && lastRemovedSet.containsKey(lastRound[lastRoundIndex])) lastRoundIndex++;
+			
+			long lastRun = defaultLastRun;
+			
+			// If it is the next task of the last round
+			if (lastRoundIndex < lastRoundSize && lastRound[lastRoundIndex] == task)
+			{
+				lastRun = lastRoundLastRun[lastRoundIndex++];
+			}
+			
+			// If the task is finished
+			if (isFinished(task))
+			{
+				// Removes it and adds its next task
+				finish(iterator, task);
+			}
+			else
+			{
+				// If the round is full
+				if (roundSize == round.length)
+				{
+					// Doubles its size
+					round = Arrays.copyOf(round, Math.max(roundSize * 2, 16));
+					roundLastRun = Arrays.copyOf(roundLastRun, round.length);
+				}
+				
+				round[roundSize] = task;
+				roundLastRun[roundSize] = lastRun;
+				roundSize++;
+			}
+		}
+		
+		// Releases the references to the tasks of the last round and keeps its arrays
+		Arrays.fill(lastRound, 0, lastRoundSize, null);
+		lastRemovedSet.clear();
+		spareRound = lastRound;
+		spareLastRun = lastRoundLastRun;
+		spareRemovedSet = lastRemovedSet;
 	}
 }
@@ -0,0 +1,255 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import es.molabs.task.Task;
+import es.molabs.task.TaskExecutor;
+
+/**
+ * Executor that stages the add and remove calls from any thread and applies them to an underlying executor
+ * from the thread that calls execute.
+ * 
+ * The calls to add and remove never block, they are stored in a multiple producer single consumer queue and applied 
+ * in order at the beginning of the next call to execute, or when flush is called. So the added and removed hooks of 
+ * the underlying executor and the tasks are always run on the executor thread, and the underlying storage is only 
+ * used by that thread. As the calls are not applied immediately size does not count the staged tasks.
+ * 
+ * Tasks can also be submitted from any thread if the underlying executor is an AbstractTaskExecutor, the staged 
+ * call submits the task to it and the returned future follows the one of the underlying executor.
+ */
+public class StagedTaskExecutor implements TaskExecutor
+{
+	private TaskExecutor taskExecutor = null;
+	
+	// Queue where the producers append at the tail and the executor thread takes from the head
+	private AtomicReference<Command> tail = null;
+	private Command head = null;
+	
+	/**
+	 * Creates a new TaskExecutor that stages the calls to a SingleThreadTaskExecutor.
+	 */
+	public StagedTaskExecutor()
+	{
+		this(new SingleThreadTaskExecutor());
+	}
+	
+	/**
+	 * Creates a new TaskExecutor that stages the calls to the executor parameter.
+	 * 
+	 * @param taskExecutor where the calls are applied.
+	 */
+	public StagedTaskExecutor(TaskExecutor taskExecutor)
+	{
+		this.taskExecutor = taskExecutor;
+		
+		head = new Command(null, false, null);
+		tail = new AtomicReference<Command>(head);
+	}
+	
+	public void add(Task task)
+	{
+		offer(new Command(task, true, null));
+	}
+	
+	/**
+	 * Stages the submission of a task to the underlying executor. It can be called from any thread. The returned future 
+	 * completes as the one returned by AbstractTaskExecutor.submit once the call is applied, and cancelling it before 
+	 * that discards the call.
+	 * 
+	 * @param task to submit.
+	 * @return the future of the task.
+	 * 
+	 * @throws UnsupportedOperationException if the underlying executor is not an AbstractTaskExecutor.
+	 */
+	public CompletableFuture<Task> submit(Task task)
+	{
+		// If the underlying executor cannot track the task
+		if (!(taskExecutor instanceof AbstractTaskExecutor))
+		{
+			throw new UnsupportedOperationException("The underlying executor does not support submit: " + taskExecutor.getClass().getName());
+		}
+		
+		StagedFuture future = new StagedFuture();
+		
+		offer(new Command(task, true, future));
+		
+		return future;
+	}
+	
+	public void remove(Task task)
+	{
+		offer(new Command(task, false, null));
+	}
+	
+	public void execute()
+	{
+		flush();
+		
+		taskExecutor.execute();
+	}
+	
+	public void execute(float delta)
+	{
+		flush();
+		
+		taskExecutor.execute(delta);
+	}
+	
+	/**
+	 * Discards the staged calls and removes all task from the underlying executor. 
+	 * Must be called from the executor thread.
+	 */
+	public void clear()
+	{
+		// Discards the staged calls
+		Command command;
+		while ((command = poll()) != null)
+		{
+			// The staged submissions will never be applied
+			if (command.future != null) command.future.cancel(false);
+		}
+		
+		taskExecutor.clear();
+	}
+	
+	public int size()
+	{
+		return taskExecutor.size();
+	}
+	
+	/**
+	 * Applies the staged calls to the underlying executor. Must be called from the executor thread.
+	 */
+	public void flush()
+	{
+		Command command;
+		while ((command = poll()) != null)
+		{
+			// If it is a submit call
+			if (command.future != null)
+			{
+				// If it was not cancelled while it was staged
+				if (!command.future.isDone())
+				{
+					command.future.follow(((AbstractTaskExecutor) taskExecutor).submit(command.task));
+				}
+			}
+			// If it is an add call
+			else if (command.add)
+			{
+				taskExecutor.add(command.task);
+			}
+			else
+			{
+				taskExecutor.remove(command.task);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the underlying executor.
+	 * 
+	 * @return the underlying executor.
+	 */
+	public TaskExecutor getTaskExecutor()
+	{
+		return taskExecutor;
+	}
+	
+	private void offer(Command command)
+	{
+		// Links the command after the previous tail
+		Command previous = tail.getAndSet(command);
+		previous.next = command;
+	}
+	
+	private Command poll()
+	{
+		Command next = head.next;
+		
+		// If there is a linked command
+		if (next != null)
+		{
+			// It becomes the new head
+			head.task = null;
+			head.future = null;
+			head = next;
+		}
+		
+		return next;
+	}
+	
+	private static class Command
+	{
+		private Task task = null;
+		private final boolean add;
+		private StagedFuture future = null;
+		
+		private volatile Command next = null;
+		
+		private Command(Task task, boolean add, StagedFuture future)
+		{
+			this.task = task;
+			this.add = add;
+			this.future = future;
+		}
+	}
+	
+	private static class StagedFuture extends CompletableFuture<Task>
+	{
+		private volatile CompletableFuture<Task> future = null;
+		
+		private void follow(CompletableFuture<Task> future)
+		{
+			this.future = future;
+			
+			// Completes as the future of the underlying executor
+			future.whenComplete(new BiConsumer<Task, Throwable>()
+			{
+				public void accept(Task task, Throwable error)
+				{
+					if (error != null)
+					{
+						completeExceptionally(error);
+					}
+					else
+					{
+						complete(task);
+					}
+				}
+			});
+			
+			// If it was cancelled while the call was being applied
+			if (isCancelled()) future.cancel(false);
+		}
+		
+		public boolean cancel(boolean mayInterruptIfRunning)
+		{
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			
+			CompletableFuture<Task> future = this.future;
+			
+			// If the call was applied, the task is removed from the underlying executor
+			if (cancelled && future != null) future.cancel(mayInterruptIfRunning);
+			
+			return cancelled;
+		}
+	}
+}
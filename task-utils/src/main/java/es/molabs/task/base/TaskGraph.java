@@ -0,0 +1,397 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import es.molabs.task.Task;
+import es.molabs.task.TimeSource;
+import es.molabs.task.error.ErrorPolicy;
+
+/**
+ * Task made of other tasks that depend on each other. A task of the graph starts once all the tasks it depends 
+ * on have finished, in the same execution, and runs in each execution till it finishes. The graph is finished 
+ * when all its tasks are.
+ * 
+ * A task can only depend on tasks already added, so the graph never has cycles. If a task is removed by its error 
+ * policy, the tasks that depend on it, directly or not, are skipped. The tasks of the graph can not have a next task,
+ * it has to be added to the graph depending on them instead.
+ * 
+ * The tasks that are running at the same time can run in parallel on a ForkJoinPool. The added and removed hooks
+ * of the tasks, and the starting of the next ones, always run on the thread that executes the graph.
+ */
+public class TaskGraph implements Task
+{
+	private static final int WAITING = 0;
+	private static final int RUNNING = 1;
+	private static final int DONE = 2;
+	
+	private ForkJoinPool pool = null;
+	
+	private List<Node> nodeList = null;
+	private Map<Task, Node> nodeMap = null;
+	
+	private Node[] running = null;
+	private Task[] runningTasks = null;
+	private int runningSize;
+	private int doneCount;
+	private boolean started;
+	
+	private Task next = null;
+	
+	private TimeSource timeSource = null;
+	private ErrorPolicy errorPolicy = null;
+	
+	/**
+	 * Creates a new graph that runs its tasks on the calling thread.
+	 */
+	public TaskGraph()
+	{
+		this(null);
+	}
+	
+	/**
+	 * Creates a new graph that runs its tasks on a pool.
+	 * 
+	 * @param pool where the tasks will run, null to run them on the calling thread.
+	 */
+	public TaskGraph(ForkJoinPool pool)
+	{
+		this.pool = pool;
+		
+		nodeList = new ArrayList<Node>();
+		nodeMap = new IdentityHashMap<Task, Node>();
+		
+		running = new Node[16];
+		runningTasks = new Task[16];
+		
+		reset();
+	}
+	
+	/**
+	 * Adds a task to the graph. It can not be called once the graph has been executed.
+	 * 
+	 * @param task to add.
+	 * @param predecessors tasks already added that have to finish before this one starts.
+	 */
+	public void add(Task task, Task...predecessors)
+	{
+		if (started) throw new IllegalStateException("Tasks can not be added to a graph once it has been executed.");
+		if (nodeMap.containsKey(task)) throw new IllegalArgumentException("The task is already in the graph: " + task);
+		if (task.getNext() != null) throw new IllegalArgumentException("A task of the graph can not have a next task: " + task);
+		
+		Node node = new Node(task, predecessors.length);
+		
+		// For each task it depends on
+		for (int i=0; i<predecessors.length; i++)
+		{
+			Node predecessor = nodeMap.get(predecessors[i]);
+			
+			if (predecessor == null) throw new IllegalArgumentException("The predecessor is not in the graph: " + predecessors[i]);
+			
+			predecessor.successors.add(node);
+		}
+		
+		nodeList.add(node);
+		nodeMap.put(task, node);
+		
+		// If the graph was already given the time source or the error policy of an executor
+		if (timeSource != null) task.setTimeSource(timeSource);
+		if (errorPolicy != null) task.setErrorPolicy(errorPolicy);
+	}
+	
+	public void added()
+	{
+	}
+	
+	public void removed()
+	{
+	}
+	
+	public void setTimeSource(TimeSource timeSource)
+	{
+		this.timeSource = timeSource;
+		
+		// The tasks of the graph read the time from the same source
+		for (int i=0; i<nodeList.size(); i++)
+		{
+			nodeList.get(i).task.setTimeSource(timeSource);
+		}
+	}
+	
+	public void setErrorPolicy(ErrorPolicy errorPolicy)
+	{
+		this.errorPolicy = errorPolicy;
+		
+		// The tasks of the graph handle their errors with the same policy
+		for (int i=0; i<nodeList.size(); i++)
+		{
+			nodeList.get(i).task.setErrorPolicy(errorPolicy);
+		}
+	}
+	
+	public boolean isFinished()
+	{
+		return doneCount == nodeList.size();
+	}
+	
+	public void reset()
+	{
+		// For each task
+		for (int i=0; i<nodeList.size(); i++)
+		{
+			Node node = nodeList.get(i);
+			
+			// If it was started
+			if (node.state != WAITING)
+			{
+				node.task.reset();
+			}
+			
+			node.state = WAITING;
+			node.pending = node.inputs;
+		}
+		
+		Arrays.fill(running, 0, runningSize, null);
+		runningSize = 0;
+		doneCount = 0;
+		started = false;
+	}
+	
+	public Task getNext()
+	{
+		return next;
+	}
+	
+	public void setNext(Task next)
+	{
+		this.next = next;
+	}
+	
+	/**
+	 * Returns if a task of the graph is running.
+	 * 
+	 * @param task of the graph.
+	 * 
+	 * @return if the task has started and not finished yet.
+	 */
+	public boolean isRunning(Task task)
+	{
+		Node node = nodeMap.get(task);
+		
+		return node != null && node.state == RUNNING;
+	}
+	
+	public void execute(float delta)
+	{
+		// If it is the first execution
+		if (!started)
+		{
+			start();
+		}
+		
+		int from = 0;
+		int to = runningSize;
+		
+		// While some tasks have not run in this execution
+		while (from < to)
+		{
+			// Runs them
+			run(from, to, delta);
+			
+			// For each task that has run
+			for (int i=from; i<to; i++)
+			{
+				Node node = running[i];
+				
+				// If the task is done after running it
+				if (AbstractTask.isFinished(node.task))
+				{
+					// Starts the tasks that were waiting for it, they run in this execution
+					finish(node);
+				}
+			}
+			
+			from = to;
+			to = runningSize;
+		}
+		
+		// Removes the finished tasks
+		compact();
+	}
+	
+	private void start()
+	{
+		// For each task
+		for (int i=0; i<nodeList.size(); i++)
+		{
+			// If it was given a next task after being added
+			if (nodeList.get(i).task.getNext() != null) throw new IllegalStateException("A task of the graph can not have a next task: " + nodeList.get(i).task);
+		}
+		
+		started = true;
+		
+		// Starts the tasks that do not depend on others
+		for (int i=0; i<nodeList.size(); i++)
+		{
+			Node node = nodeList.get(i);
+			
+			if (node.inputs == 0)
+			{
+				startNode(node);
+			}
+		}
+	}
+	
+	private void run(int from, int to, float delta)
+	{
+		// If there is a pool and more than one task to run
+		if (pool != null && to - from > 1)
+		{
+			// If the tasks do not fit
+			if (runningTasks.length < running.length)
+			{
+				runningTasks = new Task[running.length];
+			}
+			
+			for (int i=from; i<to; i++)
+			{
+				runningTasks[i] = running[i].task;
+			}
+			
+			// Runs the tasks on the pool and waits till all are done
+			pool.invoke(new ExecuteAction(runningTasks, from, to, delta, 1, null));
+			
+			// Releases the references to the tasks
+			Arrays.fill(runningTasks, from, to, null);
+		}
+		else
+		{
+			for (int i=from; i<to; i++)
+			{
+				// If the task in not finished
+				if (!AbstractTask.isFinished(running[i].task))
+				{
+					running[i].task.execute(delta);
+				}
+			}
+		}
+	}
+	
+	private void startNode(Node node)
+	{
+		node.state = RUNNING;
+		
+		// Calls the task added hook
+		node.task.added();
+		
+		// If the running list is full
+		if (runningSize == running.length)
+		{
+			// Doubles its size
+			running = Arrays.copyOf(running, runningSize * 2);
+		}
+		
+		running[runningSize++] = node;
+	}
+	
+	private void finish(Node node)
+	{
+		node.state = DONE;
+		doneCount++;
+		
+		// Calls the task removed hook
+		node.task.removed();
+		
+		boolean failed = AbstractTask.isFailed(node.task);
+		
+		// For each task that depends on this one
+		for (int i=0; i<node.successors.size(); i++)
+		{
+			Node successor = node.successors.get(i);
+			
+			// If the task failed
+			if (failed)
+			{
+				skip(successor);
+			}
+			// If it was the last task it was waiting for
+			else if (--successor.pending == 0 && successor.state == WAITING)
+			{
+				startNode(successor);
+			}
+		}
+	}
+	
+	private void skip(Node node)
+	{
+		// If it was not skipped already
+		if (node.state == WAITING)
+		{
+			node.state = DONE;
+			doneCount++;
+			
+			// Skips the tasks that depend on it
+			for (int i=0; i<node.successors.size(); i++)
+			{
+				skip(node.successors.get(i));
+			}
+		}
+	}
+	
+	private void compact()
+	{
+		int size = 0;
+		
+		// Keeps the running tasks in their order
+		for (int i=0; i<runningSize; i++)
+		{
+			if (running[i].state == RUNNING)
+			{
+				running[size++] = running[i];
+			}
+		}
+		
+		Arrays.fill(running, size, runningSize, null);
+		runningSize = size;
+	}
+	
+	private static class Node
+	{
+		private final Task task;
+		private final int inputs;
+		private final List<Node> successors;
+		
+		private int pending;
+		private int state;
+		
+		private Node(Task task, int inputs)
+		{
+			this.task = task;
+			this.inputs = inputs;
+			
+			successors = new ArrayList<Node>();
+			
+			pending = inputs;
+			state = WAITING;
+		}
+	}
+}
@@ -0,0 +1,341 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base;
+
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.molabs.task.TaskExecutor;
+
+/**
+ * Runs a TaskExecutor on its own thread at a fixed tick rate.
+ * 
+ * The thread parks till shortly before the next tick and then spins the remaining time, so the ticks start on time
+ * even if the parking granularity of the system is coarse. When a tick takes longer than the tick period the catch up
+ * policy decides what happens with the missed ticks. The achieved tick rate and the jitter, the time between when a 
+ * tick should have started and when it started, are measured in windows of one second.
+ * 
+ * The loop thread is a daemon thread, so it does not keep the application alive. An exception thrown by a tick is 
+ * logged and the loop goes on, an Error is logged and stops the loop.
+ */
+public class TaskLoop 
+{
+	/**
+	 * What to do when a tick takes longer than the tick period.
+	 */
+	public enum CatchUpPolicy
+	{
+		/**
+		 * The missed ticks are dropped and the loop waits for the next tick of the original schedule. 
+		 * Each tick receives the real time passed since the previous one as delta.
+		 */
+		SKIP,
+		
+		/**
+		 * The missed ticks are run back to back till the loop catches up with the original schedule. 
+		 * Each tick receives the tick period as delta.
+		 */
+		BURST,
+		
+		/**
+		 * The schedule is restarted from the end of the long tick. 
+		 * Each tick receives the real time passed since the previous one as delta.
+		 */
+		STRETCH
+	}
+	
+	// 200 microseconds in nanoseconds
+	private static final long DEFAULT_SPIN_TIME = 200_000;
+	
+	// 1 second in nanoseconds
+	private static final long STATISTICS_WINDOW = 1_000_000_000;
+	
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	
+	private TaskExecutor taskExecutor = null;
+	private long period;
+	private CatchUpPolicy catchUpPolicy = null;
+	private long spinTime;
+	
+	private volatile boolean running;
+	private volatile Thread thread = null;
+	
+	private volatile float tickRate;
+	private volatile long jitter;
+	private volatile long maxJitter;
+	private volatile long missedTicks;
+	
+	/**
+	 * Creates a new loop that skips the missed ticks.
+	 * 
+	 * @param taskExecutor to run.
+	 * @param ticksPerSecond rate at which the executor is run.
+	 */
+	public TaskLoop(TaskExecutor taskExecutor, float ticksPerSecond)
+	{
+		this(taskExecutor, ticksPerSecond, CatchUpPolicy.SKIP);
+	}
+	
+	/**
+	 * Creates a new loop.
+	 * 
+	 * @param taskExecutor to run.
+	 * @param ticksPerSecond rate at which the executor is run.
+	 * @param catchUpPolicy for the ticks that take longer than the tick period.
+	 */
+	public TaskLoop(TaskExecutor taskExecutor, float ticksPerSecond, CatchUpPolicy catchUpPolicy)
+	{
+		this(taskExecutor, ticksPerSecond, catchUpPolicy, DEFAULT_SPIN_TIME);
+	}
+	
+	/**
+	 * Creates a new loop.
+	 * 
+	 * @param taskExecutor to run.
+	 * @param ticksPerSecond rate at which the executor is run.
+	 * @param catchUpPolicy for the ticks that take longer than the tick period.
+	 * @param spinTime in nanoseconds that the thread spins, instead of parking, before each tick.
+	 */
+	public TaskLoop(TaskExecutor taskExecutor, float ticksPerSecond, CatchUpPolicy catchUpPolicy, long spinTime)
+	{
+		if (ticksPerSecond <= 0) throw new IllegalArgumentException("Ticks per second must be greater than 0: " + ticksPerSecond);
+		
+		this.taskExecutor = taskExecutor;
+		this.period = (long) (1_000_000_000d / ticksPerSecond);
+		this.catchUpPolicy = catchUpPolicy;
+		this.spinTime = spinTime;
+		
+		running = false;
+		
+		tickRate = 0f;
+		jitter = 0;
+		maxJitter = 0;
+		missedTicks = 0;
+	}
+	
+	/**
+	 * Starts the loop thread.
+	 */
+	public synchronized void start()
+	{
+		if (running) throw new IllegalStateException("Loop already running.");
+		
+		// If it was stopped from its own thread and the last tick is not finished yet
+		if (thread != null && thread.isAlive()) throw new IllegalStateException("Loop still stopping.");
+		
+		running = true;
+		
+		thread = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				loop();
+			}
+		}, "task-loop");
+		
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Stops the loop thread and waits till the current tick is finished. If it is called from the loop thread, 
+	 * by a task, it does not wait and the loop stops once the current tick is finished.
+	 * 
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public void stop() throws InterruptedException
+	{
+		// If it is called from a tick it can not wait for itself
+		if (Thread.currentThread() == thread)
+		{
+			running = false;
+			
+			return;
+		}
+		
+		synchronized (this)
+		{
+			running = false;
+			
+			Thread current = thread;
+			
+			if (current != null)
+			{
+				current.join();
+				
+				thread = null;
+			}
+		}
+	}
+	
+	public boolean isRunning()
+	{
+		return running;
+	}
+	
+	/**
+	 * Returns the ticks per second achieved in the last statistics window.
+	 * 
+	 * @return ticks per second.
+	 */
+	public float getTickRate()
+	{
+		return tickRate;
+	}
+	
+	/**
+	 * Returns the mean jitter of the ticks in the last statistics window.
+	 * 
+	 * @return jitter in nanoseconds.
+	 */
+	public long getJitter()
+	{
+		return jitter;
+	}
+	
+	/**
+	 * Returns the maximum jitter of the ticks in the last statistics window.
+	 * 
+	 * @return jitter in nanoseconds.
+	 */
+	public long getMaxJitter()
+	{
+		return maxJitter;
+	}
+	
+	/**
+	 * Returns the amount of ticks dropped by the SKIP and STRETCH policies since the loop was created.
+	 * 
+	 * @return the amount of missed ticks.
+	 */
+	public long getMissedTicks()
+	{
+		return missedTicks;
+	}
+	
+	private void loop()
+	{
+		long nextTick = System.nanoTime();
+		long lastTick = nextTick - period;
+		
+		long windowStart = nextTick;
+		int windowTicks = 0;
+		long windowJitter = 0;
+		long windowMaxJitter = 0;
+		
+		while (running)
+		{
+			// Waits till the tick has to start
+			waitUntil(nextTick);
+			
+			long tickStart = System.nanoTime();
+			
+			// Executes the tasks
+			try
+			{
+				taskExecutor.execute((catchUpPolicy == CatchUpPolicy.BURST ? period : tickStart - lastTick) / 1_000_000_000f);
+			}
+			catch (RuntimeException re)
+			{
+				logger.error(re.getLocalizedMessage(), re);
+			}
+			catch (Error e)
+			{
+				// The loop can not go on
+				running = false;
+				
+				logger.error(e.getLocalizedMessage(), e);
+				
+				throw e;
+			}
+			
+			lastTick = tickStart;
+			
+			// Updates the statistics
+			windowTicks++;
+			windowJitter += tickStart - nextTick;
+			windowMaxJitter = Math.max(windowMaxJitter, tickStart - nextTick);
+			
+			// If the statistics window is over
+			if (tickStart - windowStart >= STATISTICS_WINDOW)
+			{
+				tickRate = windowTicks / ((tickStart - windowStart) / 1_000_000_000f);
+				jitter = windowJitter / windowTicks;
+				maxJitter = windowMaxJitter;
+				
+				windowStart = tickStart;
+				windowTicks = 0;
+				windowJitter = 0;
+				windowMaxJitter = 0;
+			}
+			
+			nextTick += period;
+			
+			long tickEnd = System.nanoTime();
+			
+			// If the tick took longer than the period
+			if (tickEnd - nextTick > 0)
+			{
+				long missed = (tickEnd - nextTick) / period + 1;
+				
+				switch (catchUpPolicy)
+				{
+					case SKIP:
+					{
+						// Waits for the next tick of the schedule
+						nextTick += missed * period;
+						missedTicks += missed;
+						
+						break;
+					}
+					
+					case STRETCH:
+					{
+						// Restarts the schedule
+						nextTick = tickEnd;
+						missedTicks += missed;
+						
+						break;
+					}
+					
+					default:
+					{
+						// Keeps the schedule so the next ticks start immediately
+						break;
+					}
+				}
+			}
+		}
+	}
+	
+	private void waitUntil(long time)
+	{
+		long remaining = time - System.nanoTime();
+		
+		// Parks while there is more time left than the spin time
+		while (remaining > spinTime)
+		{
+			LockSupport.parkNanos(remaining - spinTime);
+			
+			remaining = time - System.nanoTime();
+		}
+		
+		// Spins the remaining time
+		while (System.nanoTime() - time < 0);
+	}
+}
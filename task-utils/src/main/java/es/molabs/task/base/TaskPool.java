@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base;
+
+import java.util.function.Supplier;
+
+/**
+ * Pool of reusable tasks of one kind. 
+ * 
+ * The tasks given by acquire are recycled by the executors: once they finish and their next task, if any, has been 
+ * added, they are reset and returned to the pool. The pool keeps up to its capacity tasks, the rest are left to
+ * the garbage collector. A recycled task must not be used after it finishes as it may have been given again.
+ * 
+ * It is thread safe, so the tasks can be acquired on a different thread than the one that executes them.
+ *
+ * @param <T> type of the tasks.
+ */
+public class TaskPool<T extends AbstractTask>
+{
+	private Supplier<T> factory = null;
+	
+	private AbstractTask[] tasks = null;
+	private int size;
+	
+	private long created;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param factory that creates the tasks when the pool is empty.
+	 * @param capacity maximum amount of tasks kept by the pool.
+	 */
+	public TaskPool(Supplier<T> factory, int capacity)
+	{
+		if (capacity < 1) throw new IllegalArgumentException("Capacity must be greater than 0: " + capacity);
+		
+		this.factory = factory;
+		
+		tasks = new AbstractTask[capacity];
+		size = 0;
+		
+		created = 0;
+	}
+	
+	/**
+	 * Returns a task from the pool or a new one if it is empty.
+	 * 
+	 * @return a task ready to be added to an executor.
+	 */
+	@SuppressWarnings("unchecked")
+	public T acquire()
+	{
+		AbstractTask task = null;
+		
+		synchronized (this)
+		{
+			// If there are tasks in the pool
+			if (size > 0)
+			{
+				task = tasks[--size];
+				tasks[size] = null;
+			}
+			else
+			{
+				created++;
+			}
+		}
+		
+		// If the pool was empty
+		if (task == null)
+		{
+			task = factory.get();
+			task.setPool(this);
+		}
+		
+		return (T) task;
+	}
+	
+	/**
+	 * Returns the amount of tasks waiting in the pool.
+	 * 
+	 * @return the amount of tasks in the pool.
+	 */
+	public synchronized int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * Returns how many tasks the pool has created because it was empty.
+	 * 
+	 * @return the amount of tasks created.
+	 */
+	public synchronized long getCreated()
+	{
+		return created;
+	}
+	
+	/**
+	 * Resets a finished task and keeps it if there is room.
+	 * 
+	 * @param task finished.
+	 */
+	void release(AbstractTask task)
+	{
+		// Clears the task for its next use
+		task.setNext(null);
+		task.reset();
+		
+		synchronized (this)
+		{
+			// If there is room
+			if (size < tasks.length)
+			{
+				tasks[size++] = task;
+			}
+		}
+	}
+}
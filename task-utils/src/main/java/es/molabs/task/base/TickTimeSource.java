@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base;
+
+import es.molabs.task.TimeSource;
+
+/**
+ * Time source that returns the time sampled at the beginning of the current tick of an executor, so all the tasks
+ * of a tick read the same time without reading the clock.
+ */
+class TickTimeSource implements TimeSource
+{
+	private TimeSource source = null;
+	
+	private volatile long time;
+	
+	TickTimeSource(TimeSource source)
+	{
+		this.source = source;
+		
+		time = source.nanoTime();
+	}
+	
+	public long nanoTime()
+	{
+		return time;
+	}
+	
+	TimeSource getSource()
+	{
+		return source;
+	}
+	
+	void setSource(TimeSource source)
+	{
+		this.source = source;
+		
+		time = source.nanoTime();
+	}
+	
+	/**
+	 * Samples the underlying source.
+	 * 
+	 * @return the new time.
+	 */
+	long update()
+	{
+		long now = source.nanoTime();
+		
+		time = now;
+		
+		return now;
+	}
+}
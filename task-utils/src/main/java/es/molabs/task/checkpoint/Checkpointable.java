@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.checkpoint;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Task which progress can be saved to a checkpoint and restored after a restart.
+ * 
+ * The state is written and read in the same order by each class of the hierarchy, a subclass with its own 
+ * state must call the super methods first. Times read from a time source are not valid after a restart, so they 
+ * are saved relative to the now parameter with TaskCheckpoint.putTime and restored with TaskCheckpoint.getTime.
+ */
+public interface Checkpointable 
+{
+	/**
+	 * Writes the progress of the task.
+	 * 
+	 * @param buffer where the state is written.
+	 * @param now current time in nanoseconds of the checkpoint time source.
+	 */
+	public void saveState(ByteBuffer buffer, long now);
+	
+	/**
+	 * Reads the progress of the task written by saveState.
+	 * 
+	 * @param buffer where the state is read.
+	 * @param now current time in nanoseconds of the checkpoint time source.
+	 */
+	public void restoreState(ByteBuffer buffer, long now);
+}
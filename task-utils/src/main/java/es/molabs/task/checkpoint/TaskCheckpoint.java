@@ -0,0 +1,524 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.checkpoint;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import es.molabs.task.Task;
+import es.molabs.task.TimeSource;
+
+/**
+ * Stores the progress of tasks in a memory mapped file so they resume where they left off after a restart.
+ * 
+ * Each task is registered with an id that does not change between restarts and gets a fixed slot of the file. 
+ * When a task is registered and the file has a valid state for its id, the state is restored right away, so the 
+ * tasks are created and registered on startup as usual. The checkpoint is a task itself: added to the executor, it 
+ * saves a few tasks in each execution, so the tasks are saved incrementally without stopping the tick and always 
+ * from the thread that runs them. Each slot keeps two copies of the state with a sequence number and a checksum, 
+ * and each save overwrites the oldest one, so if the process stops while a copy is being written the task is 
+ * restored from the other one.
+ * 
+ * The time that passes while the process is stopped is not counted, the tasks resume with the same time left 
+ * they had when they were saved. All the calls must be made from the executor thread.
+ */
+public class TaskCheckpoint implements Task, Closeable
+{
+	private static final int MAGIC = 0x54534B43;
+	private static final int VERSION = 2;
+	
+	private static final int HEADER_SIZE = 16;
+	
+	// Length and checksum of the data of a copy
+	private static final int SLOT_HEADER_SIZE = 8;
+	
+	// Sequence number and id length at the start of the data of a copy
+	private static final int DATA_HEADER_SIZE = 10;
+	
+	private static final int DEFAULT_TASKS_PER_EXECUTION = 16;
+	
+	private FileChannel channel = null;
+	private MappedByteBuffer buffer = null;
+	
+	private int slotCount;
+	private int slotSize;
+	private int tasksPerExecution;
+	
+	// Slot of each id, registered or only stored in the file
+	private Map<String, Integer> slotMap = null;
+	private String[] ids = null;
+	private Checkpointable[] tasks = null;
+	private int cursor;
+	
+	// Sequence number of the newest copy of each slot, 0 if it has none
+	private long[] sequences = null;
+	
+	private ByteBuffer scratch = null;
+	private CRC32 crc = null;
+	
+	private TimeSource timeSource = null;
+	
+	/**
+	 * Opens or creates a checkpoint file.
+	 * 
+	 * @param file where the checkpoint is stored.
+	 * @param slotCount maximum amount of tasks.
+	 * @param slotSize size in bytes of each of the two copies of the state of a task.
+	 * @throws IOException if the file can not be mapped or was created with another slot count or size.
+	 */
+	public TaskCheckpoint(Path file, int slotCount, int slotSize) throws IOException
+	{
+		this(file, slotCount, slotSize, DEFAULT_TASKS_PER_EXECUTION);
+	}
+	
+	/**
+	 * Opens or creates a checkpoint file.
+	 * 
+	 * @param file where the checkpoint is stored.
+	 * @param slotCount maximum amount of tasks.
+	 * @param slotSize size in bytes of each of the two copies of the state of a task.
+	 * @param tasksPerExecution amount of tasks saved each time the checkpoint is executed.
+	 * @throws IOException if the file can not be mapped or was created with another slot count or size.
+	 */
+	public TaskCheckpoint(Path file, int slotCount, int slotSize, int tasksPerExecution) throws IOException
+	{
+		if (slotCount < 1) throw new IllegalArgumentException("Slot count must be greater than 0: " + slotCount);
+		if (slotSize <= SLOT_HEADER_SIZE + DATA_HEADER_SIZE) throw new IllegalArgumentException("Slot size must be greater than " + (SLOT_HEADER_SIZE + DATA_HEADER_SIZE) + ": " + slotSize);
+		if ((long) slotCount * slotSize * 2 > Integer.MAX_VALUE - HEADER_SIZE) throw new IllegalArgumentException("Checkpoint can not be bigger than 2GB: " + slotCount + " slots of " + slotSize + " bytes.");
+		if (tasksPerExecution < 1) throw new IllegalArgumentException("Tasks per execution must be greater than 0: " + tasksPerExecution);
+		
+		this.slotCount = slotCount;
+		this.slotSize = slotSize;
+		this.tasksPerExecution = tasksPerExecution;
+		
+		slotMap = new HashMap<String, Integer>();
+		ids = new String[slotCount];
+		tasks = new Checkpointable[slotCount];
+		cursor = 0;
+		sequences = new long[slotCount];
+		
+		scratch = ByteBuffer.allocate(slotSize - SLOT_HEADER_SIZE);
+		crc = new CRC32();
+		
+		timeSource = TimeSource.SYSTEM;
+		
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		
+		try
+		{
+			open();
+		}
+		catch (IOException | RuntimeException e)
+		{
+			channel.close();
+			
+			throw e;
+		}
+	}
+	
+	/**
+	 * Registers a task and restores its state if the checkpoint has it.
+	 * 
+	 * @param id of the task, it must be the same between restarts.
+	 * @param task to register.
+	 * @return if the state of the task was restored.
+	 */
+	public boolean register(String id, Checkpointable task)
+	{
+		Integer slot = slotMap.get(id);
+		
+		if (slot != null && tasks[slot] != null) throw new IllegalArgumentException("Id already registered: " + id);
+		
+		boolean restored = false;
+		
+		// If the file has a slot for the id
+		if (slot != null)
+		{
+			restored = restore(slot, task);
+		}
+		else
+		{
+			slot = reserveSlot(id);
+		}
+		
+		tasks[slot] = task;
+		
+		return restored;
+	}
+	
+	/**
+	 * Unregisters a task and discards its state.
+	 * 
+	 * @param id of the task.
+	 */
+	public void unregister(String id)
+	{
+		Integer slot = slotMap.remove(id);
+		
+		// If the id has a slot
+		if (slot != null)
+		{
+			ids[slot] = null;
+			tasks[slot] = null;
+			
+			// Marks the slot as empty
+			clearSlot(slot);
+		}
+	}
+	
+	/**
+	 * Saves all the registered tasks.
+	 */
+	public void save()
+	{
+		long now = timeSource.nanoTime();
+		
+		for (int i=0; i<slotCount; i++)
+		{
+			if (tasks[i] != null) save(i, now);
+		}
+	}
+	
+	/**
+	 * Writes the saved states to the storage device, so they survive a crash of the operating system.
+	 */
+	public void force()
+	{
+		buffer.force();
+	}
+	
+	/**
+	 * Writes the saved states to the storage device and closes the file.
+	 * 
+	 * @throws IOException if the file can not be closed.
+	 */
+	public void close() throws IOException
+	{
+		force();
+		
+		channel.close();
+	}
+	
+	/**
+	 * Returns the amount of registered tasks.
+	 * 
+	 * @return the amount of registered tasks.
+	 */
+	public int size()
+	{
+		int size = 0;
+		
+		for (int i=0; i<slotCount; i++)
+		{
+			if (tasks[i] != null) size++;
+		}
+		
+		return size;
+	}
+	
+	public void execute(float delta)
+	{
+		long now = timeSource.nanoTime();
+		
+		int saved = 0;
+		
+		// For each slot, starting where the last execution stopped, till enough tasks are saved
+		for (int i=0; i<slotCount && saved < tasksPerExecution; i++)
+		{
+			if (tasks[cursor] != null)
+			{
+				save(cursor, now);
+				
+				saved++;
+			}
+			
+			cursor = (cursor + 1) % slotCount;
+		}
+	}
+	
+	public void added() 
+	{
+	}
+	
+	public void removed() 
+	{
+	}
+	
+	public boolean isFinished() 
+	{
+		return false;
+	}
+	
+	public void reset() 
+	{
+	}
+	
+	public Task getNext() 
+	{
+		return null;
+	}
+	
+	public void setTimeSource(TimeSource timeSource)
+	{
+		this.timeSource = timeSource;
+	}
+	
+	/**
+	 * Writes a time relative to now, so it is still valid when it is read after a restart.
+	 * 
+	 * @param buffer where the time is written.
+	 * @param time in nanoseconds, 0 if it is not set.
+	 * @param now current time in nanoseconds.
+	 */
+	public static void putTime(ByteBuffer buffer, long time, long now)
+	{
+		buffer.putLong(time != 0 ? now - time : -1);
+	}
+	
+	/**
+	 * Reads a time written by putTime.
+	 * 
+	 * @param buffer where the time is read.
+	 * @param now current time in nanoseconds.
+	 * @return the time in nanoseconds, 0 if it was not set.
+	 */
+	public static long getTime(ByteBuffer buffer, long now)
+	{
+		long age = buffer.getLong();
+		
+		return (age >= 0 ? now - age : 0);
+	}
+	
+	private void open() throws IOException
+	{
+		boolean exists = (channel.size() >= HEADER_SIZE);
+		
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slotCount * slotSize * 2);
+		
+		// If it is a checkpoint file
+		if (exists && buffer.getInt(0) == MAGIC)
+		{
+			if (buffer.getInt(4) != VERSION || buffer.getInt(8) != slotCount || buffer.getInt(12) != slotSize)
+			{
+				throw new IOException("Checkpoint created with another version, slot count or slot size.");
+			}
+			
+			// Reads the ids of the stored slots
+			for (int i=0; i<slotCount; i++)
+			{
+				String id = readId(i);
+				
+				if (id != null && !slotMap.containsKey(id))
+				{
+					slotMap.put(id, i);
+					ids[i] = id;
+				}
+			}
+		}
+		else
+		{
+			// Marks all the slots as empty
+			for (int i=0; i<slotCount; i++)
+			{
+				clearSlot(i);
+			}
+			
+			// Writes the header
+			buffer.putInt(4, VERSION);
+			buffer.putInt(8, slotCount);
+			buffer.putInt(12, slotSize);
+			buffer.putInt(0, MAGIC);
+		}
+	}
+	
+	private int reserveSlot(String id)
+	{
+		int slot = -1;
+		
+		// Looks for an empty slot, or else for a stored slot that was not registered
+		for (int i=0; i<slotCount && slot < 0; i++)
+		{
+			if (ids[i] == null) slot = i;
+		}
+		for (int i=0; i<slotCount && slot < 0; i++)
+		{
+			if (tasks[i] == null) slot = i;
+		}
+		
+		if (slot < 0) throw new IllegalStateException("Checkpoint is full: " + slotCount + " tasks.");
+		
+		// If it was stored for another id
+		if (ids[slot] != null) slotMap.remove(ids[slot]);
+		
+		slotMap.put(id, slot);
+		ids[slot] = id;
+		
+		// Marks the slot as empty till the task is saved
+		clearSlot(slot);
+		
+		return slot;
+	}
+	
+	private void clearSlot(int slot)
+	{
+		buffer.putInt(getCopyOffset(slot, 0), 0);
+		buffer.putInt(getCopyOffset(slot, 1), 0);
+		
+		sequences[slot] = 0;
+	}
+	
+	private void save(int slot, long now)
+	{
+		byte[] id = ids[slot].getBytes(StandardCharsets.UTF_8);
+		
+		// The copy with the next sequence number overwrites the oldest one
+		long sequence = sequences[slot] + 1;
+		
+		scratch.clear();
+		
+		try
+		{
+			// Writes the sequence number, the id and the state of the task
+			scratch.putLong(sequence);
+			scratch.putShort((short) id.length);
+			scratch.put(id);
+			tasks[slot].saveState(scratch, now);
+		}
+		catch (BufferOverflowException boe)
+		{
+			throw new IllegalStateException("State of " + ids[slot] + " does not fit in a slot of " + slotSize + " bytes.");
+		}
+		
+		scratch.flip();
+		
+		crc.reset();
+		crc.update(scratch.array(), 0, scratch.limit());
+		
+		int offset = getCopyOffset(slot, (int) (sequence & 1));
+		
+		// Writes the data first, so a copy that is not completely written does not match its checksum
+		ByteBuffer data = buffer.duplicate();
+		data.position(offset + SLOT_HEADER_SIZE);
+		data.put(scratch);
+		
+		buffer.putInt(offset + 4, (int) crc.getValue());
+		buffer.putInt(offset, scratch.limit());
+		
+		sequences[slot] = sequence;
+	}
+	
+	private boolean restore(int slot, Checkpointable task)
+	{
+		boolean restored = false;
+		
+		// If the slot is still valid
+		if (readSlot(slot))
+		{
+			// Skips the sequence number and the id
+			scratch.position(DATA_HEADER_SIZE + (scratch.getShort(8) & 0xFFFF));
+			
+			try
+			{
+				task.restoreState(scratch, timeSource.nanoTime());
+				
+				restored = true;
+			}
+			catch (BufferUnderflowException bue)
+			{
+				// The state was saved by another version of the task
+				if (task instanceof Task) ((Task) task).reset();
+			}
+		}
+		
+		return restored;
+	}
+	
+	private String readId(int slot)
+	{
+		String id = null;
+		
+		// If the slot is valid
+		if (readSlot(slot))
+		{
+			int length = scratch.getShort(8) & 0xFFFF;
+			
+			if (length + DATA_HEADER_SIZE <= scratch.limit()) id = new String(scratch.array(), DATA_HEADER_SIZE, length, StandardCharsets.UTF_8);
+		}
+		
+		return id;
+	}
+	
+	private boolean readSlot(int slot)
+	{
+		long first = readCopy(slot, 0);
+		long second = readCopy(slot, 1);
+		
+		// If the first copy is the newest valid one, reads it again as the scratch buffer has the second one
+		if (first > second) readCopy(slot, 0);
+		
+		sequences[slot] = Math.max(first, second);
+		
+		return sequences[slot] > 0;
+	}
+	
+	private long readCopy(int slot, int copy)
+	{
+		long sequence = 0;
+		
+		int offset = getCopyOffset(slot, copy);
+		int length = buffer.getInt(offset);
+		
+		// If the copy is not empty
+		if (length > DATA_HEADER_SIZE && length <= slotSize - SLOT_HEADER_SIZE)
+		{
+			// Copies the data of the copy
+			ByteBuffer data = buffer.duplicate();
+			data.position(offset + SLOT_HEADER_SIZE);
+			data.limit(offset + SLOT_HEADER_SIZE + length);
+			
+			scratch.clear();
+			scratch.put(data);
+			scratch.flip();
+			
+			crc.reset();
+			crc.update(scratch.array(), 0, length);
+			
+			// If it matches its checksum and it was written in its place
+			if ((int) crc.getValue() == buffer.getInt(offset + 4) && scratch.getLong(0) > 0 && (scratch.getLong(0) & 1) == copy)
+			{
+				sequence = scratch.getLong(0);
+			}
+		}
+		
+		return sequence;
+	}
+	
+	private int getCopyOffset(int slot, int copy)
+	{
+		return HEADER_SIZE + (slot * 2 + copy) * slotSize;
+	}
+}
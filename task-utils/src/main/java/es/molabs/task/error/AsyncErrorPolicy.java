@@ -0,0 +1,266 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.error;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.molabs.task.Task;
+
+/**
+ * Hands the errors to the next policy on another thread, so the formatting and writing of the logs does not
+ * slow down the executor thread. The errors wait in a bounded ring of preallocated slots, when it is full they are 
+ * dropped and counted, so handing an error over does not allocate. If the executor rejects handling them, the waiting 
+ * errors are dropped and counted too, so the failing task is never affected.
+ * 
+ * The actions returned by the next policy are ignored as the task has been executed again by then, so a 
+ * FailureLimitPolicy should wrap this one and not the opposite.
+ * 
+ * By default the errors are handled on a shared daemon thread.
+ */
+public class AsyncErrorPolicy implements ErrorPolicy
+{
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	
+	private ErrorPolicy policy = null;
+	private Executor executor = null;
+	
+	// Slots of the ring and the position each one can be written or read at
+	private int capacity;
+	private AtomicLongArray sequences = null;
+	private Task[] tasks = null;
+	private Exception[] errors = null;
+	private int[] errorCounts = null;
+	
+	// Next slot to write, claimed by the failing threads, and next slot to read, only moved by the drain
+	private AtomicLong tail = null;
+	private volatile long head;
+	
+	private AtomicBoolean draining = null;
+	private Runnable drain = null;
+	
+	private AtomicLong dropped = null;
+	
+	/**
+	 * Creates a new policy that handles the errors on the shared error thread.
+	 * 
+	 * @param policy that handles the errors.
+	 * @param capacity maximum amount of errors waiting to be handled.
+	 */
+	public AsyncErrorPolicy(ErrorPolicy policy, int capacity)
+	{
+		this(policy, capacity, DefaultExecutorHolder.EXECUTOR);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param policy that handles the errors.
+	 * @param capacity maximum amount of errors waiting to be handled.
+	 * @param executor where the errors are handled.
+	 */
+	public AsyncErrorPolicy(ErrorPolicy policy, int capacity, Executor executor)
+	{
+		if (capacity < 1) throw new IllegalArgumentException("Capacity must be greater than 0: " + capacity);
+		
+		this.policy = policy;
+		this.executor = executor;
+		this.capacity = capacity;
+		
+		sequences = new AtomicLongArray(capacity);
+		tasks = new Task[capacity];
+		errors = new Exception[capacity];
+		errorCounts = new int[capacity];
+		
+		// Each slot can be written first by the error of its index
+		for (int i=0; i<capacity; i++)
+		{
+			sequences.set(i, i);
+		}
+		
+		tail = new AtomicLong();
+		head = 0;
+		
+		draining = new AtomicBoolean(false);
+		
+		drain = new Runnable()
+		{
+			public void run()
+			{
+				drain();
+			}
+		};
+		
+		dropped = new AtomicLong();
+	}
+	
+	public ErrorAction onError(Task task, Exception e, int errorCount)
+	{
+		// If the ring is full
+		if (!offer(task, e, errorCount))
+		{
+			dropped.incrementAndGet();
+		}
+		// If no one is handling the ring
+		else if (draining.compareAndSet(false, true))
+		{
+			try
+			{
+				executor.execute(drain);
+			}
+			catch (RuntimeException re)
+			{
+				// The errors can not be handled, they are dropped so the task is not affected
+				while (!isEmpty())
+				{
+					release();
+					
+					dropped.incrementAndGet();
+				}
+				
+				// Lets the next error try again
+				draining.set(false);
+			}
+		}
+		
+		return ErrorAction.CONTINUE;
+	}
+	
+	/**
+	 * Returns how many errors have been dropped because the ring was full or the executor rejected handling them.
+	 * 
+	 * @return the amount of dropped errors.
+	 */
+	public long getDropped()
+	{
+		return dropped.get();
+	}
+	
+	/**
+	 * Returns how many errors are waiting to be handled.
+	 * 
+	 * @return the amount of errors waiting to be handled.
+	 */
+	public int getPending()
+	{
+		return (int) Math.max(tail.get() - head, 0);
+	}
+	
+	private boolean offer(Task task, Exception error, int errorCount)
+	{
+		long position = tail.get();
+		
+		while (true)
+		{
+			int index = (int) (position % capacity);
+			long difference = sequences.get(index) - position;
+			
+			// If the slot is free for this position and it is claimed
+			if (difference == 0 && tail.compareAndSet(position, position + 1))
+			{
+				tasks[index] = task;
+				errors[index] = error;
+				errorCounts[index] = errorCount;
+				
+				// Publishes the slot to the drain
+				sequences.lazySet(index, position + 1);
+				
+				return true;
+			}
+			// If the slot was not read yet the ring is full
+			else if (difference < 0)
+			{
+				return false;
+			}
+			
+			position = tail.get();
+		}
+	}
+	
+	private boolean isEmpty()
+	{
+		return sequences.get((int) (head % capacity)) != head + 1;
+	}
+	
+	private void release()
+	{
+		long position = head;
+		int index = (int) (position % capacity);
+		
+		tasks[index] = null;
+		errors[index] = null;
+		
+		// Frees the slot for the position of the next lap
+		sequences.lazySet(index, position + capacity);
+		head = position + 1;
+	}
+	
+	private void drain()
+	{
+		do
+		{
+			// Handles the errors till the ring is empty
+			while (!isEmpty())
+			{
+				int index = (int) (head % capacity);
+				
+				Task task = tasks[index];
+				Exception error = errors[index];
+				int errorCount = errorCounts[index];
+				
+				release();
+				
+				try
+				{
+					policy.onError(task, error, errorCount);
+				}
+				catch (RuntimeException re)
+				{
+					logger.error(re.getLocalizedMessage(), re);
+				}
+			}
+			
+			draining.set(false);
+		}
+		// If an error was queued after emptying the ring and nobody else took it
+		while (!isEmpty() && draining.compareAndSet(false, true));
+	}
+	
+	private static class DefaultExecutorHolder
+	{
+		private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			private final AtomicInteger threadCount = new AtomicInteger();
+			
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "task-error-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				
+				return thread;
+			}
+		});
+	}
+}
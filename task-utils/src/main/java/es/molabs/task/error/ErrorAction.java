@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.error;
+
+/**
+ * What to do with a task after an error: keep executing it, pause it for a while or remove it from its executor.
+ */
+public final class ErrorAction 
+{
+	public static final ErrorAction CONTINUE = new ErrorAction(false, 0);
+	public static final ErrorAction REMOVE = new ErrorAction(true, 0);
+	
+	private final boolean remove;
+	private final long pauseTime;
+	
+	private ErrorAction(boolean remove, long pauseTime)
+	{
+		this.remove = remove;
+		this.pauseTime = pauseTime;
+	}
+	
+	/**
+	 * Returns an action that skips the executions of the task for a while.
+	 * 
+	 * @param time to pause the task in seconds.
+	 * 
+	 * @return the pause action.
+	 */
+	public static ErrorAction pause(float time)
+	{
+		if (time <= 0) throw new IllegalArgumentException("Pause time must be greater than 0: " + time);
+		
+		return new ErrorAction(false, (long) (time * 1_000_000_000d));
+	}
+	
+	/**
+	 * Returns if the task has to be removed.
+	 * 
+	 * @return if the task has to be removed.
+	 */
+	public boolean isRemove()
+	{
+		return remove;
+	}
+	
+	/**
+	 * Returns if the task has to be paused.
+	 * 
+	 * @return if the task has to be paused.
+	 */
+	public boolean isPause()
+	{
+		return pauseTime > 0;
+	}
+	
+	/**
+	 * Returns the time to pause the task.
+	 * 
+	 * @return the time to pause the task in nanoseconds, 0 if it is not a pause.
+	 */
+	public long getPauseTime()
+	{
+		return pauseTime;
+	}
+}
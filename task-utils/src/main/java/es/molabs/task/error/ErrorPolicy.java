@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.error;
+
+import es.molabs.task.Task;
+
+/**
+ * Decides what happens when a task fails. It is called on the thread that executed the task, so it should be cheap: 
+ * the policies can be chained to rate limit the errors, report them from another thread or stop the tasks that keep failing.
+ */
+public interface ErrorPolicy 
+{
+	/**
+	 * Policy that logs every error with the logger of the task class, as the tasks did before the policies.
+	 */
+	public static final ErrorPolicy LOG = new LogErrorPolicy();
+	
+	/**
+	 * Called each time a task fails.
+	 * 
+	 * @param task that failed.
+	 * @param e exception thrown.
+	 * @param errorCount amount of consecutive errors of the task, including this one.
+	 * 
+	 * @return what to do with the task.
+	 */
+	public ErrorAction onError(Task task, Exception e, int errorCount);
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.error;
+
+import es.molabs.task.Task;
+
+/**
+ * Stops the tasks that keep failing. While a task has failed less than the limit times in a row the errors 
+ * go to the next policy, after that the task is paused or removed.
+ */
+public class FailureLimitPolicy implements ErrorPolicy
+{
+	private ErrorPolicy policy = null;
+	private int maxErrors;
+	private ErrorAction action = null;
+	
+	/**
+	 * Creates a new policy that removes the tasks.
+	 * 
+	 * @param policy that handles the errors under the limit.
+	 * @param maxErrors amount of consecutive errors that stops a task.
+	 */
+	public FailureLimitPolicy(ErrorPolicy policy, int maxErrors)
+	{
+		this(policy, maxErrors, ErrorAction.REMOVE);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param policy that handles the errors under the limit.
+	 * @param maxErrors amount of consecutive errors that stops a task.
+	 * @param action to apply when the limit is reached, usually REMOVE or a pause.
+	 */
+	public FailureLimitPolicy(ErrorPolicy policy, int maxErrors, ErrorAction action)
+	{
+		if (maxErrors < 1) throw new IllegalArgumentException("Maximum errors must be greater than 0: " + maxErrors);
+		
+		this.policy = policy;
+		this.maxErrors = maxErrors;
+		this.action = action;
+	}
+	
+	public ErrorAction onError(Task task, Exception e, int errorCount)
+	{
+		ErrorAction errorAction = policy.onError(task, e, errorCount);
+		
+		// If the task reached the limit and the policy did not stop it already
+		if (errorCount >= maxErrors && errorAction == ErrorAction.CONTINUE)
+		{
+			errorAction = action;
+		}
+		
+		return errorAction;
+	}
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.error;
+
+import es.molabs.task.Task;
+import es.molabs.task.TaskLoggers;
+
+/**
+ * Logs every error with its stack trace using the logger of the task class and keeps executing the task.
+ */
+public class LogErrorPolicy implements ErrorPolicy
+{
+	public ErrorAction onError(Task task, Exception e, int errorCount)
+	{
+		TaskLoggers.get(task.getClass()).error(e.getLocalizedMessage(), e);
+		
+		return ErrorAction.CONTINUE;
+	}
+}
@@ -0,0 +1,250 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.error;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.molabs.task.Task;
+import es.molabs.task.TimeSource;
+
+/**
+ * Lets through to the next policy a maximum amount of errors by task class in each interval and counts the rest 
+ * as suppressed. When an interval with suppressed errors ends, how many were suppressed is logged: a flush is 
+ * scheduled at the end of the interval when its first error is suppressed, and the next error or a call to flush 
+ * also log it if the interval has ended. The flush is scheduled in real time, with another time source it may find
+ * the interval still running and leave it to the next error or call to flush.
+ * 
+ * The suppressed errors keep their tasks running, so a FailureLimitPolicy should wrap this one and not the opposite.
+ * It is thread safe and, once a class has failed, it only allocates to schedule the flush of an interval.
+ * 
+ * By default the flushes are scheduled on a shared daemon thread.
+ */
+public class RateLimitedErrorPolicy implements ErrorPolicy
+{
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	
+	private ErrorPolicy policy = null;
+	private int maxErrors;
+	private long interval;
+	private TimeSource timeSource = null;
+	
+	private ScheduledExecutorService scheduler = null;
+	
+	private ClassValue<Window> windows = null;
+	private CopyOnWriteArrayList<Window> windowList = null;
+	
+	/**
+	 * Creates a new policy that reads the time from System.nanoTime.
+	 * 
+	 * @param policy that handles the errors that are let through.
+	 * @param maxErrors amount of errors by task class let through in each interval.
+	 * @param interval in seconds.
+	 */
+	public RateLimitedErrorPolicy(ErrorPolicy policy, int maxErrors, float interval)
+	{
+		this(policy, maxErrors, interval, TimeSource.SYSTEM);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param policy that handles the errors that are let through.
+	 * @param maxErrors amount of errors by task class let through in each interval.
+	 * @param interval in seconds.
+	 * @param timeSource to measure the intervals.
+	 */
+	public RateLimitedErrorPolicy(ErrorPolicy policy, int maxErrors, float interval, TimeSource timeSource)
+	{
+		this(policy, maxErrors, interval, timeSource, DefaultSchedulerHolder.SCHEDULER);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param policy that handles the errors that are let through.
+	 * @param maxErrors amount of errors by task class let through in each interval.
+	 * @param interval in seconds.
+	 * @param timeSource to measure the intervals.
+	 * @param scheduler where the flushes at the end of the intervals are scheduled, null to not schedule them.
+	 */
+	public RateLimitedErrorPolicy(ErrorPolicy policy, int maxErrors, float interval, TimeSource timeSource, ScheduledExecutorService scheduler)
+	{
+		if (maxErrors < 0) throw new IllegalArgumentException("Maximum errors can not be negative: " + maxErrors);
+		if (interval <= 0) throw new IllegalArgumentException("Interval must be greater than 0: " + interval);
+		
+		this.policy = policy;
+		this.maxErrors = maxErrors;
+		this.interval = (long) (interval * 1_000_000_000d);
+		this.timeSource = timeSource;
+		this.scheduler = scheduler;
+		
+		windowList = new CopyOnWriteArrayList<Window>();
+		windows = new ClassValue<Window>()
+		{
+			protected Window computeValue(Class<?> type)
+			{
+				Window window = new Window(type, RateLimitedErrorPolicy.this.timeSource.nanoTime());
+				
+				windowList.add(window);
+				
+				return window;
+			}
+		};
+	}
+	
+	public ErrorAction onError(Task task, Exception e, int errorCount)
+	{
+		Window window = windows.get(task.getClass());
+		
+		// Starts the next interval if the current one has ended
+		roll(window, timeSource.nanoTime());
+		
+		ErrorAction action = ErrorAction.CONTINUE;
+		
+		// If the error is under the limit of the interval
+		if (window.count.incrementAndGet() <= maxErrors)
+		{
+			action = policy.onError(task, e, errorCount);
+		}
+		else
+		{
+			window.totalSuppressed.incrementAndGet();
+			
+			// If it is the first suppressed error of the interval
+			if (window.suppressed.getAndIncrement() == 0)
+			{
+				schedule(window);
+			}
+		}
+		
+		return action;
+	}
+	
+	/**
+	 * Logs how many errors were suppressed in the intervals that have ended.
+	 */
+	public void flush()
+	{
+		long now = timeSource.nanoTime();
+		
+		for (int i=0; i<windowList.size(); i++)
+		{
+			roll(windowList.get(i), now);
+		}
+	}
+	
+	/**
+	 * Returns how many errors of a task class have been suppressed since this policy was created.
+	 * 
+	 * @param taskClass of the errors.
+	 * 
+	 * @return the amount of suppressed errors.
+	 */
+	public long getSuppressed(Class<?> taskClass)
+	{
+		return windows.get(taskClass).totalSuppressed.get();
+	}
+	
+	private void roll(Window window, long now)
+	{
+		long start = window.start.get();
+		
+		// If the interval has ended and no other thread has started the next one
+		if (now - start >= interval && window.start.compareAndSet(start, now))
+		{
+			long suppressed = window.suppressed.getAndSet(0);
+			window.count.set(0);
+			
+			// If there were suppressed errors
+			if (suppressed > 0)
+			{
+				logger.warn("Suppressed {} errors of {} in the last {} seconds.", suppressed, window.taskClass.getName(), (now - start) / 1_000_000_000f);
+			}
+		}
+	}
+	
+	private void schedule(Window window)
+	{
+		// If the flushes are scheduled
+		if (scheduler != null)
+		{
+			long delay = window.start.get() + interval - timeSource.nanoTime();
+			
+			try
+			{
+				scheduler.schedule(window.flush, Math.max(delay, 0), TimeUnit.NANOSECONDS);
+			}
+			catch (RejectedExecutionException ree)
+			{
+				// The next error or call to flush will log them
+			}
+		}
+	}
+	
+	private class Window
+	{
+		private final Class<?> taskClass;
+		private final AtomicLong start;
+		private final AtomicInteger count;
+		private final AtomicLong suppressed;
+		private final AtomicLong totalSuppressed;
+		private final Runnable flush;
+		
+		private Window(Class<?> taskClass, long start)
+		{
+			this.taskClass = taskClass;
+			this.start = new AtomicLong(start);
+			
+			count = new AtomicInteger();
+			suppressed = new AtomicLong();
+			totalSuppressed = new AtomicLong();
+			
+			flush = new Runnable()
+			{
+				public void run()
+				{
+					roll(Window.this, timeSource.nanoTime());
+				}
+			};
+		}
+	}
+	
+	private static class DefaultSchedulerHolder
+	{
+		private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			private final AtomicInteger threadCount = new AtomicInteger();
+			
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "task-error-flush-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				
+				return thread;
+			}
+		});
+	}
+}
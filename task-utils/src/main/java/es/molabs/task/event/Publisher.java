@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.event;
+
+/**
+ * Source of items that are delivered to its subscribers as they request them. It follows the contract of 
+ * java.util.concurrent.Flow.Publisher, which is not available in Java 8.
+ * 
+ * @param <T> type of the items.
+ */
+public interface Publisher<T> 
+{
+	/**
+	 * Adds a subscriber, its onSubscribe method is called with its subscription before any other.
+	 * 
+	 * @param subscriber to add.
+	 */
+	public void subscribe(Subscriber<? super T> subscriber);
+}
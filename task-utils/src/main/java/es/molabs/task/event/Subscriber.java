@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.event;
+
+/**
+ * Receiver of the items of a Publisher. It follows the contract of java.util.concurrent.Flow.Subscriber, the 
+ * methods of a subscriber are never called at the same time.
+ * 
+ * @param <T> type of the items.
+ */
+public interface Subscriber<T> 
+{
+	/**
+	 * Called once before any other method, no item is delivered till some are requested from the subscription.
+	 * 
+	 * @param subscription of this subscriber.
+	 */
+	public void onSubscribe(Subscription subscription);
+	
+	/**
+	 * Called with each item, never more times than the items requested.
+	 * 
+	 * @param item delivered.
+	 */
+	public void onNext(T item);
+	
+	/**
+	 * Called once when the subscription fails, no other method is called after it.
+	 * 
+	 * @param throwable cause of the failure.
+	 */
+	public void onError(Throwable throwable);
+	
+	/**
+	 * Called once when there are no more items, no other method is called after it.
+	 */
+	public void onComplete();
+}
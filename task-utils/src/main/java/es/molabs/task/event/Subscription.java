@@ -0,0 +1,34 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.event;
+
+/**
+ * Link between a Publisher and a Subscriber. It follows the contract of java.util.concurrent.Flow.Subscription.
+ */
+public interface Subscription 
+{
+	/**
+	 * Adds items to the amount the subscriber can receive.
+	 * 
+	 * @param n amount of items, a value lower than 1 fails the subscription.
+	 */
+	public void request(long n);
+	
+	/**
+	 * Stops the delivery of items, some can still be delivered after calling it.
+	 */
+	public void cancel();
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.event;
+
+import es.molabs.task.TaskLifecycle;
+
+/**
+ * Lifecycle event of a task: it was added, executed, failed or removed.
+ */
+public final class TaskEvent 
+{
+	public static final int ADDED = TaskLifecycle.ADDED;
+	public static final int EXECUTED = TaskLifecycle.EXECUTED;
+	public static final int FAILED = TaskLifecycle.FAILED;
+	public static final int REMOVED = TaskLifecycle.REMOVED;
+	
+	private final int event;
+	private final Class<?> taskClass;
+	private final int taskId;
+	private final long time;
+	private final long value;
+	
+	TaskEvent(int event, Class<?> taskClass, int taskId, long time, long value)
+	{
+		this.event = event;
+		this.taskClass = taskClass;
+		this.taskId = taskId;
+		this.time = time;
+		this.value = value;
+	}
+	
+	/**
+	 * Returns the event.
+	 * 
+	 * @return ADDED, EXECUTED, FAILED or REMOVED.
+	 */
+	public int getEvent()
+	{
+		return event;
+	}
+	
+	/**
+	 * Returns the class of the task.
+	 * 
+	 * @return the class of the task.
+	 */
+	public Class<?> getTaskClass()
+	{
+		return taskClass;
+	}
+	
+	/**
+	 * Returns the identity hash code of the task, the event does not keep the task.
+	 * 
+	 * @return the identity hash code of the task.
+	 */
+	public int getTaskId()
+	{
+		return taskId;
+	}
+	
+	/**
+	 * Returns when the event happened.
+	 * 
+	 * @return the System.nanoTime of the event.
+	 */
+	public long getTime()
+	{
+		return time;
+	}
+	
+	/**
+	 * Returns the value of the event.
+	 * 
+	 * @return the execution time in nanoseconds for EXECUTED and FAILED, otherwise 0.
+	 */
+	public long getValue()
+	{
+		return value;
+	}
+	
+	public String toString()
+	{
+		return "TaskEvent[event=" + event + ", taskClass=" + taskClass.getName() + ", taskId=" + taskId + ", time=" + time + ", value=" + value + "]";
+	}
+}
@@ -0,0 +1,562 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.event;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import es.molabs.task.Task;
+
+/**
+ * Publisher of the lifecycle events of the tasks of an executor, set with AbstractTaskExecutor.setEventPublisher.
+ * 
+ * Each subscriber has its own bounded ring buffer. Publishing only writes the event in the buffers, without 
+ * blocking or allocating, so it can be called from the executor thread and from several threads at the same time. 
+ * The events are delivered as each subscriber requests them. When a subscriber falls behind its events are 
+ * dropped once its buffer is full, or, with a sample rate, only one of each sample rate events is kept once its 
+ * buffer is half full. The dropped events are counted.
+ * 
+ * By default each publisher delivers the events on its own daemon thread, that the publishers only wake with 
+ * LockSupport.unpark when it is waiting for events, and that stops once the publisher is closed and every subscriber 
+ * has been completed. With an Executor, publishing calls it when a subscriber has events and nobody is delivering 
+ * them, so an executor that queues the calls, like a ThreadPoolExecutor, allocates and takes the locks of its queue 
+ * on the publishing thread.
+ */
+public class TaskEventPublisher implements Publisher<TaskEvent>
+{
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+	
+	private int capacity;
+	private int sampleRate;
+	private Executor executor = null;
+	
+	private volatile EventSubscription[] subscriptions = null;
+	private volatile boolean closed;
+	
+	// Thread that delivers the events when there is no executor, and if it is waiting for events
+	private volatile Thread deliveryThread = null;
+	private AtomicBoolean parked = null;
+	
+	private AtomicLong dropped = null;
+	
+	/**
+	 * Creates a new publisher that drops the events when a buffer is full.
+	 * 
+	 * @param capacity of the buffer of each subscriber, rounded up to a power of two.
+	 */
+	public TaskEventPublisher(int capacity)
+	{
+		this(capacity, 1);
+	}
+	
+	/**
+	 * Creates a new publisher that samples the events when a subscriber falls behind.
+	 * 
+	 * @param capacity of the buffer of each subscriber, rounded up to a power of two.
+	 * @param sampleRate one of each sampleRate events is kept once a buffer is half full, 1 to keep all till it is full.
+	 */
+	public TaskEventPublisher(int capacity, int sampleRate)
+	{
+		this(capacity, sampleRate, null);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param capacity of the buffer of each subscriber, rounded up to a power of two.
+	 * @param sampleRate one of each sampleRate events is kept once a buffer is half full, 1 to keep all till it is full.
+	 * @param executor where the events are delivered, null to deliver them on a thread of this publisher.
+	 */
+	public TaskEventPublisher(int capacity, int sampleRate, Executor executor)
+	{
+		if (capacity < 2 || capacity > 1 << 30) throw new IllegalArgumentException("Capacity must be between 2 and 2^30: " + capacity);
+		if (sampleRate < 1) throw new IllegalArgumentException("Sample rate must be greater than 0: " + sampleRate);
+		
+		this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+		this.sampleRate = sampleRate;
+		this.executor = executor;
+		
+		subscriptions = new EventSubscription[0];
+		closed = false;
+		
+		parked = new AtomicBoolean(false);
+		
+		dropped = new AtomicLong();
+	}
+	
+	public void subscribe(Subscriber<? super TaskEvent> subscriber)
+	{
+		EventSubscription subscription = new EventSubscription(subscriber);
+		
+		synchronized (this)
+		{
+			// Adds the subscription to a copy of the array
+			EventSubscription[] current = subscriptions;
+			EventSubscription[] updated = Arrays.copyOf(current, current.length + 1);
+			updated[current.length] = subscription;
+			subscriptions = updated;
+			
+			// If the events are delivered by this publisher and its thread is not running
+			if (executor == null && deliveryThread == null)
+			{
+				deliveryThread = new Thread(new Runnable()
+				{
+					public void run()
+					{
+						deliver();
+					}
+				}, "task-event-" + THREAD_COUNT.incrementAndGet());
+				
+				deliveryThread.setDaemon(true);
+				deliveryThread.start();
+			}
+		}
+		
+		subscriber.onSubscribe(subscription);
+		
+		// If it was closed, completes the new subscriber too
+		if (closed) subscription.complete();
+	}
+	
+	/**
+	 * Publishes an event to every subscriber.
+	 * 
+	 * @param event ADDED, EXECUTED, FAILED or REMOVED.
+	 * @param task of the event.
+	 * @param value of the event.
+	 */
+	public void publish(int event, Task task, long value)
+	{
+		EventSubscription[] current = subscriptions;
+		
+		// If there is someone listening
+		if (current.length > 0 && !closed)
+		{
+			long time = System.nanoTime();
+			Class<?> taskClass = task.getClass();
+			int taskId = System.identityHashCode(task);
+			
+			for (int i=0; i<current.length; i++)
+			{
+				current[i].publish(event, taskClass, taskId, time, value);
+			}
+		}
+	}
+	
+	/**
+	 * Stops publishing, the subscribers are completed once they receive the events in their buffers.
+	 */
+	public void close()
+	{
+		closed = true;
+		
+		EventSubscription[] current = subscriptions;
+		for (int i=0; i<current.length; i++)
+		{
+			current[i].complete();
+		}
+		
+		// Lets the thread stop if there are no subscribers
+		wake();
+	}
+	
+	/**
+	 * Returns how many events have been dropped, adding the dropped for each subscriber.
+	 * 
+	 * @return the amount of dropped events.
+	 */
+	public long getDropped()
+	{
+		return dropped.get();
+	}
+	
+	/**
+	 * Returns the amount of subscribers.
+	 * 
+	 * @return the amount of subscribers.
+	 */
+	public int getSubscriberCount()
+	{
+		return subscriptions.length;
+	}
+	
+	private void wake()
+	{
+		// If the thread is waiting for events
+		if (parked.compareAndSet(true, false))
+		{
+			Thread thread = deliveryThread;
+			
+			if (thread != null) LockSupport.unpark(thread);
+		}
+	}
+	
+	private void deliver()
+	{
+		while (true)
+		{
+			boolean delivered = false;
+			
+			// Delivers the events of each subscription that has something to deliver
+			EventSubscription[] current = subscriptions;
+			for (int i=0; i<current.length; i++)
+			{
+				if (current[i].hasWork() && current[i].draining.compareAndSet(false, true))
+				{
+					current[i].drain();
+					
+					delivered = true;
+				}
+			}
+			
+			// If there was nothing to deliver
+			if (!delivered)
+			{
+				synchronized (this)
+				{
+					// If it was closed and every subscriber was completed
+					if (closed && subscriptions.length == 0)
+					{
+						deliveryThread = null;
+						
+						break;
+					}
+				}
+				
+				parked.set(true);
+				
+				// Checks again after telling the publishers it is waiting, as the ones that found it running did not wake it
+				if (!hasPendingWork()) LockSupport.park(this);
+				
+				parked.set(false);
+			}
+		}
+	}
+	
+	private boolean hasPendingWork()
+	{
+		EventSubscription[] current = subscriptions;
+		
+		// If it can stop or some subscription has something to deliver
+		boolean work = (closed && current.length == 0);
+		
+		for (int i=0; i<current.length && !work; i++)
+		{
+			work = current[i].hasWork();
+		}
+		
+		return work;
+	}
+	
+	private synchronized void unsubscribe(EventSubscription subscription)
+	{
+		EventSubscription[] current = subscriptions;
+		
+		// For each subscription
+		for (int i=0; i<current.length; i++)
+		{
+			// If it is the one to remove
+			if (current[i] == subscription)
+			{
+				// Removes it from a copy of the array
+				EventSubscription[] updated = new EventSubscription[current.length - 1];
+				System.arraycopy(current, 0, updated, 0, i);
+				System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+				subscriptions = updated;
+				
+				break;
+			}
+		}
+	}
+	
+	private class EventSubscription implements Subscription
+	{
+		private final Subscriber<? super TaskEvent> subscriber;
+		
+		// Ring buffer where each slot has a sequence that tells if it can be written or read
+		private final int mask;
+		private final AtomicLongArray sequences;
+		private final int[] events;
+		private final Class<?>[] taskClasses;
+		private final int[] taskIds;
+		private final long[] times;
+		private final long[] values;
+		
+		// Next slot to write, claimed by the publishers, and next slot to read, only moved by the drain
+		private final AtomicLong tail;
+		private volatile long head;
+		
+		private final AtomicLong sampleCount;
+		
+		private final AtomicLong requested;
+		private final AtomicBoolean draining;
+		private final Runnable drain;
+		
+		private volatile boolean cancelled;
+		private volatile boolean completed;
+		private volatile boolean invalidRequest;
+		private long invalidAmount;
+		
+		private EventSubscription(Subscriber<? super TaskEvent> subscriber)
+		{
+			this.subscriber = subscriber;
+			
+			mask = capacity - 1;
+			sequences = new AtomicLongArray(capacity);
+			events = new int[capacity];
+			taskClasses = new Class<?>[capacity];
+			taskIds = new int[capacity];
+			times = new long[capacity];
+			values = new long[capacity];
+			
+			// Each slot can be written first by the publisher of its index
+			for (int i=0; i<capacity; i++)
+			{
+				sequences.set(i, i);
+			}
+			
+			tail = new AtomicLong();
+			head = 0;
+			
+			sampleCount = new AtomicLong();
+			
+			requested = new AtomicLong();
+			draining = new AtomicBoolean(false);
+			drain = new Runnable()
+			{
+				public void run()
+				{
+					drain();
+				}
+			};
+			
+			cancelled = false;
+			completed = false;
+			invalidRequest = false;
+			invalidAmount = 0;
+		}
+		
+		public void request(long n)
+		{
+			// If the amount is not valid the subscription fails
+			if (n < 1)
+			{
+				invalidAmount = n;
+				invalidRequest = true;
+			}
+			else
+			{
+				long current;
+				long updated;
+				
+				// Adds the amount without overflowing
+				do
+				{
+					current = requested.get();
+					updated = (current + n < 0 ? Long.MAX_VALUE : current + n);
+				}
+				while (!requested.compareAndSet(current, updated));
+			}
+			
+			signal();
+		}
+		
+		public void cancel()
+		{
+			cancelled = true;
+			
+			unsubscribe(this);
+		}
+		
+		private void publish(int event, Class<?> taskClass, int taskId, long time, long value)
+		{
+			// If it samples and the subscriber fell behind, skips the events out of the sample
+			if (sampleRate > 1 && tail.get() - head >= capacity / 2 && sampleCount.getAndIncrement() % sampleRate != 0)
+			{
+				dropped.incrementAndGet();
+			}
+			// If the buffer is full
+			else if (!offer(event, taskClass, taskId, time, value))
+			{
+				dropped.incrementAndGet();
+			}
+			else
+			{
+				signal();
+			}
+		}
+		
+		private void complete()
+		{
+			completed = true;
+			
+			signal();
+		}
+		
+		private boolean offer(int event, Class<?> taskClass, int taskId, long time, long value)
+		{
+			long position = tail.get();
+			
+			while (true)
+			{
+				int index = (int) position & mask;
+				long difference = sequences.get(index) - position;
+				
+				// If the slot is free for this position and it is claimed
+				if (difference == 0 && tail.compareAndSet(position, position + 1))
+				{
+					events[index] = event;
+					taskClasses[index] = taskClass;
+					taskIds[index] = taskId;
+					times[index] = time;
+					values[index] = value;
+					
+					// Publishes the slot to the drain
+					sequences.lazySet(index, position + 1);
+					
+					return true;
+				}
+				// If the slot was not read yet the buffer is full
+				else if (difference < 0)
+				{
+					return false;
+				}
+				
+				position = tail.get();
+			}
+		}
+		
+		private TaskEvent poll()
+		{
+			TaskEvent event = null;
+			
+			long position = head;
+			int index = (int) position & mask;
+			
+			// If the slot was written
+			if (sequences.get(index) == position + 1)
+			{
+				event = new TaskEvent(events[index], taskClasses[index], taskIds[index], times[index], values[index]);
+				taskClasses[index] = null;
+				
+				// Frees the slot for the position of the next lap
+				sequences.lazySet(index, position + capacity);
+				head = position + 1;
+			}
+			
+			return event;
+		}
+		
+		private boolean isEmpty()
+		{
+			return sequences.get((int) head & mask) != head + 1;
+		}
+		
+		private boolean hasWork()
+		{
+			boolean empty = isEmpty();
+			
+			return !cancelled && (invalidRequest || (completed && empty) || (requested.get() > 0 && !empty));
+		}
+		
+		private void signal()
+		{
+			// If the events are delivered by the thread of the publisher
+			if (executor == null)
+			{
+				if (hasWork()) wake();
+			}
+			// If there is something to deliver and no one is delivering
+			else if (hasWork() && draining.compareAndSet(false, true))
+			{
+				try
+				{
+					executor.execute(drain);
+				}
+				catch (RejectedExecutionException ree)
+				{
+					// The events can not be delivered, they are dropped so the caller is not affected
+					while (poll() != null)
+					{
+						dropped.incrementAndGet();
+					}
+					
+					draining.set(false);
+				}
+				catch (RuntimeException re)
+				{
+					// Lets the next event try again
+					draining.set(false);
+					
+					throw re;
+				}
+			}
+		}
+		
+		private void drain()
+		{
+			do
+			{
+				// If the subscription failed
+				if (invalidRequest && !cancelled)
+				{
+					cancel();
+					
+					subscriber.onError(new IllegalArgumentException("Requested amount must be greater than 0: " + invalidAmount));
+				}
+				
+				// Delivers the events while they are requested
+				while (!cancelled && requested.get() > 0)
+				{
+					TaskEvent event = poll();
+					
+					if (event == null) break;
+					
+					if (requested.get() != Long.MAX_VALUE) requested.decrementAndGet();
+					
+					try
+					{
+						subscriber.onNext(event);
+					}
+					catch (Throwable t)
+					{
+						cancel();
+						
+						subscriber.onError(t);
+					}
+				}
+				
+				// If the publisher was closed and every event was delivered
+				if (!cancelled && completed && isEmpty())
+				{
+					cancel();
+					
+					subscriber.onComplete();
+				}
+				
+				draining.set(false);
+			}
+			// If something was published after delivering and nobody else took it
+			while (hasWork() && draining.compareAndSet(false, true));
+		}
+	}
+}
@@ -0,0 +1,421 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import es.molabs.task.Task;
+import es.molabs.task.TaskLifecycle;
+import es.molabs.task.base.AbstractTask;
+
+/**
+ * Append only journal of the lifecycle of the tasks: when they are added, executed, failed and removed. The time of 
+ * each event is given by the caller, the executors use their time source so the journals of virtual runs are 
+ * meaningful too.
+ * 
+ * The events are written as fixed size records in memory mapped segment files of a directory. A new segment is
+ * started when the current one is full and each time the journal is opened, so the older segments can be moved 
+ * or deleted. Recording an event does not allocate or make system calls, except when a segment is full, a task 
+ * class is recorded for the first time in a segment: the name of the class is written once in each segment so every 
+ * segment can be decoded on its own. Records can be written from several threads at the same time.
+ * 
+ * Each task is identified by a sequence number shared by the journals, given the first time it is recorded and 
+ * released when it is removed, so a task added again gets a new one. It is kept in the task, so looking it up does not 
+ * lock, only the tasks that do not extend AbstractTask are kept in a map of the journal.
+ * 
+ * The records are kept by the operating system if the process crashes, force writes them to the storage device. The 
+ * header of a segment keeps how many records were claimed, it is updated when the segment is full, on force and on 
+ * close. TaskJournalReader decodes the segments.
+ */
+public class TaskJournal implements Closeable
+{
+	public static final int ADDED = TaskLifecycle.ADDED;
+	public static final int EXECUTED = TaskLifecycle.EXECUTED;
+	public static final int FAILED = TaskLifecycle.FAILED;
+	public static final int REMOVED = TaskLifecycle.REMOVED;
+	
+	// Record with the name of a task class in the following records
+	static final int CLASS = 5;
+	
+	static final int MAGIC = 0x54534B4A;
+	static final int VERSION = 2;
+	
+	// Header layout after the magic, version, record size, segment records and index
+	static final int CLAIMED_OFFSET = 20;
+	static final int SEALED_OFFSET = 24;
+	
+	// Record layout: time, class id, task id, value, reserved and the event, written last
+	static final int RECORD_SIZE = 32;
+	static final int TIME_OFFSET = 0;
+	static final int CLASS_OFFSET = 8;
+	static final int TASK_OFFSET = 12;
+	static final int VALUE_OFFSET = 16;
+	static final int EVENT_OFFSET = 28;
+	
+	private static final int DEFAULT_SEGMENT_RECORDS = 1 << 20;
+	
+	// Last id given to a task
+	private static final AtomicInteger TASK_COUNT = new AtomicInteger();
+	
+	private Path directory = null;
+	private int segmentRecords;
+	
+	private volatile Segment segment = null;
+	private volatile boolean closed;
+	
+	private ClassValue<ClassEntry> classes = null;
+	private AtomicInteger classCount = null;
+	
+	// Ids of the tasks that do not extend AbstractTask recorded and not removed yet
+	private Map<Task, Integer> taskIdMap = null;
+	
+	/**
+	 * Opens a journal with segments of 32MB.
+	 * 
+	 * @param directory where the segments are written.
+	 * @throws IOException if the first segment can not be created.
+	 */
+	public TaskJournal(Path directory) throws IOException
+	{
+		this(directory, DEFAULT_SEGMENT_RECORDS);
+	}
+	
+	/**
+	 * Opens a journal.
+	 * 
+	 * @param directory where the segments are written.
+	 * @param segmentRecords amount of records of each segment.
+	 * @throws IOException if the first segment can not be created.
+	 */
+	public TaskJournal(Path directory, int segmentRecords) throws IOException
+	{
+		if (segmentRecords < 2) throw new IllegalArgumentException("Segment records must be greater than 1: " + segmentRecords);
+		if (segmentRecords >= Integer.MAX_VALUE / RECORD_SIZE) throw new IllegalArgumentException("Segment can not be bigger than 2GB: " + segmentRecords + " records.");
+		
+		this.directory = directory;
+		this.segmentRecords = segmentRecords;
+		
+		closed = false;
+		
+		classCount = new AtomicInteger();
+		classes = new ClassValue<ClassEntry>()
+		{
+			protected ClassEntry computeValue(Class<?> type)
+			{
+				return new ClassEntry(classCount.incrementAndGet(), type.getName());
+			}
+		};
+		
+		taskIdMap = new IdentityHashMap<Task, Integer>();
+		
+		Files.createDirectories(directory);
+		
+		// Starts after the last segment of the directory
+		int[] segments = listSegments(directory);
+		segment = new Segment(segments.length > 0 ? segments[segments.length - 1] + 1 : 1);
+	}
+	
+	/**
+	 * Records an event of a task.
+	 * 
+	 * @param event ADDED, EXECUTED, FAILED or REMOVED.
+	 * @param task of the event.
+	 * @param value of the event, the execution time in nanoseconds for EXECUTED and FAILED.
+	 * @param time of the event in nanoseconds.
+	 */
+	public void record(int event, Task task, long value, long time)
+	{
+		if (closed) return;
+		
+		ClassEntry entry = classes.get(task.getClass());
+		
+		Segment current = segment;
+		int index = -1;
+		
+		while (index < 0)
+		{
+			// If the class is not defined in the segment
+			if (entry.segment != current.index)
+			{
+				// Writes its name once in the segment
+				if (current.define(entry)) entry.segment = current.index;
+				else current = roll(current);
+			}
+			else
+			{
+				index = current.claim(1);
+				
+				// If the segment is full
+				if (index < 0) current = roll(current);
+			}
+		}
+		
+		current.write(index, time, entry.id, getTaskId(task, event == REMOVED), value, event);
+	}
+	
+	/**
+	 * Writes the records of the current segment to the storage device.
+	 */
+	public void force()
+	{
+		Segment current = segment;
+		
+		current.updateClaimed();
+		current.buffer.force();
+	}
+	
+	/**
+	 * Writes the records to the storage device. Events recorded after closing are discarded.
+	 */
+	public synchronized void close()
+	{
+		closed = true;
+		
+		segment.seal();
+		
+		force();
+	}
+	
+	/**
+	 * Returns the index of the segment being written.
+	 * 
+	 * @return the index of the segment being written.
+	 */
+	public int getSegment()
+	{
+		return segment.index;
+	}
+	
+	/**
+	 * Returns the file of a segment.
+	 * 
+	 * @param directory of the journal.
+	 * @param index of the segment.
+	 * @return the file of the segment.
+	 */
+	static Path getSegmentPath(Path directory, int index)
+	{
+		return directory.resolve(String.format("journal-%08d.seg", index));
+	}
+	
+	/**
+	 * Returns the indexes of the segments of a directory.
+	 * 
+	 * @param directory of the journal.
+	 * @return the indexes of the segments, sorted.
+	 * @throws IOException if the directory can not be read.
+	 */
+	static int[] listSegments(Path directory) throws IOException
+	{
+		int[] segments = new int[0];
+		
+		if (Files.isDirectory(directory))
+		{
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "journal-*.seg"))
+			{
+				for (Path path : stream)
+				{
+					String name = path.getFileName().toString();
+					
+					segments = Arrays.copyOf(segments, segments.length + 1);
+					segments[segments.length - 1] = Integer.parseInt(name.substring(8, name.length() - 4));
+				}
+			}
+		}
+		
+		Arrays.sort(segments);
+		
+		return segments;
+	}
+	
+	private int getTaskId(Task task, boolean removed)
+	{
+		// If the task keeps its own id
+		if (task instanceof AbstractTask)
+		{
+			AbstractTask abstractTask = (AbstractTask) task;
+			
+			int id = abstractTask.getJournalId();
+			
+			// If it is the first time the task is recorded
+			if (id == 0)
+			{
+				int newId = TASK_COUNT.incrementAndGet();
+				
+				// If other thread gave it an id meanwhile, that one is used
+				if (removed || abstractTask.compareAndSetJournalId(0, newId)) id = newId;
+				else id = abstractTask.getJournalId();
+			}
+			
+			// Releases the id of a removed task
+			if (removed) abstractTask.compareAndSetJournalId(id, 0);
+			
+			return id;
+		}
+		
+		synchronized (taskIdMap)
+		{
+			Integer id = (removed ? taskIdMap.remove(task) : taskIdMap.get(task));
+			
+			// If it is the first time the task is recorded
+			if (id == null)
+			{
+				id = TASK_COUNT.incrementAndGet();
+				
+				if (!removed) taskIdMap.put(task, id);
+			}
+			
+			return id;
+		}
+	}
+	
+	private synchronized Segment roll(Segment full)
+	{
+		// If no other thread started a new segment
+		if (segment == full)
+		{
+			try
+			{
+				full.seal();
+				
+				segment = new Segment(full.index + 1);
+			}
+			catch (IOException ioe)
+			{
+				throw new UncheckedIOException(ioe);
+			}
+		}
+		
+		return segment;
+	}
+	
+	private class Segment
+	{
+		private final int index;
+		private final MappedByteBuffer buffer;
+		
+		// Next record, the first one is the header
+		private final AtomicInteger position;
+		
+		private Segment(int index) throws IOException
+		{
+			this.index = index;
+			
+			try (FileChannel channel = FileChannel.open(getSegmentPath(directory, index), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE))
+			{
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) (segmentRecords + 1) * RECORD_SIZE);
+			}
+			
+			// Writes the header
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(8, RECORD_SIZE);
+			buffer.putInt(12, segmentRecords);
+			buffer.putInt(16, index);
+			
+			position = new AtomicInteger(1);
+		}
+		
+		/**
+		 * Writes how many records were claimed in the header, they may be still being written.
+		 */
+		private void updateClaimed()
+		{
+			buffer.putInt(CLAIMED_OFFSET, Math.min(position.get(), segmentRecords + 1));
+		}
+		
+		/**
+		 * Marks the segment as no longer written, the records that were claimed will still be written.
+		 */
+		private void seal()
+		{
+			updateClaimed();
+			
+			buffer.putInt(SEALED_OFFSET, 1);
+		}
+		
+		private int claim(int records)
+		{
+			int first = position.getAndAdd(records);
+			
+			return (first + records <= segmentRecords + 1 ? first : -1);
+		}
+		
+		private boolean define(ClassEntry entry)
+		{
+			int records = 1 + (entry.name.length + RECORD_SIZE - 1) / RECORD_SIZE;
+			
+			int first = claim(records);
+			
+			// If the name fits in the segment
+			if (first >= 0)
+			{
+				// Writes the name in the records that follow
+				for (int i=0; i<entry.name.length; i++)
+				{
+					buffer.put((first + 1) * RECORD_SIZE + i, entry.name[i]);
+				}
+				
+				write(first, 0, entry.id, 0, entry.name.length, CLASS);
+			}
+			
+			return (first >= 0);
+		}
+		
+		private void write(int record, long time, int classId, int taskId, long value, int event)
+		{
+			int offset = record * RECORD_SIZE;
+			
+			buffer.putLong(offset + TIME_OFFSET, time);
+			buffer.putInt(offset + CLASS_OFFSET, classId);
+			buffer.putInt(offset + TASK_OFFSET, taskId);
+			buffer.putLong(offset + VALUE_OFFSET, value);
+			
+			// The event is written last, a record without it is not complete
+			buffer.putInt(offset + EVENT_OFFSET, event);
+		}
+	}
+	
+	private static class ClassEntry
+	{
+		private final int id;
+		private final byte[] name;
+		
+		// Last segment where the name was written
+		private volatile int segment;
+		
+		private ClassEntry(int id, String name)
+		{
+			this.id = id;
+			this.name = name.getBytes(StandardCharsets.UTF_8);
+			
+			segment = -1;
+		}
+	}
+}
@@ -0,0 +1,289 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the records of a TaskJournal in order, from its first segment.
+ * 
+ * When there are no more records next returns false, it can be called again later to follow a journal that is 
+ * being written. A record that was claimed and not written, because its writer is still writing it or the process 
+ * crashed, is a hole: in the segment being written the reader stops there and waits for it, in a segment that is no 
+ * longer written it is skipped, up to the records claimed in its header or the end of the segment if it was not 
+ * sealed. The main method prints the records of a journal directory.
+ */
+public class TaskJournalReader implements Closeable
+{
+	private Path directory = null;
+	
+	private int segment;
+	private MappedByteBuffer buffer = null;
+	private int capacity;
+	private int position;
+	
+	// Names of the classes of the current segment
+	private Map<Integer, String> classMap = null;
+	
+	private long time;
+	private int event;
+	private String taskClass = null;
+	private int taskId;
+	private long value;
+	
+	/**
+	 * Creates a reader that starts at the first segment of the directory.
+	 * 
+	 * @param directory of the journal.
+	 * @throws IOException if the directory can not be read.
+	 */
+	public TaskJournalReader(Path directory) throws IOException
+	{
+		this.directory = directory;
+		
+		int[] segments = TaskJournal.listSegments(directory);
+		segment = (segments.length > 0 ? segments[0] : 1);
+		
+		classMap = new HashMap<Integer, String>();
+	}
+	
+	/**
+	 * Moves to the next record.
+	 * 
+	 * @return if there is a record, false if the end of the written records was reached.
+	 * @throws IOException if a segment can not be read.
+	 */
+	public boolean next() throws IOException
+	{
+		while (true)
+		{
+			// If the segment is not open and does not exist yet
+			if (buffer == null && !openSegment()) return false;
+			
+			int recordEvent = (position <= capacity ? buffer.getInt(position * TaskJournal.RECORD_SIZE + TaskJournal.EVENT_OFFSET) : 0);
+			
+			// If it is the name of a class
+			if (recordEvent == TaskJournal.CLASS)
+			{
+				readClass();
+			}
+			// If it is an event
+			else if (recordEvent >= TaskJournal.ADDED && recordEvent <= TaskJournal.REMOVED)
+			{
+				readEvent(recordEvent);
+				
+				return true;
+			}
+			else
+			{
+				boolean newer = Files.exists(TaskJournal.getSegmentPath(directory, segment + 1));
+				boolean sealed = (buffer.getInt(TaskJournal.SEALED_OFFSET) != 0);
+				
+				// If the segment is being written the hole may still be written
+				if (!newer && !sealed) return false;
+				
+				// If it was not sealed the process crashed and the claimed records in the header may be outdated
+				int end = (sealed ? buffer.getInt(TaskJournal.CLAIMED_OFFSET) : capacity + 1);
+				
+				// If there are records after the hole
+				if (position + 1 < end)
+				{
+					// Skips the hole
+					position++;
+				}
+				// If it is the end of the records and there is a newer segment
+				else if (newer)
+				{
+					segment++;
+					buffer = null;
+					classMap.clear();
+				}
+				else
+				{
+					return false;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the time of the record, given by the time source of the executor that recorded it.
+	 * 
+	 * @return time in nanoseconds.
+	 */
+	public long getTime()
+	{
+		return time;
+	}
+	
+	/**
+	 * Returns the event of the record.
+	 * 
+	 * @return TaskJournal.ADDED, EXECUTED, FAILED or REMOVED.
+	 */
+	public int getEvent()
+	{
+		return event;
+	}
+	
+	/**
+	 * Returns the class name of the task of the record.
+	 * 
+	 * @return the class name of the task.
+	 */
+	public String getTaskClass()
+	{
+		return taskClass;
+	}
+	
+	/**
+	 * Returns the id of the task of the record, the sequence number the journal gave to the task.
+	 * 
+	 * @return the id of the task.
+	 */
+	public int getTaskId()
+	{
+		return taskId;
+	}
+	
+	/**
+	 * Returns the value of the record.
+	 * 
+	 * @return the execution time in nanoseconds for EXECUTED and FAILED, otherwise 0.
+	 */
+	public long getValue()
+	{
+		return value;
+	}
+	
+	/**
+	 * Returns the index of the segment being read.
+	 * 
+	 * @return the index of the segment being read.
+	 */
+	public int getSegment()
+	{
+		return segment;
+	}
+	
+	public void close()
+	{
+		buffer = null;
+	}
+	
+	/**
+	 * Prints the records of a journal directory.
+	 * 
+	 * @param args the directory of the journal.
+	 * @throws IOException if the journal can not be read.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length != 1)
+		{
+			System.err.println("Usage: TaskJournalReader <directory>");
+			
+			return;
+		}
+		
+		try (TaskJournalReader reader = new TaskJournalReader(Paths.get(args[0])))
+		{
+			while (reader.next())
+			{
+				System.out.println(reader.getTime() + " " + getEventName(reader.getEvent()) + " " + reader.getTaskClass() + "#" + reader.getTaskId() + " " + reader.getValue());
+			}
+		}
+	}
+	
+	private static String getEventName(int event)
+	{
+		switch (event)
+		{
+			case TaskJournal.ADDED: return "ADDED";
+			case TaskJournal.EXECUTED: return "EXECUTED";
+			case TaskJournal.FAILED: return "FAILED";
+			case TaskJournal.REMOVED: return "REMOVED";
+			default: return "UNKNOWN(" + event + ")";
+		}
+	}
+	
+	private boolean openSegment() throws IOException
+	{
+		Path path = TaskJournal.getSegmentPath(directory, segment);
+		
+		// If the segment is not created yet
+		if (!Files.exists(path)) return false;
+		
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		
+		if (buffer.getInt(0) != TaskJournal.MAGIC || buffer.getInt(4) != TaskJournal.VERSION || buffer.getInt(8) != TaskJournal.RECORD_SIZE)
+		{
+			buffer = null;
+			
+			throw new IOException("Not a journal segment: " + path);
+		}
+		
+		capacity = buffer.getInt(12);
+		position = 1;
+		
+		return true;
+	}
+	
+	private void readClass()
+	{
+		int offset = position * TaskJournal.RECORD_SIZE;
+		
+		int id = buffer.getInt(offset + TaskJournal.CLASS_OFFSET);
+		int length = (int) buffer.getLong(offset + TaskJournal.VALUE_OFFSET);
+		
+		// Reads the name from the following records
+		byte[] name = new byte[length];
+		for (int i=0; i<length; i++)
+		{
+			name[i] = buffer.get(offset + TaskJournal.RECORD_SIZE + i);
+		}
+		
+		classMap.put(id, new String(name, StandardCharsets.UTF_8));
+		
+		position += 1 + (length + TaskJournal.RECORD_SIZE - 1) / TaskJournal.RECORD_SIZE;
+	}
+	
+	private void readEvent(int recordEvent)
+	{
+		int offset = position * TaskJournal.RECORD_SIZE;
+		
+		time = buffer.getLong(offset + TaskJournal.TIME_OFFSET);
+		event = recordEvent;
+		taskClass = classMap.get(buffer.getInt(offset + TaskJournal.CLASS_OFFSET));
+		taskId = buffer.getInt(offset + TaskJournal.TASK_OFFSET);
+		value = buffer.getLong(offset + TaskJournal.VALUE_OFFSET);
+		
+		position++;
+	}
+}
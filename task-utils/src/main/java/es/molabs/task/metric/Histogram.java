@@ -0,0 +1,260 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.metric;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of values, usually latencies in nanoseconds, with logarithmic buckets.
+ * 
+ * Each power of two range is split in 16 linear sub buckets, so any recorded value is reported with an error of 
+ * less than 1/16 of it. Values greater than the highest trackable value are counted apart as overflow and reported 
+ * as the highest recorded value. All the storage is allocated when the histogram is created and recording is thread safe and does not allocate.
+ */
+public class Histogram 
+{
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+	
+	// 2^36 nanoseconds are more than 68 seconds
+	private static final int MAX_EXPONENT = 36;
+	private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+	
+	private AtomicLongArray counts = null;
+	private AtomicLong overflow = null;
+	private AtomicLong total = null;
+	private AtomicLong max = null;
+	
+	public Histogram()
+	{
+		counts = new AtomicLongArray(BUCKET_COUNT);
+		overflow = new AtomicLong();
+		total = new AtomicLong();
+		max = new AtomicLong();
+	}
+	
+	/**
+	 * Records a value.
+	 * 
+	 * @param value to record, negative values are recorded as 0.
+	 */
+	public void record(long value)
+	{
+		value = Math.max(value, 0);
+		
+		int index = bucketIndex(value);
+		
+		// If it is not too high for the buckets
+		if (index < BUCKET_COUNT)
+		{
+			counts.incrementAndGet(index);
+		}
+		else
+		{
+			overflow.incrementAndGet();
+		}
+		
+		total.addAndGet(value);
+		
+		// Updates the maximum value
+		long currentMax = max.get();
+		while (value > currentMax && !max.compareAndSet(currentMax, value))
+		{
+			currentMax = max.get();
+		}
+	}
+	
+	/**
+	 * Returns the amount of recorded values.
+	 * 
+	 * @return the amount of recorded values.
+	 */
+	public long getCount()
+	{
+		long count = overflow.get();
+		
+		for (int i=0; i<BUCKET_COUNT; i++)
+		{
+			count += counts.get(i);
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Returns the amount of recorded values that were too high for the buckets.
+	 * 
+	 * @return the amount of recorded values that were too high for the buckets.
+	 */
+	public long getOverflowCount()
+	{
+		return overflow.get();
+	}
+	
+	/**
+	 * Returns the sum of the recorded values.
+	 * 
+	 * @return the sum of the recorded values.
+	 */
+	public long getTotal()
+	{
+		return total.get();
+	}
+	
+	/**
+	 * Returns the highest recorded value.
+	 * 
+	 * @return the highest recorded value, 0 if there are no values.
+	 */
+	public long getMax()
+	{
+		return max.get();
+	}
+	
+	/**
+	 * Returns the mean of the recorded values.
+	 * 
+	 * @return the mean of the recorded values, 0 if there are no values.
+	 */
+	public double getMean()
+	{
+		long count = getCount();
+		
+		return (count > 0 ? total.get() / (double) count : 0d);
+	}
+	
+	/**
+	 * Returns the value at a percentile, reported as the highest value of its bucket or as the highest recorded 
+	 * value if it overflowed the buckets.
+	 * 
+	 * @param percentile between 0 and 100.
+	 * 
+	 * @return the value at the percentile, 0 if there are no values.
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		long value = 0;
+		
+		long count = getCount();
+		
+		// If there are values
+		if (count > 0)
+		{
+			// The amount of values that are equal or lower than the percentile one
+			long target = Math.max(1, (long) Math.ceil(count * Math.min(Math.max(percentile, 0d), 100d) / 100d));
+			long accumulated = 0;
+			
+			// The overflowed values are the highest ones
+			value = max.get();
+			
+			for (int i=0; i<BUCKET_COUNT && accumulated < target; i++)
+			{
+				accumulated += counts.get(i);
+				
+				if (accumulated >= target) value = Math.min(bucketHighestValue(i), max.get());
+			}
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * Removes all the recorded values.
+	 */
+	public void reset()
+	{
+		for (int i=0; i<BUCKET_COUNT; i++)
+		{
+			counts.set(i, 0);
+		}
+		
+		overflow.set(0);
+		total.set(0);
+		max.set(0);
+	}
+	
+	/**
+	 * Returns a copy of this histogram. Values recorded while copying may be missing from the copy.
+	 * 
+	 * @return a copy of this histogram.
+	 */
+	public Histogram copy()
+	{
+		Histogram copy = new Histogram();
+		
+		for (int i=0; i<BUCKET_COUNT; i++)
+		{
+			copy.counts.set(i, counts.get(i));
+		}
+		
+		copy.overflow.set(overflow.get());
+		copy.total.set(total.get());
+		copy.max.set(max.get());
+		
+		return copy;
+	}
+	
+	private static int bucketIndex(long value)
+	{
+		int index;
+		
+		// If it fits in the first sub buckets
+		if (value < SUB_BUCKET_COUNT)
+		{
+			index = (int) value;
+		}
+		else
+		{
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			
+			// If it is too high
+			if (exponent > MAX_EXPONENT)
+			{
+				index = BUCKET_COUNT;
+			}
+			else
+			{
+				int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & SUB_BUCKET_MASK;
+				
+				index = (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+			}
+		}
+		
+		return index;
+	}
+	
+	private static long bucketHighestValue(int index)
+	{
+		long value;
+		
+		// If it is one of the first sub buckets
+		if (index < SUB_BUCKET_COUNT)
+		{
+			value = index;
+		}
+		else
+		{
+			int shift = index / SUB_BUCKET_COUNT - 1;
+			long lowestValue = ((long) (SUB_BUCKET_COUNT + (index & SUB_BUCKET_MASK))) << shift;
+			
+			value = lowestValue + (1L << shift) - 1;
+		}
+		
+		return value;
+	}
+}
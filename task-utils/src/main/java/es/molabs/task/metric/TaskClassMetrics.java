@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.metric;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Execution metrics of a task class: latency histogram of each call to execute, amount of calls and amount of errors.
+ */
+public class TaskClassMetrics 
+{
+	private Class<?> taskClass = null;
+	private Histogram histogram = null;
+	private AtomicLong errors = null;
+	
+	TaskClassMetrics(Class<?> taskClass)
+	{
+		this(taskClass, new Histogram(), 0);
+	}
+	
+	private TaskClassMetrics(Class<?> taskClass, Histogram histogram, long errors)
+	{
+		this.taskClass = taskClass;
+		this.histogram = histogram;
+		this.errors = new AtomicLong(errors);
+	}
+	
+	public Class<?> getTaskClass()
+	{
+		return taskClass;
+	}
+	
+	/**
+	 * Returns the latencies of the calls to execute in nanoseconds.
+	 * 
+	 * @return the latencies of the calls to execute.
+	 */
+	public Histogram getHistogram()
+	{
+		return histogram;
+	}
+	
+	/**
+	 * Returns the amount of calls to execute.
+	 * 
+	 * @return the amount of calls to execute.
+	 */
+	public long getInvocations()
+	{
+		return histogram.getCount();
+	}
+	
+	/**
+	 * Returns the amount of calls to execute that ended with an error.
+	 * 
+	 * @return the amount of calls to execute that ended with an error.
+	 */
+	public long getErrors()
+	{
+		return errors.get();
+	}
+	
+	void record(long time, boolean error)
+	{
+		histogram.record(time);
+		
+		if (error) errors.incrementAndGet();
+	}
+	
+	void reset()
+	{
+		histogram.reset();
+		errors.set(0);
+	}
+	
+	TaskClassMetrics snapshot()
+	{
+		return new TaskClassMetrics(taskClass, histogram.copy(), errors.get());
+	}
+}
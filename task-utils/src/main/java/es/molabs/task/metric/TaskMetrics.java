@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.metric;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of execution metrics by task class. 
+ * 
+ * The metrics of each class are created the first time the class is recorded, after that recording is thread safe 
+ * and does not allocate.
+ */
+public class TaskMetrics 
+{
+	// Cache of the metrics map that does not need to hash the class
+	private ClassValue<TaskClassMetrics> classMetrics = null;
+	private ConcurrentMap<Class<?>, TaskClassMetrics> metricsMap = null;
+	
+	public TaskMetrics()
+	{
+		metricsMap = new ConcurrentHashMap<Class<?>, TaskClassMetrics>();
+		
+		classMetrics = new ClassValue<TaskClassMetrics>()
+		{
+			protected TaskClassMetrics computeValue(Class<?> type)
+			{
+				TaskClassMetrics metrics = new TaskClassMetrics(type);
+				TaskClassMetrics existingMetrics = metricsMap.putIfAbsent(type, metrics);
+				
+				return (existingMetrics != null ? existingMetrics : metrics);
+			}
+		};
+	}
+	
+	/**
+	 * Records a call to execute.
+	 * 
+	 * @param taskClass class of the executed task.
+	 * @param time in nanoseconds that the call took.
+	 * @param error if the call ended with an error.
+	 */
+	public void record(Class<?> taskClass, long time, boolean error)
+	{
+		classMetrics.get(taskClass).record(time, error);
+	}
+	
+	/**
+	 * Returns the metrics of a task class.
+	 * 
+	 * @param taskClass of the metrics.
+	 * 
+	 * @return the live metrics of the class.
+	 */
+	public TaskClassMetrics getMetrics(Class<?> taskClass)
+	{
+		return classMetrics.get(taskClass);
+	}
+	
+	/**
+	 * Returns a copy of the metrics of every recorded task class.
+	 * 
+	 * @return a copy of the metrics by task class.
+	 */
+	public Map<Class<?>, TaskClassMetrics> snapshot()
+	{
+		Map<Class<?>, TaskClassMetrics> snapshot = new HashMap<Class<?>, TaskClassMetrics>();
+		
+		Iterator<TaskClassMetrics> iterator = metricsMap.values().iterator();
+		while (iterator.hasNext())
+		{
+			TaskClassMetrics metrics = iterator.next();
+			
+			snapshot.put(metrics.getTaskClass(), metrics.snapshot());
+		}
+		
+		return snapshot;
+	}
+	
+	/**
+	 * Resets the metrics of every task class.
+	 */
+	public void reset()
+	{
+		Iterator<TaskClassMetrics> iterator = metricsMap.values().iterator();
+		while (iterator.hasNext())
+		{
+			iterator.next().reset();
+		}
+	}
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.run;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import es.molabs.task.base.AbstractTask;
+import es.molabs.task.checkpoint.Checkpointable;
+
+/**
+ * Task which doProcess blocks, so it is run on another thread instead of the executor one.
+ * 
+ * Each time the task is executed and its body is not running, the body is submitted to the executor of the task. 
+ * While it is running the task is in flight and executing it does nothing, so the executor can keep running the
+ * other tasks. Once the body completes, the next execution picks up the result on the executor thread: an error is 
+ * thrown there so it is reported by getError, otherwise the completed hook is called. The task will run until 
+ * isFinished returns true.
+ * 
+ * A checkpoint saves how many times the body was processed, a body in flight is run again after a restore.
+ * 
+ * By default the bodies run on a shared cached pool of daemon threads. Any Executor can be used instead, 
+ * for example one that starts a virtual thread per task on runtimes that support them.
+ */
+public abstract class BlockingRunTask extends AbstractTask implements Checkpointable
+{
+	private static final int IDLE = 0;
+	private static final int RUNNING = 1;
+	private static final int DONE = 2;
+	
+	private Executor executor = null;
+	private Runnable body = null;
+	
+	private volatile int state;
+	private Exception failure = null;
+	
+	private int timesProcessed;
+	
+	private volatile boolean finished;
+	
+	protected BlockingRunTask()
+	{
+		this(DefaultExecutorHolder.EXECUTOR);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param executor where the body of the task will run.
+	 */
+	protected BlockingRunTask(Executor executor)
+	{
+		this.executor = executor;
+		
+		body = new Runnable()
+		{
+			public void run()
+			{
+				runBody();
+			}
+		};
+		
+		state = IDLE;
+		timesProcessed = 0;
+		
+		finished = false;
+	}
+	
+	public boolean isFinished()
+	{
+		// A task set as finished from its body finishes once the result of the body is picked up
+		return finished && state == IDLE;
+	}
+	
+	/**
+	 * Sets this task as finished. Can be called from the body, the task finishes after the next execution picks up 
+	 * the result of the body.
+	 * 
+	 * @param finished value.
+	 */
+	protected void setFinished(boolean finished)
+	{
+		this.finished = finished;
+	}
+	
+	public void reset()
+	{
+		super.reset();
+		
+		timesProcessed = 0;
+		
+		state = IDLE;
+		failure = null;
+		
+		finished = false;
+	}
+	
+	public void saveState(ByteBuffer buffer, long now)
+	{
+		buffer.putInt(timesProcessed);
+		buffer.put((byte) (finished ? 1 : 0));
+	}
+	
+	public void restoreState(ByteBuffer buffer, long now)
+	{
+		timesProcessed = buffer.getInt();
+		finished = (buffer.get() != 0);
+	}
+	
+	/**
+	 * Returns if the body of the task is running.
+	 * 
+	 * @return if the body of the task is running.
+	 */
+	public boolean isInFlight()
+	{
+		return state == RUNNING;
+	}
+	
+	/**
+	 * Returns how many times the body of the task has been successfully processed.
+	 * 
+	 * @return How many times the body of the task has been successfully processed.
+	 */
+	protected int getTimesProcessed()
+	{
+		return timesProcessed;
+	}
+	
+	protected void doExecute(float delta) throws Exception
+	{
+		switch (state)
+		{
+			case IDLE:
+			{
+				state = RUNNING;
+				
+				try
+				{
+					// Runs the body on the executor
+					executor.execute(body);
+				}
+				catch (RuntimeException re)
+				{
+					state = IDLE;
+					
+					throw re;
+				}
+				
+				break;
+			}
+			
+			case DONE:
+			{
+				// The body result is visible as it was written before the state
+				Exception error = failure;
+				failure = null;
+				
+				state = IDLE;
+				
+				// If the body failed
+				if (error != null) throw error;
+				
+				// Increases the times processed counter
+				timesProcessed++;
+				
+				completed();
+				
+				break;
+			}
+			
+			default:
+			{
+				// The body is still running
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Hook that will be called from the executor thread each time the body completes without errors.
+	 */
+	protected void completed()
+	{
+	}
+	
+	/**
+	 * Main method where the blocking logic should be executed. It runs on the executor of the task.
+	 * 
+	 * @throws Exception if an error occurs.
+	 */
+	protected abstract void doProcess() throws Exception;
+	
+	private void runBody()
+	{
+		try
+		{
+			doProcess();
+		}
+		catch (Exception e)
+		{
+			failure = e;
+		}
+		catch (Throwable t)
+		{
+			failure = new ExecutionException(t);
+		}
+		finally
+		{
+			// Publishes the result
+			state = DONE;
+		}
+	}
+	
+	private static class DefaultExecutorHolder
+	{
+		private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory()
+		{
+			private final AtomicInteger threadCount = new AtomicInteger();
+			
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "blocking-task-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				
+				return thread;
+			}
+		});
+	}
+}
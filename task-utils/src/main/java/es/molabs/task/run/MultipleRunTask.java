@@ -15,12 +15,15 @@
  */
 package es.molabs.task.run;
 
+import java.nio.ByteBuffer;
+
 import es.molabs.task.base.AbstractTask;
+import es.molabs.task.checkpoint.Checkpointable;
 
 /**
  * Task that will run until isFinished returns true.
  */
-public abstract class MultipleRunTask extends AbstractTask
+public abstract class MultipleRunTask extends AbstractTask implements Checkpointable
 {
 	private int timesProcessed;
 	
@@ -57,6 +60,18 @@ public abstract class MultipleRunTask extends AbstractTask
 		finished = false;
 	}
 	
+	public void saveState(ByteBuffer buffer, long now)
+	{
+		buffer.putInt(timesProcessed);
+		buffer.put((byte) (finished ? 1 : 0));
+	}
+	
+	public void restoreState(ByteBuffer buffer, long now)
+	{
+		timesProcessed = buffer.getInt();
+		finished = (buffer.get() != 0);
+	}
+	
 	/**
 	 * Returns the internal counter representing how many times this task has been successfully processed.
 	 * 
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.run;
+
+/**
+ * Task that runs like a MultipleRunTask but only processes when it can take a permit from its token bucket. 
+ * 
+ * The tasks that share a bucket process at most its rate per second in total, with bursts of up to its burst size.
+ * The executions without a permit are skipped and counted. The bucket is read with the time of the executor 
+ * of the task, so the tasks that share a bucket must run on executors that read the same clock.
+ */
+public abstract class RateLimitedTask extends MultipleRunTask
+{
+	private TokenBucket bucket = null;
+	
+	private int timesThrottled;
+	
+	protected RateLimitedTask(TokenBucket bucket)
+	{
+		this.bucket = bucket;
+		
+		timesThrottled = 0;
+	}
+	
+	public void reset()
+	{
+		super.reset();
+		
+		timesThrottled = 0;
+	}
+	
+	/**
+	 * Returns the token bucket of the task.
+	 * 
+	 * @return the token bucket of the task.
+	 */
+	public TokenBucket getBucket()
+	{
+		return bucket;
+	}
+	
+	/**
+	 * Returns how many executions were skipped because there was no permit.
+	 * 
+	 * @return the amount of skipped executions.
+	 */
+	protected int getTimesThrottled()
+	{
+		return timesThrottled;
+	}
+	
+	protected void doExecute(float delta)
+	{
+		// If there is a permit
+		if (bucket.tryAcquire(getTimeSource().nanoTime()))
+		{
+			// Executes the task
+			super.doExecute(delta);
+		}
+		else
+		{
+			// Increases the times throttled counter
+			timesThrottled++;
+		}
+	}
+}
@@ -15,12 +15,15 @@
  */
 package es.molabs.task.run;
 
+import java.nio.ByteBuffer;
+
 import es.molabs.task.base.AbstractTask;
+import es.molabs.task.checkpoint.Checkpointable;
 
 /**
  * Task that will only run once.
  */
-public abstract class SingleRunTask extends AbstractTask
+public abstract class SingleRunTask extends AbstractTask implements Checkpointable
 {
 	private boolean finished;
 		
@@ -44,6 +47,23 @@ public abstract class SingleRunTask extends AbstractTask
 		this.finished = finished;
 	}
 	
+	public void reset()
+	{
+		super.reset();
+		
+		finished = false;
+	}
+	
+	public void saveState(ByteBuffer buffer, long now)
+	{
+		buffer.put((byte) (finished ? 1 : 0));
+	}
+	
+	public void restoreState(ByteBuffer buffer, long now)
+	{
+		finished = (buffer.get() != 0);
+	}
+	
 	protected void afterProcess()
 	{
 		finished = true;
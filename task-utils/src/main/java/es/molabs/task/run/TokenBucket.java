@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.run;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket that can be shared by several tasks and executors, from any thread, without locks.
+ * 
+ * It allows a rate of permits per second with bursts of up to the burst size. It is implemented as a generic cell 
+ * rate algorithm: a single atomic value keeps the time at which the bucket will be full again, so taking a permit 
+ * is one compare and set and the refill does not depend on how many tasks read the bucket. The time is passed by 
+ * the callers, usually the time of the tick of their executor, so all of them must read the same clock.
+ */
+public class TokenBucket 
+{
+	// Time in nanoseconds between two permits
+	private long interval;
+	
+	// Time in nanoseconds it takes to refill the whole burst
+	private long burstTime;
+	
+	// Time in nanoseconds when all the permits taken so far have been refilled
+	private AtomicLong fullTime = null;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param rate permits per second.
+	 * @param burst maximum amount of permits that can be taken at once.
+	 */
+	public TokenBucket(float rate, int burst)
+	{
+		if (!(rate > 0)) throw new IllegalArgumentException("Rate must be greater than 0: " + rate);
+		if (burst < 1) throw new IllegalArgumentException("Burst must be greater than 0: " + burst);
+		
+		interval = Math.max(1, Math.round(1_000_000_000d / rate));
+		burstTime = interval * burst;
+		
+		fullTime = new AtomicLong(Long.MIN_VALUE);
+	}
+	
+	/**
+	 * Takes a permit if there is one available.
+	 * 
+	 * @param now current time in nanoseconds.
+	 * @return if the permit was taken.
+	 */
+	public boolean tryAcquire(long now)
+	{
+		while (true)
+		{
+			long current = fullTime.get();
+			
+			// The permit is refilled an interval after the last one, or after now if the bucket is full
+			long next = Math.max(current, now) + interval;
+			
+			// If it would take more than the burst to refill
+			if (next - now > burstTime) return false;
+			
+			if (fullTime.compareAndSet(current, next)) return true;
+		}
+	}
+	
+	/**
+	 * Returns the amount of permits that can be taken now.
+	 * 
+	 * @param now current time in nanoseconds.
+	 * @return the amount of permits available.
+	 */
+	public int getAvailable(long now)
+	{
+		long refillTime = Math.max(fullTime.get(), now) - now;
+		
+		return (int) ((burstTime - refillTime) / interval);
+	}
+	
+	/**
+	 * Returns the time left till a permit is available.
+	 * 
+	 * @param now current time in nanoseconds.
+	 * @return time in nanoseconds, 0 if a permit is available.
+	 */
+	public long getTimeToAcquire(long now)
+	{
+		long refillTime = Math.max(fullTime.get(), now) - now;
+		
+		return Math.max(0, refillTime + interval - burstTime);
+	}
+}
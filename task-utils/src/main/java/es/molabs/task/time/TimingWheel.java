@@ -0,0 +1,364 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.time;
+
+import java.util.List;
+
+import es.molabs.task.Task;
+
+/**
+ * Hierarchical timing wheel that stores tasks by deadline, measured in ticks.
+ * 
+ * Each level has 256 slots and each slot of a level covers a whole rotation of the level below. A task is stored
+ * in the lowest level where its deadline and the current tick share all the upper digits, and it is moved down
+ * when the wheel reaches its slot. Deadlines beyond the range of the top level wait in an overflow list. 
+ * Each level keeps a bitmap of its non empty slots, so advancing the wheel jumps straight to the next slot that 
+ * has entries and its cost depends on the entries that become due and not on the ticks advanced.
+ * 
+ * This class is not thread safe.
+ */
+class TimingWheel 
+{
+	private static final int WHEEL_BITS = 8;
+	private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+	private static final int LEVELS = 4;
+	private static final int BITMAP_WORDS = WHEEL_SIZE / 64;
+	
+	// Levels plus the overflow list
+	private Entry[][] slots = null;
+	
+	// Non empty slots of each level
+	private long[][] occupied = null;
+	
+	private long currentTick;
+	private int size;
+	
+	TimingWheel()
+	{
+		slots = new Entry[LEVELS + 1][WHEEL_SIZE];
+		occupied = new long[LEVELS + 1][BITMAP_WORDS];
+		
+		currentTick = 0;
+		size = 0;
+	}
+	
+	long getCurrentTick()
+	{
+		return currentTick;
+	}
+	
+	int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * Returns the earliest deadline of the stored tasks.
+	 * 
+	 * @return the earliest deadline, Long.MAX_VALUE if the wheel is empty.
+	 */
+	long nextDeadline()
+	{
+		long deadline = Long.MAX_VALUE;
+		
+		// The deadlines of a level are all earlier than the ones of the upper levels, so the first non empty level has it
+		for (int level=0; level<=LEVELS && deadline == Long.MAX_VALUE; level++)
+		{
+			// The slots are sorted so the first non empty slot after the current one has it, the overflow list only has one
+			int slot = (level == LEVELS ? nextSlot(level, 0) : nextSlot(level, getDigit(currentTick, level) + 1));
+			
+			if (slot >= 0)
+			{
+				for (Entry entry=slots[level][slot]; entry!=null; entry=entry.next)
+				{
+					deadline = Math.min(deadline, entry.deadline);
+				}
+			}
+		}
+		
+		return deadline;
+	}
+	
+	/**
+	 * Stores a task in the wheel. The deadline must be greater than the current tick.
+	 * 
+	 * @param task to store.
+	 * @param deadline tick when the task is due.
+	 * 
+	 * @return the entry of the task.
+	 */
+	Entry schedule(Task task, long deadline)
+	{
+		Entry entry = new Entry(task, deadline);
+		
+		link(entry);
+		
+		size++;
+		
+		return entry;
+	}
+	
+	/**
+	 * Removes an entry from the wheel. Does nothing if the entry is no longer stored.
+	 * 
+	 * @param entry to remove.
+	 */
+	void cancel(Entry entry)
+	{
+		// If the entry is in a slot
+		if (entry.level >= 0)
+		{
+			unlink(entry);
+			
+			size--;
+		}
+	}
+	
+	/**
+	 * Advances the wheel till the tick parameter and collects the entries that become due.
+	 * 
+	 * @param tick to advance to.
+	 * @param due where the due entries are added.
+	 */
+	void advance(long tick, List<Entry> due)
+	{
+		while (currentTick < tick)
+		{
+			// If the wheel is empty there is nothing that can expire
+			if (size == 0)
+			{
+				currentTick = tick;
+			}
+			else
+			{
+				currentTick = Math.min(nextTick(), tick);
+				
+				// If the first level completed a rotation
+				if ((currentTick & WHEEL_MASK) == 0)
+				{
+					// Moves down the entries of the upper levels that reached their slot
+					cascade(due);
+				}
+				
+				// Collects the entries of the current slot
+				drain(0, (int) (currentTick & WHEEL_MASK), due);
+			}
+		}
+	}
+	
+	/**
+	 * Removes all the entries from the wheel.
+	 * 
+	 * @param removed where the removed entries are added.
+	 */
+	void clear(List<Entry> removed)
+	{
+		for (int level=0; level<=LEVELS; level++)
+		{
+			for (int slot=0; slot<WHEEL_SIZE; slot++)
+			{
+				drain(level, slot, removed);
+			}
+		}
+	}
+	
+	private long nextTick()
+	{
+		long tick = Long.MAX_VALUE;
+		
+		// The next non empty slot of a level is reached before the ones of the upper levels, so the first level that has one sets it
+		for (int level=0; level<LEVELS && tick == Long.MAX_VALUE; level++)
+		{
+			int slot = nextSlot(level, getDigit(currentTick, level) + 1);
+			
+			// If the level has a non empty slot before the end of its rotation
+			if (slot >= 0)
+			{
+				int upperShift = WHEEL_BITS * (level + 1);
+				
+				// The tick where the slot is reached: the upper digits of the current tick, the slot and 0 below
+				tick = ((currentTick >>> upperShift) << upperShift) | ((long) slot << (WHEEL_BITS * level));
+			}
+		}
+		
+		// If only the overflow list has entries, it is reached when the top level completes a rotation
+		if (tick == Long.MAX_VALUE && slots[LEVELS][0] != null)
+		{
+			tick = ((currentTick >>> (WHEEL_BITS * LEVELS)) + 1) << (WHEEL_BITS * LEVELS);
+		}
+		
+		return tick;
+	}
+	
+	private int nextSlot(int level, int from)
+	{
+		int slot = -1;
+		
+		// For each word of the bitmap from the one of the slot
+		for (int word=from>>>6; word<BITMAP_WORDS && slot < 0; word++)
+		{
+			// Ignores the slots before the first one
+			long bits = occupied[level][word] & (word == from >>> 6 ? -1L << (from & 63) : -1L);
+			
+			if (bits != 0) slot = (word << 6) + Long.numberOfTrailingZeros(bits);
+		}
+		
+		return slot;
+	}
+	
+	private static int getDigit(long tick, int level)
+	{
+		return (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+	}
+	
+	private void cascade(List<Entry> due)
+	{
+		// From the top to the bottom so the entries can keep going down in the same tick
+		for (int level=LEVELS; level>0; level--)
+		{
+			// If the levels below completed a rotation
+			if ((currentTick & ((1L << (WHEEL_BITS * level)) - 1)) == 0)
+			{
+				int slot = (level == LEVELS ? 0 : getDigit(currentTick, level));
+				
+				Entry entry = slots[level][slot];
+				slots[level][slot] = null;
+				occupied[level][slot >>> 6] &= ~(1L << slot);
+				
+				while (entry != null)
+				{
+					Entry next = entry.next;
+					
+					// If it is due
+					if (entry.deadline <= currentTick)
+					{
+						entry.level = -1;
+						entry.prev = null;
+						entry.next = null;
+						
+						size--;
+						
+						due.add(entry);
+					}
+					else
+					{
+						link(entry);
+					}
+					
+					entry = next;
+				}
+			}
+		}
+	}
+	
+	private void drain(int level, int slot, List<Entry> out)
+	{
+		Entry entry = slots[level][slot];
+		slots[level][slot] = null;
+		occupied[level][slot >>> 6] &= ~(1L << slot);
+		
+		while (entry != null)
+		{
+			Entry next = entry.next;
+			
+			entry.level = -1;
+			entry.prev = null;
+			entry.next = null;
+			
+			size--;
+			
+			out.add(entry);
+			
+			entry = next;
+		}
+	}
+	
+	private void link(Entry entry)
+	{
+		// The highest digit where the deadline differs from the current tick
+		int level = (63 - Long.numberOfLeadingZeros(entry.deadline ^ currentTick)) / WHEEL_BITS;
+		int slot;
+		
+		// If it does not fit in the wheel
+		if (level >= LEVELS)
+		{
+			level = LEVELS;
+			slot = 0;
+		}
+		else
+		{
+			slot = getDigit(entry.deadline, level);
+		}
+		
+		entry.level = level;
+		entry.slot = slot;
+		entry.prev = null;
+		entry.next = slots[level][slot];
+		
+		if (entry.next != null) entry.next.prev = entry;
+		
+		slots[level][slot] = entry;
+		occupied[level][slot >>> 6] |= 1L << slot;
+	}
+	
+	private void unlink(Entry entry)
+	{
+		if (entry.prev != null) entry.prev.next = entry.next;
+		else slots[entry.level][entry.slot] = entry.next;
+		
+		// If the slot is empty now
+		if (slots[entry.level][entry.slot] == null) occupied[entry.level][entry.slot >>> 6] &= ~(1L << entry.slot);
+		
+		if (entry.next != null) entry.next.prev = entry.prev;
+		
+		entry.level = -1;
+		entry.prev = null;
+		entry.next = null;
+	}
+	
+	static class Entry
+	{
+		private Task task = null;
+		private long deadline;
+		
+		private int level;
+		private int slot;
+		private Entry prev = null;
+		private Entry next = null;
+		
+		// Time when the task was stored, for the executor use
+		long time;
+		
+		private Entry(Task task, long deadline)
+		{
+			this.task = task;
+			this.deadline = deadline;
+			
+			level = -1;
+		}
+		
+		Task getTask()
+		{
+			return task;
+		}
+		
+		void clearTask()
+		{
+			task = null;
+		}
+	}
+}
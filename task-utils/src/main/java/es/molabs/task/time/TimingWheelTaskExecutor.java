@@ -0,0 +1,306 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.time;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import es.molabs.task.Task;
+import es.molabs.task.TimeTask;
+import es.molabs.task.base.AbstractTaskExecutor;
+import es.molabs.task.time.precise.PreciseTimeTask;
+
+/**
+ * Executor that keeps the time tasks that are waiting in a timing wheel, so each call to execute only visits
+ * the tasks that run every time plus the time tasks that are due.
+ * 
+ * After each execution a TimeTask is asked for its time to process and, if it is greater than the wheel resolution,
+ * it is stored in a wheel till then. When it is due it is executed with the time passed since its last execution
+ * as delta. The tasks that count the deltas they receive wait in a wheel which time is the sum of the deltas received
+ * by the executor, and the PreciseTimeTasks, that measure the time of the time source, wait in a wheel which time is 
+ * the one of the time source, so both are executed as with a SingleThreadTaskExecutor even if the deltas differ from 
+ * the time source. Deadlines are rounded up to the resolution, so a task can be executed up to one resolution later.
+ * 
+ * Tasks can be added from any thread but they must be removed from the thread that calls execute.
+ */
+public class TimingWheelTaskExecutor extends AbstractTaskExecutor
+{
+	// 1 millisecond in nanoseconds
+	private static final long DEFAULT_RESOLUTION = 1_000_000;
+	
+	private long resolution;
+	private TimingWheel wheel = null;
+	private TimingWheel clockWheel = null;
+	private Map<Task, TimingWheel.Entry> entryMap = null;
+	private List<TimingWheel.Entry> dueList = null;
+	
+	// Times in nanoseconds of the wheels: the sum of the deltas and the time source since the first execution
+	private long time;
+	private long clockTime;
+	private long clockOrigin;
+	private boolean clockStarted;
+	
+	/**
+	 * Creates a new TaskExecutor with a resolution of 1 millisecond.
+	 */
+	public TimingWheelTaskExecutor()
+	{
+		this(DEFAULT_RESOLUTION);
+	}
+	
+	/**
+	 * Creates a new TaskExecutor with the resolution parameter.
+	 * 
+	 * @param resolution of the wheel in nanoseconds.
+	 */
+	public TimingWheelTaskExecutor(long resolution)
+	{
+		super(new ConcurrentLinkedQueue<Task>());
+		
+		if (resolution < 1) throw new IllegalArgumentException("Resolution must be greater than 0: " + resolution);
+		
+		this.resolution = resolution;
+		
+		wheel = new TimingWheel();
+		clockWheel = new TimingWheel();
+		entryMap = new IdentityHashMap<Task, TimingWheel.Entry>();
+		dueList = new ArrayList<TimingWheel.Entry>();
+		
+		time = 0;
+		clockTime = 0;
+		clockOrigin = 0;
+		clockStarted = false;
+	}
+	
+	public void remove(Task task)
+	{
+		TimingWheel.Entry entry = entryMap.remove(task);
+		
+		// If the task is waiting in the wheel
+		if (entry != null)
+		{
+			// Calls the task executor task removed hook
+			removed(task);
+			
+			// Removes the task from the wheel
+			getWheel(task).cancel(entry);
+			entry.clearTask();
+			
+			afterRemove(task);
+			
+			// Calls the task removed hook
+			task.removed();
+			
+			completeFutures();
+		}
+		else
+		{
+			super.remove(task);
+		}
+	}
+	
+	public void clear()
+	{
+		super.clear();
+		
+		// Removes the tasks waiting in the wheels
+		wheel.clear(dueList);
+		clockWheel.clear(dueList);
+		entryMap.clear();
+		
+		// For each removed entry
+		for (int i=0; i<dueList.size(); i++)
+		{
+			Task task = dueList.get(i).getTask();
+			
+			// Calls the task executor task removed hook
+			removed(task);
+			
+			afterRemove(task);
+			
+			// Calls the task removed hook
+			task.removed();
+		}
+		
+		dueList.clear();
+		
+		completeFutures();
+	}
+	
+	public int size()
+	{
+		return super.size() + wheel.size() + clockWheel.size();
+	}
+	
+	public float getTimeToProcess()
+	{
+		float timeToProcess = super.getTimeToProcess();
+		
+		// If there are tasks waiting in the wheels
+		if (wheel.size() > 0)
+		{
+			timeToProcess = Math.min(timeToProcess, Math.max(wheel.nextDeadline() * resolution - time, 0) / 1_000_000_000f);
+		}
+		if (clockWheel.size() > 0)
+		{
+			timeToProcess = Math.min(timeToProcess, Math.max(clockWheel.nextDeadline() * resolution - clockTime, 0) / 1_000_000_000f);
+		}
+		
+		return timeToProcess;
+	}
+	
+	/**
+	 * Returns the amount of tasks waiting in the wheels.
+	 * 
+	 * @return the amount of tasks waiting in the wheels.
+	 */
+	public int getWaitingSize()
+	{
+		return wheel.size() + clockWheel.size();
+	}
+	
+	protected void doExecute(float delta)
+	{
+		// Updates the time of the wheel, rounded so a delta of a few nanoseconds is not lost
+		time += Math.round(delta * 1_000_000_000d);
+		
+		long now = getTimeSource().nanoTime();
+		
+		// The time of the clock wheel starts in the first execution
+		if (!clockStarted)
+		{
+			clockOrigin = now;
+			clockStarted = true;
+		}
+		
+		// Updates the time of the clock wheel, that can not go backwards
+		clockTime = Math.max(now - clockOrigin, clockTime);
+		
+		// Collects the tasks that are due
+		wheel.advance(time / resolution, dueList);
+		clockWheel.advance(clockTime / resolution, dueList);
+		
+		// For each task that runs every time
+		Iterator<Task> iterator = getTaskCollection().iterator();
+		while (iterator.hasNext())
+		{
+			Task task = iterator.next();
+			
+			// If the task in not finished
+			if (!isFinished(task))
+			{
+				// Executes the task
+				executeTask(task, delta);
+			}
+			
+			// If the task if finished after executing it
+			if (isFinished(task))
+			{
+				// Removes it and adds its next task
+				finish(iterator, task);
+			}
+			// If it has to wait
+			else if (schedule(task))
+			{
+				// Removes the task from the collection as it is now in the wheel
+				iterator.remove();
+			}
+		}
+		
+		// For each due task
+		for (int i=0; i<dueList.size(); i++)
+		{
+			TimingWheel.Entry entry = dueList.get(i);
+			Task task = entry.getTask();
+			
+			// If it was removed while due
+			if (task == null) continue;
+			
+			entryMap.remove(task);
+			
+			// If the task in not finished
+			if (!isFinished(task))
+			{
+				// Executes the task with the time passed since its last execution
+				executeTask(task, (getTime(task) - entry.time) / 1_000_000_000f);
+			}
+			
+			// If the task if finished after executing it
+			if (isFinished(task))
+			{
+				// Calls the task executor task removed hook
+				removed(task);
+				
+				afterRemove(task);
+				
+				// Disposes the task
+				dispose(task);
+			}
+			// If it does not have to wait
+			else if (!schedule(task))
+			{
+				// Returns the task to the collection
+				getTaskCollection().add(task);
+			}
+		}
+		
+		dueList.clear();
+	}
+	
+	private boolean schedule(Task task)
+	{
+		boolean scheduled = false;
+		
+		// If the task knows when it has to be processed
+		if (task instanceof TimeTask)
+		{
+			TimingWheel taskWheel = getWheel(task);
+			long taskTime = getTime(task);
+			
+			// Deadline in nanoseconds rounded up to the resolution of the wheel
+			long deadline = taskTime + (long) (((TimeTask) task).getTimeToProcess() * 1_000_000_000d);
+			long deadlineTick = (deadline + resolution - 1) / resolution;
+			
+			// If it is not due yet
+			if (deadlineTick > taskWheel.getCurrentTick())
+			{
+				TimingWheel.Entry entry = taskWheel.schedule(task, deadlineTick);
+				entry.time = taskTime;
+				
+				entryMap.put(task, entry);
+				
+				scheduled = true;
+			}
+		}
+		
+		return scheduled;
+	}
+	
+	private TimingWheel getWheel(Task task)
+	{
+		// The precise tasks measure the time of the time source
+		return (task instanceof PreciseTimeTask ? clockWheel : wheel);
+	}
+	
+	private long getTime(Task task)
+	{
+		return (task instanceof PreciseTimeTask ? clockTime : time);
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.time;
+
+import es.molabs.task.TimeSource;
+import es.molabs.task.base.AbstractTaskExecutor;
+
+/**
+ * Time source that only advances when told, so the tasks of an executor can be run faster than real time
+ * and every run with the same inputs gives the same results.
+ * 
+ * The executor should be run with execute(), so the delta of each tick is the virtual time passed. 
+ * The step methods advance the time straight to the earliest deadline of the executor tasks, skipping 
+ * the time where nothing would be processed. Tasks added since the last execution, including the next tasks of 
+ * the ones that finished in it, are executed first without advancing the time, as their time starts then.
+ */
+public class VirtualTimeSource implements TimeSource
+{
+	private long time;
+	
+	/**
+	 * Creates a new time source that starts at 1 nanosecond, as the tasks take 0 as never.
+	 */
+	public VirtualTimeSource()
+	{
+		this(1);
+	}
+	
+	/**
+	 * Creates a new time source.
+	 * 
+	 * @param time where it starts, in nanoseconds.
+	 */
+	public VirtualTimeSource(long time)
+	{
+		this.time = time;
+	}
+	
+	public long nanoTime()
+	{
+		return time;
+	}
+	
+	/**
+	 * Advances the time.
+	 * 
+	 * @param nanos to advance.
+	 */
+	public void advance(long nanos)
+	{
+		if (nanos < 0) throw new IllegalArgumentException("Time can not go backwards: " + nanos);
+		
+		time += nanos;
+	}
+	
+	/**
+	 * Advances the time to the earliest deadline of the executor tasks and executes it. If some task has
+	 * to be executed every time, or the deadline is further away, the time advances maxStep. If tasks were
+	 * added since the last execution the executor is executed without advancing the time.
+	 * 
+	 * @param taskExecutor to execute, its time source must be this one.
+	 * @param maxStep maximum time to advance in nanoseconds.
+	 * 
+	 * @return the time advanced in nanoseconds.
+	 */
+	public long step(AbstractTaskExecutor taskExecutor, long maxStep)
+	{
+		if (maxStep < 1) throw new IllegalArgumentException("Maximum step must be greater than 0: " + maxStep);
+		
+		long step = 0;
+		
+		// If no task is waiting for its first execution
+		if (!taskExecutor.hasAddedTasks())
+		{
+			float timeToProcess = taskExecutor.getTimeToProcess();
+			
+			// Rounds up so the deadline is not missed by a fraction of a nanosecond
+			step = (timeToProcess > 0 ? (long) Math.min(Math.ceil(timeToProcess * 1_000_000_000d), maxStep) : maxStep);
+		}
+		
+		advance(step);
+		
+		taskExecutor.execute();
+		
+		return step;
+	}
+	
+	/**
+	 * Runs the executor for an amount of time, jumping from deadline to deadline.
+	 * 
+	 * @param taskExecutor to execute, its time source must be this one.
+	 * @param duration in nanoseconds.
+	 * @param maxStep maximum time to advance in nanoseconds in each execution.
+	 * 
+	 * @return the amount of executions.
+	 */
+	public long run(AbstractTaskExecutor taskExecutor, long duration, long maxStep)
+	{
+		long endTime = time + duration;
+		long executions = 0;
+		
+		while (time < endTime)
+		{
+			step(taskExecutor, Math.min(maxStep, endTime - time));
+			
+			executions++;
+		}
+		
+		return executions;
+	}
+}
@@ -15,6 +15,10 @@
  */
 package es.molabs.task.time.precise;
 
+import java.nio.ByteBuffer;
+
+import es.molabs.task.checkpoint.TaskCheckpoint;
+
 /**
  * Task that will be executed periodically.
  */
@@ -58,6 +62,20 @@ public abstract class PreciseRepeatTimeTask extends PreciseTimeTask
 		lastExecution = 0;
 	}
 	
+	public void saveState(ByteBuffer buffer, long now)
+	{
+		super.saveState(buffer, now);
+		
+		TaskCheckpoint.putTime(buffer, lastExecution, now);
+	}
+	
+	public void restoreState(ByteBuffer buffer, long now)
+	{
+		super.restoreState(buffer, now);
+		
+		lastExecution = TaskCheckpoint.getTime(buffer, now);
+	}
+	
 	protected float getDelay()
 	{
 		return delay;
@@ -68,6 +86,34 @@ public abstract class PreciseRepeatTimeTask extends PreciseTimeTask
 		return period;
 	}
 
+	public float getTimeToProcess()
+	{
+		long timeLeft;
+		
+		// If it was not executed yet, as the delay is counted from the first execution
+		if (getLastUpdate() == 0)
+		{
+			timeLeft = 0;
+		}
+		// If the delay has not passed yet
+		else if (getTimePassed() < (long) (delay * 1_000_000_000f))
+		{
+			timeLeft = (long) (delay * 1_000_000_000f) - getTimePassed();
+		}
+		// If it was already executed
+		else if (lastExecution > 0)
+		{
+			// Time in nanoseconds till the period has passed
+			timeLeft = (long) (period * 1_000_000_000f) - (getLastUpdate() - lastExecution);
+		}
+		else
+		{
+			timeLeft = 0;
+		}
+		
+		return (timeLeft > 0 ? timeLeft / 1_000_000_000f : 0f);
+	}
+	
 	protected boolean resolveProcess(long timeSinceLastUpdate)
 	{
 		boolean process = false;
@@ -75,8 +121,10 @@ public abstract class PreciseRepeatTimeTask extends PreciseTimeTask
 		// If the delay has passed
 		if (getTimePassed() >= (long) (delay * 1_000_000_000f))
 		{
+			long now = getTimeSource().nanoTime();
+			
 			// Time in nanoseconds since last execution
-			timeSinceLastExecution = (lastExecution > 0 ? System.nanoTime() - lastExecution : 0);	
+			timeSinceLastExecution = (lastExecution > 0 ? now - lastExecution : 0);	
 			
 			// If time since last execution is greater than or equal than the period
 			if (timeSinceLastExecution == 0 || timeSinceLastExecution >= (long) (period * 1_000_000_000f))
@@ -85,7 +133,7 @@ public abstract class PreciseRepeatTimeTask extends PreciseTimeTask
 				process = true;
 				
 				// Updates the last execution time
-				lastExecution = System.nanoTime();
+				lastExecution = now;
 			}
 		}
 		
@@ -15,12 +15,17 @@
  */
 package es.molabs.task.time.precise;
 
+import java.nio.ByteBuffer;
+
+import es.molabs.task.TimeTask;
 import es.molabs.task.base.AbstractTask;
+import es.molabs.task.checkpoint.Checkpointable;
+import es.molabs.task.checkpoint.TaskCheckpoint;
 
 /**
  * Base task for time based tasks.
  */
-public abstract class PreciseTimeTask extends AbstractTask
+public abstract class PreciseTimeTask extends AbstractTask implements TimeTask, Checkpointable
 {	
 	// Time in nanoseconds
 	private long lastUpdate;
@@ -58,15 +63,46 @@ public abstract class PreciseTimeTask extends AbstractTask
 		finished = false;
 	}
 	
+	public void saveState(ByteBuffer buffer, long now)
+	{
+		TaskCheckpoint.putTime(buffer, lastUpdate, now);
+		buffer.putLong(timePassed);
+		buffer.put((byte) (finished ? 1 : 0));
+	}
+	
+	public void restoreState(ByteBuffer buffer, long now)
+	{
+		lastUpdate = TaskCheckpoint.getTime(buffer, now);
+		timePassed = buffer.getLong();
+		finished = (buffer.get() != 0);
+	}
+	
+	public float getTimeToProcess()
+	{
+		return 0f;
+	}
+	
 	protected long getTimePassed()
 	{
 		return timePassed;
 	}
+	
+	/**
+	 * Returns when the task was executed for the last time.
+	 * 
+	 * @return time in nanoseconds, 0 if it was not executed yet.
+	 */
+	protected long getLastUpdate()
+	{
+		return lastUpdate;
+	}
 
 	protected void doExecute(float delta) 
 	{
+		long now = getTimeSource().nanoTime();
+		
 		// Time in nanoseconds since the last call to this method
-		long timeSinceLastUpdate = (lastUpdate > 0 ? System.nanoTime() - lastUpdate : 0);
+		long timeSinceLastUpdate = (lastUpdate > 0 ? now - lastUpdate : 0);
 		
 		// Updates the time passed since the task was started
 		timePassed += timeSinceLastUpdate;
@@ -74,7 +110,7 @@ public abstract class PreciseTimeTask extends AbstractTask
 		// Calls the hooks and executes the task
 		if (resolveProcess(timeSinceLastUpdate)) doProcess(resolveDelta(delta, timeSinceLastUpdate));
 		
-		lastUpdate = System.nanoTime();
+		lastUpdate = now;
 	}
 	
 	/**
@@ -32,6 +32,20 @@ public abstract class PreciseWaitTimeTask extends PreciseTimeTask
 		return waitTime;
 	}
 	
+	public float getTimeToProcess()
+	{
+		long timeLeft = 0;
+		
+		// If it was executed, as the wait time is counted from the first execution
+		if (getLastUpdate() != 0)
+		{
+			// Time in nanoseconds till the wait time has passed
+			timeLeft = (long) (waitTime * 1_000_000_000f) - getTimePassed();
+		}
+		
+		return (timeLeft > 0 ? timeLeft / 1_000_000_000f : 0f);
+	}
+	
 	protected boolean resolveProcess(long timeSinceLastUpdate)
 	{
 		boolean process = false;
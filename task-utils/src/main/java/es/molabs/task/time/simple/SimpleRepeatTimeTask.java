@@ -15,6 +15,10 @@
  */
 package es.molabs.task.time.simple;
 
+import java.nio.ByteBuffer;
+
+import es.molabs.task.checkpoint.TaskCheckpoint;
+
 /**
  * Task that will be executed periodically.
  */
@@ -57,6 +61,20 @@ public abstract class SimpleRepeatTimeTask extends SimpleTimeTask
 		lastExecution = 0;
 	}
 	
+	public void saveState(ByteBuffer buffer, long now)
+	{
+		super.saveState(buffer, now);
+		
+		TaskCheckpoint.putTime(buffer, lastExecution, now);
+	}
+	
+	public void restoreState(ByteBuffer buffer, long now)
+	{
+		super.restoreState(buffer, now);
+		
+		lastExecution = TaskCheckpoint.getTime(buffer, now);
+	}
+	
 	protected float getDelay()
 	{
 		return delay;
@@ -67,6 +85,29 @@ public abstract class SimpleRepeatTimeTask extends SimpleTimeTask
 		return period;
 	}
 
+	public float getTimeToProcess()
+	{
+		float timeLeft;
+		
+		// If the delay has not passed yet
+		if (getTimePassed() < delay)
+		{
+			timeLeft = delay - getTimePassed();
+		}
+		// If it was already executed
+		else if (lastExecution > 0)
+		{
+			// Time in seconds till the period has passed
+			timeLeft = period - (getTimeSource().nanoTime() - lastExecution) / 1_000_000_000f;
+		}
+		else
+		{
+			timeLeft = 0f;
+		}
+		
+		return Math.max(timeLeft, 0f);
+	}
+	
 	protected boolean resolveProcess(float delta)
 	{
 		boolean process = false;
@@ -74,8 +115,10 @@ public abstract class SimpleRepeatTimeTask extends SimpleTimeTask
 		// If the delay has passed
 		if (getTimePassed() >= delay)
 		{
+			long now = getTimeSource().nanoTime();
+			
 			// Time in nanoseconds since last execution
-			timeSinceLastExecution = (lastExecution > 0 ? System.nanoTime() - lastExecution : 0);
+			timeSinceLastExecution = (lastExecution > 0 ? now - lastExecution : 0);
 
 			// If time since last execution is greater than or equal than the period
 			if (timeSinceLastExecution == 0 || timeSinceLastExecution >= (long) (period * 1_000_000_000f))
@@ -84,7 +127,7 @@ public abstract class SimpleRepeatTimeTask extends SimpleTimeTask
 				process = true;
 				
 				// Updates the last execution time
-				lastExecution = System.nanoTime();
+				lastExecution = now;
 			}
 		}
 		
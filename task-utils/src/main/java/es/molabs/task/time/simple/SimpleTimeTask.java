@@ -15,12 +15,16 @@
  */
 package es.molabs.task.time.simple;
 
+import java.nio.ByteBuffer;
+
+import es.molabs.task.TimeTask;
 import es.molabs.task.base.AbstractTask;
+import es.molabs.task.checkpoint.Checkpointable;
 
 /**
  * Base task for time based tasks.
  */
-public abstract class SimpleTimeTask extends AbstractTask
+public abstract class SimpleTimeTask extends AbstractTask implements TimeTask, Checkpointable
 {	
 	// Time in seconds
 	private float timePassed;
@@ -53,6 +57,23 @@ public abstract class SimpleTimeTask extends AbstractTask
 		finished = false;
 	}
 	
+	public void saveState(ByteBuffer buffer, long now)
+	{
+		buffer.putFloat(timePassed);
+		buffer.put((byte) (finished ? 1 : 0));
+	}
+	
+	public void restoreState(ByteBuffer buffer, long now)
+	{
+		timePassed = buffer.getFloat();
+		finished = (buffer.get() != 0);
+	}
+	
+	public float getTimeToProcess()
+	{
+		return 0f;
+	}
+	
 	protected float getTimePassed()
 	{
 		return timePassed;
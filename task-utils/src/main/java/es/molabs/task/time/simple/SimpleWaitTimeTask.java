@@ -32,6 +32,11 @@ public abstract class SimpleWaitTimeTask extends SimpleTimeTask
 		return waitTime;
 	}
 	
+	public float getTimeToProcess()
+	{
+		return Math.max(waitTime - getTimePassed(), 0f);
+	}
+	
 	protected boolean resolveProcess(float delta)
 	{
 		boolean process = false;
@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base.test;
+
+import java.util.Iterator;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import es.molabs.task.Task;
+import es.molabs.task.base.DenseTaskCollection;
+import es.molabs.task.base.DenseTaskExecutor;
+import es.molabs.task.run.MaxRunTask;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DenseTaskExecutorTest 
+{
+	@Test
+	public void testAddRemoveHandle() throws Throwable
+	{
+		DenseTaskExecutor taskExecutor = new DenseTaskExecutor();
+		
+		Task taskOne = Mockito.mock(Task.class);
+		Task taskTwo = Mockito.mock(Task.class);
+		Task taskThree = Mockito.mock(Task.class);
+		
+		// Adds the tasks to the executor
+		long handleOne = taskExecutor.addTask(taskOne);
+		long handleTwo = taskExecutor.addTask(taskTwo);
+		long handleThree = taskExecutor.addTask(taskThree);
+		
+		// Checks that the tasks have been added
+		Mockito.verify(taskOne, Mockito.times(1)).added();
+		Assert.assertEquals(3, taskExecutor.size());
+		Assert.assertSame(taskTwo, taskExecutor.getTask(handleTwo));
+		
+		// Removes the first task
+		Assert.assertTrue(taskExecutor.removeTask(handleOne));
+		
+		// Checks that it was removed and the other handles are still valid
+		Mockito.verify(taskOne, Mockito.times(1)).removed();
+		Assert.assertEquals(2, taskExecutor.size());
+		Assert.assertNull(taskExecutor.getTask(handleOne));
+		Assert.assertSame(taskTwo, taskExecutor.getTask(handleTwo));
+		Assert.assertSame(taskThree, taskExecutor.getTask(handleThree));
+		
+		// Checks that a removed handle is not valid even if its storage is reused
+		long handleFour = taskExecutor.addTask(taskOne);
+		Assert.assertFalse(taskExecutor.removeTask(handleOne));
+		Assert.assertSame(taskOne, taskExecutor.getTask(handleFour));
+		Assert.assertEquals(3, taskExecutor.size());
+	}
+	
+	@Test
+	public void testIteratorRemove() throws Throwable
+	{
+		int TASKS = 100;
+		
+		DenseTaskCollection collection = new DenseTaskCollection(4);
+		
+		// Adds the tasks
+		long[] handles = new long[TASKS];
+		for (int i=0; i<TASKS; i++)
+		{
+			handles[i] = collection.insert(new TestTask(i));
+		}
+		
+		// Removes the even tasks through the iterator
+		int visited = 0;
+		Iterator<Task> iterator = collection.iterator();
+		while (iterator.hasNext())
+		{
+			TestTask task = (TestTask) iterator.next();
+			
+			if (task.id % 2 == 0) iterator.remove();
+			
+			visited++;
+		}
+		
+		// Checks that every task was visited once and only the odd ones remain with valid handles
+		Assert.assertEquals(TASKS, visited);
+		Assert.assertEquals(TASKS / 2, collection.size());
+		for (int i=0; i<TASKS; i++)
+		{
+			Task task = collection.get(handles[i]);
+			
+			if (i % 2 == 0) Assert.assertNull(task);
+			else Assert.assertEquals(i, ((TestTask) task).id);
+		}
+	}
+	
+	@Test
+	public void testIteratorSelfRemove() throws Throwable
+	{
+		int TASKS = 10;
+		
+		DenseTaskCollection collection = new DenseTaskCollection(4);
+		
+		// Adds the tasks
+		long[] handles = new long[TASKS];
+		for (int i=0; i<TASKS; i++)
+		{
+			handles[i] = collection.insert(new TestTask(i));
+		}
+		
+		// Removes the even tasks by handle while visiting them and then through the iterator
+		int visited = 0;
+		Iterator<Task> iterator = collection.iterator();
+		while (iterator.hasNext())
+		{
+			TestTask task = (TestTask) iterator.next();
+			
+			if (task.id % 2 == 0)
+			{
+				collection.remove(handles[task.id]);
+				iterator.remove();
+			}
+			
+			visited++;
+		}
+		
+		// Checks that every task was visited once and only the even ones were removed
+		Assert.assertEquals(TASKS, visited);
+		Assert.assertEquals(TASKS / 2, collection.size());
+		for (int i=0; i<TASKS; i++)
+		{
+			Task task = collection.get(handles[i]);
+			
+			if (i % 2 == 0) Assert.assertNull(task);
+			else Assert.assertEquals(i, ((TestTask) task).id);
+		}
+	}
+	
+	@Test
+	public void testExecute() throws Throwable
+	{
+		int TASKS = 1_000;
+		
+		DenseTaskExecutor taskExecutor = new DenseTaskExecutor();
+		
+		// Adds tasks that run a different amount of times
+		for (int i=0; i<TASKS; i++)
+		{
+			taskExecutor.add(new TestTask(i % 10 + 1));
+		}
+		
+		// For each run
+		for (int i=0; i<10; i++)
+		{
+			// Checks that only the unfinished tasks remain
+			Assert.assertEquals(TASKS - i * (TASKS / 10), taskExecutor.size());
+			
+			taskExecutor.execute();
+		}
+		
+		// Checks that there is no tasks left in the executor
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	private class TestTask extends MaxRunTask
+	{
+		private int id;
+		
+		public TestTask(int id)
+		{
+			super(id);
+			
+			this.id = id;
+		}
+		
+		protected void doProcess() 
+		{
+		}
+	}
+}
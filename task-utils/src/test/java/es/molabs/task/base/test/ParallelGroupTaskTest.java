@@ -0,0 +1,228 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base.test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import es.molabs.task.TaskExecutor;
+import es.molabs.task.base.ParallelGroupTask;
+import es.molabs.task.base.SingleThreadTaskExecutor;
+import es.molabs.task.error.ErrorPolicy;
+import es.molabs.task.error.FailureLimitPolicy;
+import es.molabs.task.run.MaxRunTask;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ParallelGroupTaskTest 
+{
+	@Test
+	public void testAll() throws Throwable
+	{
+		int GROUP_REPEATS = 2;
+		
+		TaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		// Creates tasks that run 1, 2 and 3 times
+		TestTask taskOne = new TestTask(1);
+		TestTask taskTwo = new TestTask(2);
+		TestTask taskThree = new TestTask(3);
+		
+		ParallelGroupTask group = new ParallelGroupTask(GROUP_REPEATS, taskOne, taskTwo, taskThree);
+		taskExecutor.add(group);
+		
+		// For each group repeat
+		for (int i=0; i<GROUP_REPEATS; i++)
+		{
+			// Checks that a run takes as long as the longest task
+			for (int j=0; j<3; j++)
+			{
+				Assert.assertEquals(1, taskExecutor.size());
+				
+				taskExecutor.execute();
+			}
+			
+			// Checks that each task ran its times
+			Assert.assertEquals((i+1) * 1, taskOne.processed.get());
+			Assert.assertEquals((i+1) * 2, taskTwo.processed.get());
+			Assert.assertEquals((i+1) * 3, taskThree.processed.get());
+		}
+		
+		// Checks that the group is finished
+		Assert.assertTrue(group.isFinished());
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	@Test
+	public void testAny() throws Throwable
+	{
+		TestTask taskOne = new TestTask(2);
+		TestTask taskTwo = new TestTask(5);
+		
+		ParallelGroupTask group = new ParallelGroupTask(1, ParallelGroupTask.ANY, taskOne, taskTwo);
+		
+		group.execute(1f);
+		Assert.assertFalse(group.isFinished());
+		
+		group.execute(1f);
+		
+		// Checks that it finished with the first task and the other one was reset
+		Assert.assertTrue(group.isFinished());
+		Assert.assertEquals(2, taskTwo.processed.get());
+		Assert.assertFalse(taskTwo.isFinished());
+	}
+	
+	@Test
+	public void testRequired() throws Throwable
+	{
+		ParallelGroupTask group = new ParallelGroupTask(1, 2, new TestTask(1), new TestTask(3), new TestTask(5));
+		
+		group.execute(1f);
+		group.execute(1f);
+		Assert.assertFalse(group.isFinished());
+		
+		// Checks that it finished with the second task
+		group.execute(1f);
+		Assert.assertTrue(group.isFinished());
+	}
+	
+	@Test
+	public void testPool() throws Throwable
+	{
+		int TASKS = 16;
+		
+		TestTask[] tasks = new TestTask[TASKS];
+		for (int i=0; i<TASKS; i++)
+		{
+			tasks[i] = new TestTask(i + 1);
+		}
+		
+		ParallelGroupTask group = new ParallelGroupTask(1, ParallelGroupTask.ALL, new ForkJoinPool(4), tasks);
+		
+		// Executes till the longest task finishes
+		for (int i=0; i<TASKS; i++)
+		{
+			Assert.assertFalse(group.isFinished());
+			
+			group.execute(1f);
+		}
+		
+		// Checks that every task ran its times
+		Assert.assertTrue(group.isFinished());
+		
+		for (int i=0; i<TASKS; i++)
+		{
+			Assert.assertEquals(i + 1, tasks[i].processed.get());
+		}
+	}
+	
+	@Test
+	public void testFailed() throws Throwable
+	{
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		// Creates a group where a task is removed by its error policy
+		TestTask taskOne = new TestTask(1);
+		FailingTask failing = new FailingTask();
+		
+		ParallelGroupTask group = new ParallelGroupTask(1, ParallelGroupTask.ALL, taskOne, failing);
+		taskExecutor.setErrorPolicy(new FailureLimitPolicy(ErrorPolicy.LOG, 1));
+		
+		Future<?> future = taskExecutor.submit(group);
+		
+		taskExecutor.execute();
+		
+		// Checks that the group failed instead of finishing
+		Assert.assertTrue(group.isFailed());
+		Assert.assertFalse(group.isFinished());
+		Assert.assertEquals(failing.error, group.getError());
+		Assert.assertEquals(0, taskExecutor.size());
+		
+		// Checks that the future has the error of the task
+		try
+		{
+			future.get();
+			
+			Assert.fail("The future did not fail.");
+		}
+		catch (ExecutionException ee)
+		{
+			Assert.assertEquals(failing.error, ee.getCause());
+		}
+	}
+	
+	@Test
+	public void testFailedAny() throws Throwable
+	{
+		TestTask taskOne = new TestTask(2);
+		FailingTask failing = new FailingTask();
+		
+		ParallelGroupTask group = new ParallelGroupTask(1, ParallelGroupTask.ANY, taskOne, failing);
+		group.setErrorPolicy(new FailureLimitPolicy(ErrorPolicy.LOG, 1));
+		
+		// Checks that the group waits for the task left
+		group.execute(1f);
+		Assert.assertFalse(group.isFailed());
+		Assert.assertFalse(group.isFinished());
+		
+		// Checks that it finishes with it
+		group.execute(1f);
+		Assert.assertFalse(group.isFailed());
+		Assert.assertTrue(group.isFinished());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidRequired() throws Throwable
+	{
+		new ParallelGroupTask(1, 3, new TestTask(1), new TestTask(1));
+	}
+	
+	private class FailingTask extends MaxRunTask
+	{
+		private final IllegalStateException error = new IllegalStateException("Test error.");
+		
+		public FailingTask()
+		{
+			super(1);
+		}
+		
+		protected void doProcess()
+		{
+			throw error;
+		}
+	}
+	
+	private class TestTask extends MaxRunTask
+	{
+		private AtomicInteger processed = new AtomicInteger();
+		
+		public TestTask(int timesToRun)
+		{
+			super(timesToRun);
+		}
+		
+		protected void doProcess()
+		{
+			processed.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base.test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import es.molabs.task.TaskExecutor;
+import es.molabs.task.base.ParallelTaskExecutor;
+import es.molabs.task.run.MaxRunTask;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ParallelTaskExecutorTest 
+{
+	@Test
+	public void testExecute() throws Throwable
+	{
+		int TASKS = 10_000;
+		int TASK_RUNS = 3;
+		
+		TaskExecutor taskExecutor = new ParallelTaskExecutor(new ForkJoinPool(4), 64);
+		
+		// Creates and adds the tasks
+		TestTask[] tasks = new TestTask[TASKS];
+		for (int i=0; i<TASKS; i++)
+		{
+			tasks[i] = new TestTask(TASK_RUNS);
+			
+			taskExecutor.add(tasks[i]);
+		}
+		
+		// For each task run
+		for (int i=0; i<TASK_RUNS; i++)
+		{
+			// Checks that all the tasks are still in the executor
+			Assert.assertEquals(TASKS, taskExecutor.size());
+			
+			// Calls execute
+			taskExecutor.execute();
+		}
+		
+		// Checks that every task was run TASK_RUNS times and removed
+		for (int i=0; i<TASKS; i++)
+		{
+			Assert.assertEquals(TASK_RUNS, tasks[i].processed);
+			Assert.assertEquals(1, tasks[i].disposed);
+		}
+		
+		// Checks that there is no tasks left in the executor
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	@Test
+	public void testNext() throws Throwable
+	{
+		TaskExecutor taskExecutor = new ParallelTaskExecutor();
+		
+		TestTask next = Mockito.spy(new TestTask(1));
+		TestTask task = new TestTask(1);
+		task.setNext(next);
+		
+		// Adds the task to the executor
+		taskExecutor.add(task);
+		
+		// Calls execute
+		taskExecutor.execute();
+		
+		// Checks that the next task has been added but not run
+		Mockito.verify(next, Mockito.times(1)).added();
+		Mockito.verify(next, Mockito.times(0)).doProcess();
+		Assert.assertEquals(1, taskExecutor.size());
+		
+		// Calls execute
+		taskExecutor.execute();
+		
+		// Checks that the next task has been run and removed
+		Mockito.verify(next, Mockito.times(1)).doProcess();
+		Mockito.verify(next, Mockito.times(1)).removed();
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	@Test
+	public void testContinuation() throws Throwable
+	{
+		int CHAIN = 10;
+		
+		ParallelTaskExecutor taskExecutor = new ParallelTaskExecutor();
+		taskExecutor.setContinuation(CHAIN, Long.MAX_VALUE);
+		
+		// Creates a chain of tasks that finish in one run
+		TestTask[] tasks = new TestTask[CHAIN];
+		for (int i=CHAIN-1; i>=0; i--)
+		{
+			tasks[i] = new TestTask(1);
+			
+			if (i < CHAIN-1) tasks[i].setNext(tasks[i+1]);
+		}
+		
+		// Adds the first task to the executor
+		taskExecutor.add(tasks[0]);
+		
+		// Calls execute
+		taskExecutor.execute();
+		
+		// Checks that the whole chain has been run and removed in the same execution
+		for (int i=0; i<CHAIN; i++)
+		{
+			Assert.assertEquals(1, tasks[i].processed);
+			Assert.assertEquals(1, tasks[i].disposed);
+		}
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	@Test
+	public void testContinuationDepth() throws Throwable
+	{
+		ParallelTaskExecutor taskExecutor = new ParallelTaskExecutor();
+		taskExecutor.setContinuation(1, Long.MAX_VALUE);
+		
+		TestTask third = new TestTask(1);
+		TestTask second = new TestTask(1);
+		second.setNext(third);
+		TestTask first = new TestTask(1);
+		first.setNext(second);
+		
+		// Adds the first task to the executor
+		taskExecutor.add(first);
+		
+		// Calls execute
+		taskExecutor.execute();
+		
+		// Checks that the second task has been run and the third one is over the depth
+		Assert.assertEquals(1, first.processed);
+		Assert.assertEquals(1, second.processed);
+		Assert.assertEquals(0, third.processed);
+		Assert.assertEquals(1, taskExecutor.size());
+		
+		// Calls execute
+		taskExecutor.execute();
+		
+		// Checks that the third task has been run and removed
+		Assert.assertEquals(1, third.processed);
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	@Test
+	public void testContinuationNotFinished() throws Throwable
+	{
+		ParallelTaskExecutor taskExecutor = new ParallelTaskExecutor();
+		taskExecutor.setContinuation(4, Long.MAX_VALUE);
+		
+		TestTask second = new TestTask(2);
+		TestTask first = new TestTask(1);
+		first.setNext(second);
+		
+		// Adds the first task to the executor
+		taskExecutor.add(first);
+		
+		// Calls execute
+		taskExecutor.execute();
+		
+		// Checks that the second task has been run once and stored
+		Assert.assertEquals(1, second.processed);
+		Assert.assertEquals(1, taskExecutor.size());
+		
+		// Calls execute
+		taskExecutor.execute();
+		
+		// Checks that the second task has been run again and removed
+		Assert.assertEquals(2, second.processed);
+		Assert.assertEquals(1, second.disposed);
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	private class TestTask extends MaxRunTask
+	{
+		private int processed = 0;
+		private int disposed = 0;
+		
+		public TestTask(int timesToRun)
+		{
+			super(timesToRun);
+		}
+		
+		protected void doProcess() 
+		{
+			processed++;
+		}
+		
+		protected void onDispose()
+		{
+			disposed++;
+		}
+	}
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import es.molabs.task.Task;
+import es.molabs.task.base.PriorityTaskExecutor;
+import es.molabs.task.run.MaxRunTask;
+import es.molabs.task.run.MultipleRunTask;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PriorityTaskExecutorTest 
+{
+	@Test
+	public void testOrder() throws Throwable
+	{
+		List<String> order = new ArrayList<String>();
+		
+		PriorityTaskExecutor taskExecutor = new PriorityTaskExecutor(3);
+		
+		// Adds the tasks with mixed priorities
+		taskExecutor.add(new TestTask("low", order));
+		taskExecutor.add(new TestTask("high", order), 2);
+		taskExecutor.add(new TestTask("medium", order), 1);
+		taskExecutor.add(new TestTask("high2", order), 2);
+		
+		taskExecutor.execute();
+		
+		// Checks that the higher priorities ran first in insertion order
+		Assert.assertEquals(Arrays.asList("high", "high2", "medium", "low"), order);
+		Assert.assertEquals(4, taskExecutor.size());
+	}
+	
+	@Test
+	public void testSetPriority() throws Throwable
+	{
+		List<String> order = new ArrayList<String>();
+		
+		PriorityTaskExecutor taskExecutor = new PriorityTaskExecutor(3, 1);
+		
+		TestTask taskOne = new TestTask("one", order);
+		TestTask taskTwo = new TestTask("two", order);
+		
+		taskExecutor.add(taskOne);
+		taskExecutor.add(taskTwo);
+		
+		// Moves the second task up
+		Assert.assertTrue(taskExecutor.setPriority(taskTwo, 2));
+		Assert.assertEquals(2, taskExecutor.getPriority(taskTwo));
+		Assert.assertEquals(1, taskExecutor.getPriority(taskOne));
+		
+		taskExecutor.execute();
+		
+		// Checks that it ran first
+		Assert.assertEquals(Arrays.asList("two", "one"), order);
+		
+		// Checks that a task not added is not found
+		Assert.assertFalse(taskExecutor.setPriority(Mockito.mock(Task.class), 0));
+		Assert.assertEquals(-1, taskExecutor.getPriority(Mockito.mock(Task.class)));
+	}
+	
+	@Test
+	public void testSetPriorityWhileExecuting() throws Throwable
+	{
+		final List<String> order = new ArrayList<String>();
+		
+		final PriorityTaskExecutor taskExecutor = new PriorityTaskExecutor(2);
+		
+		// Task that moves itself to the lowest priority each time it runs
+		TestTask task = new TestTask("moving", order)
+		{
+			protected void doProcess()
+			{
+				super.doProcess();
+				
+				taskExecutor.setPriority(this, 0);
+			}
+		};
+		
+		taskExecutor.add(task, 1);
+		
+		taskExecutor.execute();
+		
+		// Checks that it only ran once and was moved at the end of the execution
+		Assert.assertEquals(Arrays.asList("moving"), order);
+		Assert.assertEquals(0, taskExecutor.getPriority(task));
+	}
+	
+	@Test
+	public void testRemove() throws Throwable
+	{
+		PriorityTaskExecutor taskExecutor = new PriorityTaskExecutor(2);
+		
+		Task taskOne = Mockito.mock(Task.class);
+		Task taskTwo = Mockito.mock(Task.class);
+		
+		taskExecutor.add(taskOne, 1);
+		taskExecutor.add(taskTwo, 0);
+		
+		// Removes the first task
+		taskExecutor.remove(taskOne);
+		
+		// Checks that it was removed
+		Mockito.verify(taskOne, Mockito.times(1)).removed();
+		Assert.assertEquals(1, taskExecutor.size());
+		Assert.assertEquals(-1, taskExecutor.getPriority(taskOne));
+		
+		// Checks that a finished task is removed
+		Mockito.when(taskTwo.isFinished()).thenReturn(true);
+		taskExecutor.execute();
+		
+		Assert.assertEquals(0, taskExecutor.size());
+		Assert.assertEquals(-1, taskExecutor.getPriority(taskTwo));
+	}
+	
+	@Test
+	public void testClear() throws Throwable
+	{
+		PriorityTaskExecutor taskExecutor = new PriorityTaskExecutor(3);
+		
+		// Adds a task to each priority
+		for (int i=0; i<3; i++)
+		{
+			taskExecutor.add(new MaxRunTask(1)
+			{
+				protected void doProcess()
+				{
+				}
+			}, i);
+		}
+		
+		taskExecutor.clear();
+		
+		// Checks that it is empty
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidPriority() throws Throwable
+	{
+		new PriorityTaskExecutor(2).add(Mockito.mock(Task.class), 2);
+	}
+	
+	@Test
+	public void testInvalidAdd() throws Throwable
+	{
+		PriorityTaskExecutor taskExecutor = new PriorityTaskExecutor(2);
+		
+		Task task = Mockito.mock(Task.class);
+		
+		// Adds the task with an invalid priority
+		try
+		{
+			taskExecutor.add(task, 2);
+			
+			Assert.fail("The priority is not valid.");
+		}
+		catch (IllegalArgumentException iae)
+		{
+		}
+		
+		// Adds the task twice
+		taskExecutor.add(task);
+		
+		try
+		{
+			taskExecutor.add(task, 1);
+			
+			Assert.fail("The task is already added.");
+		}
+		catch (IllegalArgumentException iae)
+		{
+		}
+		
+		// Checks that the task was only set up once
+		Mockito.verify(task, Mockito.times(1)).added();
+		Assert.assertEquals(1, taskExecutor.size());
+	}
+	
+	private class TestTask extends MultipleRunTask
+	{
+		private String name = null;
+		private List<String> order = null;
+		
+		public TestTask(String name, List<String> order)
+		{
+			this.name = name;
+			this.order = order;
+		}
+		
+		protected void doProcess()
+		{
+			order.add(name);
+		}
+	}
+}
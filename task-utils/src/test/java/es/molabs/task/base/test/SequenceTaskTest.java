@@ -15,6 +15,8 @@
  */
 package es.molabs.task.base.test;
 
+import java.nio.ByteBuffer;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -98,6 +100,69 @@ public class SequenceTaskTest
 		Assert.assertEquals(0, taskExecutor.size());
 	}
 	
+	@Test
+	public void testContinuation() throws Throwable
+	{
+		TaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		// Creates the tasks that finish in one run
+		TestTask taskOne = Mockito.spy(new TestTask(1));
+		TestTask taskTwo = Mockito.spy(new TestTask(1));
+		TestTask taskThree = Mockito.spy(new TestTask(1));
+		
+		// Creates the sequence that continues with one task in each execution
+		SequenceTask sequence = new SequenceTask(taskOne, taskTwo, taskThree);
+		sequence.setContinuation(1);
+		
+		// Adds the task to the executor
+		taskExecutor.add(sequence);
+		
+		// Calls execute
+		taskExecutor.execute();
+		
+		// Checks that the first two tasks were executed
+		Mockito.verify(taskOne, Mockito.times(1)).doProcess();
+		Mockito.verify(taskTwo, Mockito.times(1)).doProcess();
+		Mockito.verify(taskThree, Mockito.times(0)).doProcess();
+		Assert.assertEquals(false, sequence.isFinished());
+		
+		// Calls execute
+		taskExecutor.execute();
+		
+		// Checks that the last task was executed and the sequence is finished without executing the first one again
+		Mockito.verify(taskOne, Mockito.times(1)).doProcess();
+		Mockito.verify(taskThree, Mockito.times(1)).doProcess();
+		Assert.assertEquals(true, sequence.isFinished());
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	@Test
+	public void testRestoreMismatch() throws Throwable
+	{
+		// Executes two tasks of a sequence of three and saves its state
+		SequenceTask sequence = new SequenceTask(new TestTask(1), new TestTask(1), new TestTask(1));
+		sequence.execute(0f);
+		sequence.execute(0f);
+		
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		sequence.saveState(buffer, 0);
+		buffer.flip();
+		
+		// Restores the state in a sequence of two tasks
+		TestTask taskOne = Mockito.spy(new TestTask(1));
+		TestTask taskTwo = Mockito.spy(new TestTask(1));
+		sequence = new SequenceTask(taskOne, taskTwo);
+		sequence.restoreState(buffer, 0);
+		
+		// Calls execute
+		sequence.execute(0f);
+		
+		// Checks that the sequence started from the beginning
+		Mockito.verify(taskOne, Mockito.times(1)).doProcess();
+		Mockito.verify(taskTwo, Mockito.times(0)).doProcess();
+		Assert.assertEquals(false, sequence.isFinished());
+	}
+	
 	private class TestTask extends MaxRunTask
 	{
 		public TestTask(int timesToRun)
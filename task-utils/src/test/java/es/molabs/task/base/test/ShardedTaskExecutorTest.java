@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import es.molabs.task.base.ShardedTaskExecutor;
+import es.molabs.task.run.MaxRunTask;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ShardedTaskExecutorTest 
+{
+	@Test
+	public void testExecute() throws Throwable
+	{
+		int TASKS = 1_000;
+		int TASK_RUNS = 3;
+		
+		ShardedTaskExecutor taskExecutor = new ShardedTaskExecutor(4);
+		
+		try
+		{
+			// Creates and adds the tasks
+			TestTask[] tasks = new TestTask[TASKS];
+			for (int i=0; i<TASKS; i++)
+			{
+				tasks[i] = new TestTask(TASK_RUNS);
+				
+				taskExecutor.add(Integer.valueOf(i), tasks[i]);
+			}
+			
+			// For each task run
+			for (int i=0; i<TASK_RUNS; i++)
+			{
+				// Checks that all the tasks are still in the executor
+				Assert.assertEquals(TASKS, taskExecutor.size());
+				
+				// Calls execute
+				taskExecutor.execute(1f);
+			}
+			
+			// Checks that every task was run TASK_RUNS times, always on the same thread, and removed
+			for (int i=0; i<TASKS; i++)
+			{
+				Assert.assertEquals(TASK_RUNS, tasks[i].processed);
+				Assert.assertEquals(false, tasks[i].moved);
+				Assert.assertEquals("task-shard-", tasks[i].thread.getName().substring(0, 11));
+			}
+			
+			// Checks that there is no tasks left in the executor
+			Assert.assertEquals(0, taskExecutor.size());
+		}
+		finally
+		{
+			taskExecutor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testAffinity() throws Throwable
+	{
+		int KEYS = 1_000;
+		
+		ShardedTaskExecutor taskExecutor = new ShardedTaskExecutor(4);
+		
+		try
+		{
+			// Adds two tasks for each key
+			for (int i=0; i<KEYS; i++)
+			{
+				taskExecutor.add("entity-" + i, new TestTask(1));
+				taskExecutor.add("entity-" + i, new TestTask(1));
+			}
+			
+			// Checks that the keys are spread over every shard
+			int size = 0;
+			for (int i=0; i<taskExecutor.getShardCount(); i++)
+			{
+				Assert.assertTrue(taskExecutor.getShardSize(i) > KEYS / 4);
+				Assert.assertEquals(0, taskExecutor.getShardSize(i) % 2);
+				
+				size += taskExecutor.getShardSize(i);
+			}
+			Assert.assertEquals(KEYS * 2, size);
+			
+			// Checks that the same key is always on the same shard
+			Assert.assertEquals(taskExecutor.getShardIndex("entity-1"), taskExecutor.getShardIndex("entity-1"));
+			
+			// Removes a task with its key
+			TestTask task = new TestTask(1);
+			taskExecutor.add("entity-1", task);
+			taskExecutor.remove("entity-1", task);
+			Assert.assertEquals(KEYS * 2, taskExecutor.size());
+			
+			// Calls execute
+			taskExecutor.execute();
+			
+			// Checks that the removed task was not run
+			Assert.assertEquals(0, task.processed);
+			Assert.assertEquals(0, taskExecutor.size());
+		}
+		finally
+		{
+			taskExecutor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testError() throws Throwable
+	{
+		ShardedTaskExecutor taskExecutor = new ShardedTaskExecutor(2);
+		
+		try
+		{
+			// Adds a task that breaks the shard
+			taskExecutor.add(new TestTask(1)
+			{
+				public boolean isFinished()
+				{
+					throw new IllegalStateException("Test error.");
+				}
+			});
+			
+			// Checks that the error of the shard is thrown on the calling thread
+			try
+			{
+				taskExecutor.execute();
+				
+				Assert.fail("Expected an IllegalStateException.");
+			}
+			catch (IllegalStateException ise)
+			{
+				Assert.assertEquals("Test error.", ise.getMessage());
+			}
+			
+			// Checks that the executor can still be executed
+			taskExecutor.clear();
+			taskExecutor.execute();
+		}
+		finally
+		{
+			taskExecutor.shutdown();
+		}
+		
+		// Checks that it can not be executed after the shutdown
+		try
+		{
+			taskExecutor.execute();
+			
+			Assert.fail("Expected an IllegalStateException.");
+		}
+		catch (IllegalStateException ise)
+		{
+		}
+	}
+	
+	private class TestTask extends MaxRunTask
+	{
+		private int processed = 0;
+		private Thread thread = null;
+		private boolean moved = false;
+		
+		public TestTask(int timesToRun)
+		{
+			super(timesToRun);
+		}
+		
+		protected void doProcess() 
+		{
+			// Checks if it ran on another thread before
+			if (thread != null && thread != Thread.currentThread()) moved = true;
+			
+			thread = Thread.currentThread();
+			
+			processed++;
+		}
+	}
+}
@@ -15,6 +15,11 @@
  */
 package es.molabs.task.base.test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -24,7 +29,12 @@ import org.mockito.runners.MockitoJUnitRunner;
 import es.molabs.task.Task;
 import es.molabs.task.TaskExecutor;
 import es.molabs.task.base.AbstractTask;
+import es.molabs.task.base.CoalescePolicy;
 import es.molabs.task.base.SingleThreadTaskExecutor;
+import es.molabs.task.error.ErrorPolicy;
+import es.molabs.task.error.FailureLimitPolicy;
+import es.molabs.task.run.MaxRunTask;
+import es.molabs.task.run.MultipleRunTask;
 
 @RunWith(MockitoJUnitRunner.class)
 public class SingleThreadTaskExecutorTest 
@@ -89,6 +99,369 @@ public class SingleThreadTaskExecutorTest
 		Assert.assertEquals(0, taskExecutor.size());
 	}
 	
+	@Test
+	public void testBudget() throws Throwable
+	{
+		int TASKS = 10;
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		DeltaTask[] tasks = new DeltaTask[TASKS];
+		for (int i=0; i<TASKS; i++)
+		{
+			tasks[i] = new DeltaTask();
+			taskExecutor.add(tasks[i]);
+		}
+		
+		// Executes two rounds with no budget, so one task runs in each execution
+		for (int i=0; i<TASKS * 2; i++)
+		{
+			taskExecutor.execute(1f, 0);
+			
+			// Checks that only the task in turn has run
+			Assert.assertEquals(i / TASKS + 1, tasks[i % TASKS].deltaList.size());
+			Assert.assertEquals(i % TASKS != TASKS - 1, taskExecutor.isBehind());
+		}
+		
+		// Checks that in the first round each task received the time since the round started
+		for (int i=0; i<TASKS; i++)
+		{
+			Assert.assertEquals(i + 1, tasks[i].deltaList.get(0), 0.0001f);
+		}
+		
+		// Checks that in the second round each task received the time since it last ran
+		for (int i=0; i<TASKS; i++)
+		{
+			Assert.assertEquals(TASKS, tasks[i].deltaList.get(1), 0.0001f);
+		}
+	}
+	
+	@Test
+	public void testBudgetRemove() throws Throwable
+	{
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		DeltaTask taskOne = new DeltaTask();
+		DeltaTask taskTwo = new DeltaTask();
+		
+		taskExecutor.add(taskOne);
+		taskExecutor.add(taskTwo);
+		
+		// Runs the first task and removes the second one before its turn
+		taskExecutor.execute(1f, 0);
+		taskExecutor.remove(taskTwo);
+		taskExecutor.execute(1f, 0);
+		
+		// Checks that the removed task did not run
+		Assert.assertEquals(0, taskTwo.deltaList.size());
+		
+		// Checks that the next round only has the first task
+		taskExecutor.execute(1f, 0);
+		
+		Assert.assertEquals(2, taskOne.deltaList.size());
+		Assert.assertEquals(2f, taskOne.deltaList.get(1), 0.0001f);
+		Assert.assertFalse(taskExecutor.isBehind());
+	}
+	
+	@Test
+	public void testBudgetFinished() throws Throwable
+	{
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		Task next = Mockito.mock(Task.class);
+		
+		MaxRunTask task = new MaxRunTask(1)
+		{
+			protected void doProcess()
+			{
+			}
+		};
+		task.setNext(next);
+		
+		taskExecutor.add(task);
+		taskExecutor.add(new DeltaTask());
+		
+		// Runs the task that finishes
+		taskExecutor.execute(1f, 0);
+		
+		// Checks that it is kept till the round ends
+		taskExecutor.execute(1f, 0);
+		Mockito.verify(next, Mockito.never()).added();
+		
+		// Checks that it is replaced by its next task when the next round starts
+		taskExecutor.execute(1f, 0);
+		Mockito.verify(next).added();
+		Assert.assertEquals(2, taskExecutor.size());
+		
+		// Checks that the next task runs after the other task with the time since the round started
+		Mockito.verify(next, Mockito.never()).execute(Mockito.anyFloat());
+		taskExecutor.execute(1f, 0);
+		Mockito.verify(next).execute(2f);
+	}
+	
+	@Test
+	public void testBudgetCatchUp() throws Throwable
+	{
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		DeltaTask taskOne = new DeltaTask();
+		DeltaTask taskTwo = new DeltaTask();
+		
+		taskExecutor.add(taskOne);
+		taskExecutor.add(taskTwo);
+		
+		// Runs the first task with budget and the rest without it
+		taskExecutor.execute(1f, 0);
+		taskExecutor.execute(1f);
+		
+		// Checks that the execution without budget ran every task with the time since it last ran
+		Assert.assertEquals(2, taskOne.deltaList.size());
+		Assert.assertEquals(1f, taskOne.deltaList.get(1), 0.0001f);
+		Assert.assertEquals(1, taskTwo.deltaList.size());
+		Assert.assertEquals(2f, taskTwo.deltaList.get(0), 0.0001f);
+		Assert.assertFalse(taskExecutor.isBehind());
+		
+		// Checks that the next one runs every task
+		taskExecutor.execute(1f);
+		
+		Assert.assertEquals(3, taskOne.deltaList.size());
+		Assert.assertEquals(2, taskTwo.deltaList.size());
+		Assert.assertEquals(1f, taskTwo.deltaList.get(1), 0.0001f);
+	}
+	
+	@Test
+	public void testSubmit() throws Throwable
+	{
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		// Submits a task that finishes, one that is cancelled and one that is removed
+		Task task = new TestTask();
+		CompletableFuture<Task> future = taskExecutor.submit(task);
+		CompletableFuture<Task> cancelledFuture = taskExecutor.submit(new DeltaTask());
+		DeltaTask removedTask = new DeltaTask();
+		CompletableFuture<Task> removedFuture = taskExecutor.submit(removedTask);
+		
+		Assert.assertEquals(false, future.isDone());
+		
+		// Cancels a future and removes a task
+		Assert.assertEquals(true, cancelledFuture.cancel(true));
+		taskExecutor.remove(removedTask);
+		Assert.assertEquals(true, removedFuture.isCancelled());
+		Assert.assertEquals(2, taskExecutor.size());
+		
+		// Calls execute
+		taskExecutor.execute();
+		
+		// Checks that the finished task completed its future and the cancelled one was removed
+		Assert.assertEquals(task, future.getNow(null));
+		Assert.assertEquals(true, cancelledFuture.isCancelled());
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	@Test
+	public void testSubmitError() throws Throwable
+	{
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		taskExecutor.setErrorPolicy(new FailureLimitPolicy(ErrorPolicy.LOG, 1));
+		
+		// Submits a task that fails
+		CompletableFuture<Task> future = taskExecutor.submit(new MultipleRunTask()
+		{
+			protected void doProcess()
+			{
+				throw new IllegalStateException("Test error.");
+			}
+		});
+		
+		// Calls execute
+		taskExecutor.execute();
+		
+		// Checks that the future completed with the error of the task
+		try
+		{
+			future.get();
+			
+			Assert.fail("Expected an ExecutionException.");
+		}
+		catch (ExecutionException ee)
+		{
+			Assert.assertEquals("Test error.", ee.getCause().getMessage());
+		}
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	@Test
+	public void testCoalesce() throws Throwable
+	{
+		int ADDS = 10_000;
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		// Adds many tasks for two keys, replacing and dropping
+		CountTask first = null;
+		CountTask last = null;
+		for (int i=0; i<ADDS; i++)
+		{
+			last = new CountTask();
+			taskExecutor.add("replace", last, CoalescePolicy.REPLACE);
+			
+			CountTask task = new CountTask();
+			if (first == null) first = task;
+			Assert.assertEquals(first, taskExecutor.add("drop", task, CoalescePolicy.DROP));
+		}
+		
+		// Checks that there is one task for each key
+		Assert.assertEquals(2, taskExecutor.size());
+		Assert.assertEquals(last, taskExecutor.getPending("replace"));
+		Assert.assertEquals(first, taskExecutor.getPending("drop"));
+		
+		// Calls execute
+		taskExecutor.execute();
+		
+		// Checks that only the kept tasks ran and the keys are free again
+		Assert.assertEquals(1, last.count);
+		Assert.assertEquals(1, first.count);
+		Assert.assertEquals(0, taskExecutor.size());
+		Assert.assertNull(taskExecutor.getPending("replace"));
+		
+		// Checks that a key can be used again
+		CountTask task = new CountTask();
+		Assert.assertEquals(task, taskExecutor.add("replace", task, CoalescePolicy.REPLACE));
+		Assert.assertEquals(1, taskExecutor.size());
+	}
+	
+	@Test
+	public void testCoalesceMerge() throws Throwable
+	{
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		// Merges the changes of the added task into the pending one
+		CoalescePolicy merge = new CoalescePolicy()
+		{
+			public Task coalesce(Task pending, Task added)
+			{
+				((CountTask) pending).changes += ((CountTask) added).changes;
+				
+				return pending;
+			}
+		};
+		
+		CountTask pending = new CountTask();
+		taskExecutor.add("key", pending, merge);
+		for (int i=0; i<9; i++)
+		{
+			taskExecutor.add("key", new CountTask(), merge);
+		}
+		
+		// Checks that the changes were merged in one task
+		Assert.assertEquals(1, taskExecutor.size());
+		Assert.assertEquals(10, pending.changes);
+		
+		// Checks that removing the task frees the key
+		taskExecutor.remove(pending);
+		Assert.assertNull(taskExecutor.getPending("key"));
+	}
+	
+	@Test
+	public void testCoalesceBudget() throws Throwable
+	{
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		CountTask pending = new CountTask();
+		
+		taskExecutor.add("key", pending, CoalescePolicy.DROP);
+		taskExecutor.add(new DeltaTask());
+		
+		// Runs the keyed task with budget, so it finishes but is kept till the round ends
+		taskExecutor.execute(1f, 0);
+		Assert.assertTrue(taskExecutor.isBehind());
+		Assert.assertNull(taskExecutor.getPending("key"));
+		
+		// Checks that the finished task does not drop the added one
+		CountTask added = new CountTask();
+		Assert.assertEquals(added, taskExecutor.add("key", added, CoalescePolicy.DROP));
+		Assert.assertEquals(added, taskExecutor.getPending("key"));
+		
+		// Finishes the round and runs the next one
+		taskExecutor.execute(1f, 0);
+		taskExecutor.execute(1f);
+		
+		// Checks that both tasks ran once and the key is free again
+		Assert.assertEquals(1, pending.count);
+		Assert.assertEquals(1, added.count);
+		Assert.assertNull(taskExecutor.getPending("key"));
+	}
+	
+	private class CountTask extends MaxRunTask
+	{
+		private int count = 0;
+		private int changes = 1;
+		
+		public CountTask()
+		{
+			super(1);
+		}
+		
+		protected void doProcess()
+		{
+			count++;
+		}
+	}
+	
+	@Test
+	public void testRemoveContinued() throws Throwable
+	{
+		final SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		taskExecutor.setContinuation(4, Long.MAX_VALUE);
+		
+		// The next task of the first one is continued and does not finish
+		final DeltaTask continued = new DeltaTask();
+		TestTask first = new TestTask();
+		first.setNext(continued);
+		
+		taskExecutor.add(first);
+		
+		// Other task removes it in the same execution
+		taskExecutor.add(new MaxRunTask(1)
+		{
+			protected void doProcess()
+			{
+				taskExecutor.remove(continued);
+			}
+		});
+		
+		// Calls execute
+		taskExecutor.execute();
+		
+		// Checks that the continued task was run once and not stored after being removed
+		Assert.assertEquals(1, continued.deltaList.size());
+		Assert.assertEquals(0, taskExecutor.size());
+		
+		// Calls execute
+		taskExecutor.execute();
+		
+		// Checks that it is not run again
+		Assert.assertEquals(1, continued.deltaList.size());
+	}
+	
+	private class DeltaTask extends MultipleRunTask
+	{
+		private List<Float> deltaList = new ArrayList<Float>();
+		private float delta;
+		
+		protected void doExecute(float delta)
+		{
+			this.delta = delta;
+			
+			super.doExecute(delta);
+		}
+		
+		protected void doProcess()
+		{
+			deltaList.add(delta);
+		}
+	}
+	
 	private class TestTask extends AbstractTask
 	{
 		public boolean isFinished() 
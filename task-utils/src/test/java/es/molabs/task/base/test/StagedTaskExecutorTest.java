@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base.test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import es.molabs.task.Task;
+import es.molabs.task.base.SingleThreadTaskExecutor;
+import es.molabs.task.base.StagedTaskExecutor;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StagedTaskExecutorTest 
+{
+	@Test
+	public void testAddRemove() throws Throwable
+	{
+		StagedTaskExecutor taskExecutor = new StagedTaskExecutor();
+		
+		Task task = Mockito.mock(Task.class);
+		
+		// Adds the task to the executor
+		taskExecutor.add(task);
+		
+		// Checks that the task is staged
+		Mockito.verify(task, Mockito.times(0)).added();
+		Assert.assertEquals(0, taskExecutor.size());
+		
+		// Calls execute
+		taskExecutor.execute();
+		
+		// Checks that the task was added and executed
+		Mockito.verify(task, Mockito.times(1)).added();
+		Mockito.verify(task, Mockito.times(1)).execute(Mockito.anyFloat());
+		Assert.assertEquals(1, taskExecutor.size());
+		
+		// Removes the task from the executor
+		taskExecutor.remove(task);
+		
+		// Checks that the task is still in the executor
+		Mockito.verify(task, Mockito.times(0)).removed();
+		
+		// Calls execute
+		taskExecutor.execute();
+		
+		// Checks that the task was removed before executing it again
+		Mockito.verify(task, Mockito.times(1)).removed();
+		Mockito.verify(task, Mockito.times(1)).execute(Mockito.anyFloat());
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	@Test
+	public void testConcurrentAdd() throws Throwable
+	{
+		int THREADS = 4;
+		int TASKS = 10_000;
+		
+		final TestTaskExecutor underlyingExecutor = new TestTaskExecutor();
+		final StagedTaskExecutor taskExecutor = new StagedTaskExecutor(underlyingExecutor);
+		
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		Thread[] threads = new Thread[THREADS];
+		
+		// Creates the producer threads
+		for (int i=0; i<THREADS; i++)
+		{
+			threads[i] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						startLatch.await();
+						
+						for (int j=0; j<TASKS; j++)
+						{
+							taskExecutor.add(Mockito.mock(Task.class));
+						}
+					}
+					catch (InterruptedException ie)
+					{						
+					}
+				}
+			});
+			
+			threads[i].start();
+		}
+		
+		// Executes while the producers are adding tasks
+		startLatch.countDown();
+		for (int i=0; i<THREADS; i++)
+		{
+			while (threads[i].isAlive())
+			{
+				taskExecutor.execute();
+			}
+		}
+		
+		// Applies the calls left
+		taskExecutor.flush();
+		
+		// Checks that every task was added from the executor thread
+		Assert.assertEquals(THREADS * TASKS, taskExecutor.size());
+		Assert.assertEquals(THREADS * TASKS, underlyingExecutor.addedCount);
+		Assert.assertFalse(underlyingExecutor.otherThread);
+	}
+	
+	@Test
+	public void testSubmit() throws Throwable
+	{
+		final StagedTaskExecutor taskExecutor = new StagedTaskExecutor();
+		
+		final Task task = Mockito.mock(Task.class);
+		final AtomicReference<CompletableFuture<Task>> futureReference = new AtomicReference<CompletableFuture<Task>>();
+		
+		// Submits the task from other thread
+		Thread thread = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				futureReference.set(taskExecutor.submit(task));
+			}
+		});
+		thread.start();
+		thread.join();
+		
+		CompletableFuture<Task> future = futureReference.get();
+		
+		// Checks that the task is staged
+		Assert.assertEquals(0, taskExecutor.size());
+		Assert.assertFalse(future.isDone());
+		
+		// Calls execute
+		taskExecutor.execute();
+		
+		// Checks that the task was added and the future is pending
+		Assert.assertEquals(1, taskExecutor.size());
+		Assert.assertFalse(future.isDone());
+		
+		// Finishes the task and calls execute
+		Mockito.when(task.isFinished()).thenReturn(true);
+		taskExecutor.execute();
+		
+		// Checks that the future completed with the task
+		Assert.assertEquals(0, taskExecutor.size());
+		Assert.assertEquals(task, future.getNow(null));
+		
+		// Submits other task and cancels it while it is staged
+		Task cancelledTask = Mockito.mock(Task.class);
+		future = taskExecutor.submit(cancelledTask);
+		future.cancel(false);
+		taskExecutor.execute();
+		
+		// Checks that the task was never added
+		Mockito.verify(cancelledTask, Mockito.times(0)).added();
+		Assert.assertEquals(0, taskExecutor.size());
+		
+		// Submits other task and cancels it once it was added
+		cancelledTask = Mockito.mock(Task.class);
+		future = taskExecutor.submit(cancelledTask);
+		taskExecutor.execute();
+		future.cancel(false);
+		taskExecutor.execute();
+		
+		// Checks that the task was removed
+		Mockito.verify(cancelledTask, Mockito.times(1)).removed();
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	private class TestTaskExecutor extends SingleThreadTaskExecutor
+	{
+		private final Thread thread = Thread.currentThread();
+		
+		private int addedCount = 0;
+		private boolean otherThread = false;
+		
+		protected void added(Task task)
+		{
+			addedCount++;
+			
+			if (Thread.currentThread() != thread) otherThread = true;
+		}
+	}
+}
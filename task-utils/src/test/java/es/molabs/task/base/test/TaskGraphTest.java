@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import es.molabs.task.Task;
+import es.molabs.task.base.SingleThreadTaskExecutor;
+import es.molabs.task.base.TaskGraph;
+import es.molabs.task.error.ErrorAction;
+import es.molabs.task.error.ErrorPolicy;
+import es.molabs.task.error.FailureLimitPolicy;
+import es.molabs.task.run.MaxRunTask;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TaskGraphTest 
+{
+	@Test
+	public void testFanOutFanIn() throws Throwable
+	{
+		List<String> log = new ArrayList<String>();
+		
+		// A and B run in parallel, then C, then D
+		TestTask taskA = new TestTask("A", 1, log);
+		TestTask taskB = new TestTask("B", 2, log);
+		TestTask taskC = new TestTask("C", 1, log);
+		TestTask taskD = new TestTask("D", 1, log);
+		
+		TaskGraph graph = new TaskGraph();
+		graph.add(taskA);
+		graph.add(taskB);
+		graph.add(taskC, taskA, taskB);
+		graph.add(taskD, taskC);
+		
+		// A finishes and B runs its first time
+		graph.execute(1f);
+		Assert.assertEquals(Arrays.asList("A", "B"), log);
+		Assert.assertFalse(graph.isRunning(taskC));
+		
+		// B finishes and C and D start in the same execution
+		graph.execute(1f);
+		Assert.assertEquals(Arrays.asList("A", "B", "B", "C", "D"), log);
+		Assert.assertTrue(graph.isFinished());
+		
+		// Checks that it runs again after a reset
+		graph.reset();
+		log.clear();
+		graph.execute(1f);
+		
+		Assert.assertEquals(Arrays.asList("A", "B"), log);
+		Assert.assertFalse(graph.isFinished());
+	}
+	
+	@Test
+	public void testParallel() throws Throwable
+	{
+		int TASKS = 8;
+		
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		
+		TaskGraph graph = new TaskGraph(new ForkJoinPool(4));
+		
+		// Adds tasks that run 3 times and one that waits for all of them
+		TestTask[] tasks = new TestTask[TASKS];
+		for (int i=0; i<TASKS; i++)
+		{
+			tasks[i] = new TestTask("T" + i, 3, log);
+			graph.add(tasks[i]);
+		}
+		
+		TestTask merge = new TestTask("merge", 1, log);
+		graph.add(merge, tasks);
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		taskExecutor.add(graph);
+		
+		// Executes till the graph is finished
+		for (int i=0; i<3; i++)
+		{
+			taskExecutor.execute(1f);
+		}
+		
+		// Checks that every task ran its times and the merge ran last in the same execution
+		Assert.assertEquals(TASKS * 3 + 1, log.size());
+		Assert.assertEquals("merge", log.get(log.size() - 1));
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	@Test
+	public void testFailed() throws Throwable
+	{
+		List<String> log = new ArrayList<String>();
+		
+		TestTask taskA = new TestTask("A", 1, log);
+		TestTask taskB = new TestTask("B", 1, log);
+		TestTask taskC = new TestTask("C", 1, log);
+		TestTask taskD = new TestTask("D", 1, log);
+		
+		// B fails, so C and D that depend on it are skipped
+		taskB.failing = true;
+		
+		TaskGraph graph = new TaskGraph();
+		graph.add(taskA);
+		graph.add(taskB);
+		graph.add(taskC, taskB);
+		graph.add(taskD, taskA, taskC);
+		graph.setErrorPolicy(new FailureLimitPolicy(new ErrorPolicy()
+		{
+			public ErrorAction onError(Task task, Exception e, int errorCount)
+			{
+				return ErrorAction.CONTINUE;
+			}
+		}, 1));
+		
+		graph.execute(1f);
+		
+		// Checks that the graph is finished without running them
+		Assert.assertTrue(graph.isFinished());
+		Assert.assertEquals(Arrays.asList("A"), log);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testUnknownPredecessor() throws Throwable
+	{
+		TaskGraph graph = new TaskGraph();
+		graph.add(new TestTask("A", 1, null), new TestTask("B", 1, null));
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void testAddAfterStart() throws Throwable
+	{
+		TaskGraph graph = new TaskGraph();
+		graph.add(new TestTask("A", 2, new ArrayList<String>()));
+		graph.execute(1f);
+		graph.add(new TestTask("B", 1, null));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testNext() throws Throwable
+	{
+		TestTask task = new TestTask("A", 1, null);
+		task.setNext(new TestTask("B", 1, null));
+		
+		TaskGraph graph = new TaskGraph();
+		graph.add(task);
+	}
+	
+	@Test
+	public void testAddAfterExecutor() throws Throwable
+	{
+		List<String> log = new ArrayList<String>();
+		
+		TaskGraph graph = new TaskGraph();
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		taskExecutor.setErrorPolicy(new FailureLimitPolicy(ErrorPolicy.LOG, 1));
+		taskExecutor.add(graph);
+		
+		// Adds a failing task and one that is finished after the graph is in the executor
+		TestTask taskA = new TestTask("A", 1, log);
+		taskA.failing = true;
+		graph.add(taskA);
+		TestTask taskB = new TestTask("B", 1, log);
+		taskB.execute(1f);
+		log.clear();
+		graph.add(taskB);
+		
+		taskExecutor.execute();
+		
+		// Checks that the failing task was given the policy of the executor and the finished one was not executed
+		Assert.assertTrue(taskA.isFailed());
+		Assert.assertTrue(log.isEmpty());
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	private class TestTask extends MaxRunTask
+	{
+		private String name = null;
+		private List<String> log = null;
+		private boolean failing = false;
+		
+		public TestTask(String name, int times, List<String> log)
+		{
+			super(times);
+			
+			this.name = name;
+			this.log = log;
+		}
+		
+		protected void doProcess()
+		{
+			if (failing) throw new IllegalStateException(name);
+			
+			log.add(name);
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import es.molabs.task.base.SingleThreadTaskExecutor;
+import es.molabs.task.base.TaskLoop;
+import es.molabs.task.run.MultipleRunTask;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TaskLoopTest 
+{
+	@Test
+	public void testTickRate() throws Throwable
+	{
+		float TICKS_PER_SECOND = 1000f;
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		TestTask task = new TestTask(0);
+		taskExecutor.add(task);
+		
+		// Runs the missed ticks so the amount of ticks follows the clock even if the thread is paused
+		TaskLoop taskLoop = new TaskLoop(taskExecutor, TICKS_PER_SECOND, TaskLoop.CatchUpPolicy.BURST);
+		
+		// Runs the loop for a bit more than one statistics window
+		taskLoop.start();
+		Thread.sleep(1_200);
+		taskLoop.stop();
+		
+		// Checks that the loop is stopped and the rate was close to the expected one
+		Assert.assertFalse(taskLoop.isRunning());
+		Assert.assertTrue(task.timesProcessed > 1_000 && task.timesProcessed < 1_300);
+		Assert.assertEquals(TICKS_PER_SECOND, taskLoop.getTickRate(), TICKS_PER_SECOND * 0.05f);
+		Assert.assertTrue(taskLoop.getJitter() <= taskLoop.getMaxJitter());
+	}
+	
+	@Test
+	public void testCatchUpPolicy() throws Throwable
+	{
+		float TICKS_PER_SECOND = 1000f;
+		
+		// Task that takes 50 milliseconds the first time
+		SingleThreadTaskExecutor skipExecutor = new SingleThreadTaskExecutor();
+		TestTask skipTask = new TestTask(50);
+		skipExecutor.add(skipTask);
+		
+		SingleThreadTaskExecutor burstExecutor = new SingleThreadTaskExecutor();
+		TestTask burstTask = new TestTask(50);
+		burstExecutor.add(burstTask);
+		
+		TaskLoop skipLoop = new TaskLoop(skipExecutor, TICKS_PER_SECOND, TaskLoop.CatchUpPolicy.SKIP);
+		TaskLoop burstLoop = new TaskLoop(burstExecutor, TICKS_PER_SECOND, TaskLoop.CatchUpPolicy.BURST);
+		
+		// Runs both loops
+		skipLoop.start();
+		burstLoop.start();
+		Thread.sleep(200);
+		skipLoop.stop();
+		burstLoop.stop();
+		
+		// Checks that the skip loop dropped the ticks of the long one and the burst loop ran them
+		Assert.assertTrue(skipLoop.getMissedTicks() >= 45);
+		Assert.assertEquals(0, burstLoop.getMissedTicks());
+		Assert.assertTrue(burstTask.timesProcessed > skipTask.timesProcessed + 30);
+	}
+	
+	@Test
+	public void testStopFromTick() throws Throwable
+	{
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		final TaskLoop taskLoop = new TaskLoop(taskExecutor, 1000f);
+		
+		// Task that stops the loop
+		taskExecutor.add(new MultipleRunTask()
+		{
+			protected void doProcess()
+			{
+				try
+				{
+					taskLoop.stop();
+				}
+				catch (InterruptedException ie)
+				{
+				}
+			}
+		});
+		
+		taskLoop.start();
+		
+		// Waits till the loop stops by itself
+		for (int i=0; i<1_000 && taskLoop.isRunning(); i++)
+		{
+			Thread.sleep(1);
+		}
+		
+		// Checks that it did not wait for itself
+		Assert.assertFalse(taskLoop.isRunning());
+		taskLoop.stop();
+	}
+	
+	private class TestTask extends MultipleRunTask
+	{
+		private long firstTime;
+		
+		private volatile int timesProcessed = 0;
+		
+		public TestTask(long firstTime)
+		{
+			this.firstTime = firstTime;
+		}
+		
+		protected void doProcess() 
+		{
+			if (timesProcessed == 0 && firstTime > 0)
+			{
+				try
+				{
+					Thread.sleep(firstTime);
+				}
+				catch (InterruptedException ie)
+				{
+				}
+			}
+			
+			timesProcessed++;
+		}
+	}
+}
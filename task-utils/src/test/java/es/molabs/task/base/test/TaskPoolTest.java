@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.base.test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import es.molabs.task.Task;
+import es.molabs.task.base.SingleThreadTaskExecutor;
+import es.molabs.task.base.TaskPool;
+import es.molabs.task.run.SingleRunTask;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TaskPoolTest 
+{
+	@Test
+	public void testRecycle() throws Throwable
+	{
+		TaskPool<TestSingleRunTask> pool = new TaskPool<TestSingleRunTask>(new TestFactory(), 10);
+		
+		Task next = Mockito.mock(Task.class);
+		
+		TestSingleRunTask task = pool.acquire();
+		task.setNext(next);
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		taskExecutor.add(task);
+		taskExecutor.execute();
+		
+		// Checks that the next task was added and the finished task is back in the pool
+		Mockito.verify(next).added();
+		Assert.assertEquals(1, taskExecutor.size());
+		Assert.assertEquals(1, pool.size());
+		
+		// Checks that the same task is given again reset
+		TestSingleRunTask recycledTask = pool.acquire();
+		
+		Assert.assertSame(task, recycledTask);
+		Assert.assertFalse(recycledTask.isFinished());
+		Assert.assertNull(recycledTask.getNext());
+		Assert.assertEquals(0, pool.size());
+	}
+	
+	@Test
+	public void testSteadyState() throws Throwable
+	{
+		TaskPool<TestSingleRunTask> pool = new TaskPool<TestSingleRunTask>(new TestFactory(), 100);
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		// Spawns 10 tasks each tick for 1000 ticks
+		for (int i=0; i<1_000; i++)
+		{
+			for (int j=0; j<10; j++)
+			{
+				taskExecutor.add(pool.acquire());
+			}
+			
+			taskExecutor.execute();
+		}
+		
+		// Checks that only the tasks of the first tick were created
+		Assert.assertEquals(10, pool.getCreated());
+		Assert.assertEquals(10, pool.size());
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	@Test
+	public void testCapacity() throws Throwable
+	{
+		TaskPool<TestSingleRunTask> pool = new TaskPool<TestSingleRunTask>(new TestFactory(), 2);
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		// Spawns more tasks than the capacity
+		for (int i=0; i<5; i++)
+		{
+			taskExecutor.add(pool.acquire());
+		}
+		
+		taskExecutor.execute();
+		
+		// Checks that the pool only kept its capacity
+		Assert.assertEquals(5, pool.getCreated());
+		Assert.assertEquals(2, pool.size());
+	}
+	
+	@Test
+	public void testSubmit() throws Throwable
+	{
+		TaskPool<TestSingleRunTask> pool = new TaskPool<TestSingleRunTask>(new TestFactory(), 10);
+		
+		final TestSingleRunTask task = pool.acquire();
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		CompletableFuture<Task> future = taskExecutor.submit(task);
+		
+		// Checks the state of the task when the future completes
+		final AtomicBoolean finished = new AtomicBoolean(false);
+		future.thenAccept(new Consumer<Task>()
+		{
+			public void accept(Task value)
+			{
+				finished.set(value.isFinished());
+			}
+		});
+		
+		taskExecutor.execute();
+		
+		// Checks that the future completed with the finished task and it was not returned to the pool
+		Assert.assertSame(task, future.getNow(null));
+		Assert.assertTrue(finished.get());
+		Assert.assertEquals(0, pool.size());
+		Assert.assertNotSame(task, pool.acquire());
+	}
+	
+	private class TestFactory implements Supplier<TestSingleRunTask>
+	{
+		public TestSingleRunTask get()
+		{
+			return new TestSingleRunTask();
+		}
+	}
+	
+	private class TestSingleRunTask extends SingleRunTask
+	{
+		protected void doProcess()
+		{
+		}
+	}
+}
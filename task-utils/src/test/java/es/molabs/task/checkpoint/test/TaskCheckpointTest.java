@@ -0,0 +1,285 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.checkpoint.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import es.molabs.task.base.SequenceTask;
+import es.molabs.task.base.SingleThreadTaskExecutor;
+import es.molabs.task.checkpoint.TaskCheckpoint;
+import es.molabs.task.run.MaxRunTask;
+import es.molabs.task.time.VirtualTimeSource;
+import es.molabs.task.time.precise.PreciseRepeatTimeTask;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TaskCheckpointTest 
+{
+	private static final long STEP = 400_000_000L;
+	
+	@Test
+	public void testRestore() throws Throwable
+	{
+		Path file = Files.createTempFile("checkpoint", ".bin");
+		
+		try
+		{
+			VirtualTimeSource timeSource = new VirtualTimeSource(1_000_000_000L);
+			SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+			taskExecutor.setTimeSource(timeSource);
+			
+			TestTask counter = new TestTask(5);
+			TestRepeatTask repeat = new TestRepeatTask(1f);
+			SequenceTask sequence = new SequenceTask(new TestTask(2), new TestTask(2));
+			
+			// Registers the tasks in a new checkpoint
+			TaskCheckpoint checkpoint = new TaskCheckpoint(file, 8, 64);
+			Assert.assertEquals(false, checkpoint.register("counter", counter));
+			Assert.assertEquals(false, checkpoint.register("repeat", repeat));
+			Assert.assertEquals(false, checkpoint.register("sequence", sequence));
+			
+			taskExecutor.add(counter);
+			taskExecutor.add(repeat);
+			taskExecutor.add(sequence);
+			taskExecutor.add(checkpoint);
+			
+			// Executes three times, the repeat task is processed in the first one
+			taskExecutor.execute();
+			timeSource.advance(STEP);
+			taskExecutor.execute();
+			timeSource.advance(STEP);
+			taskExecutor.execute();
+			
+			Assert.assertEquals(1, repeat.processed);
+			
+			checkpoint.close();
+			
+			// Restarts with another clock and new tasks
+			timeSource = new VirtualTimeSource(50_000_000_000L);
+			taskExecutor = new SingleThreadTaskExecutor();
+			taskExecutor.setTimeSource(timeSource);
+			
+			counter = new TestTask(5);
+			repeat = new TestRepeatTask(1f);
+			sequence = new SequenceTask(new TestTask(2), new TestTask(2));
+			
+			// Checks that the tasks are restored
+			checkpoint = new TaskCheckpoint(file, 8, 64);
+			checkpoint.setTimeSource(timeSource);
+			Assert.assertEquals(true, checkpoint.register("counter", counter));
+			Assert.assertEquals(true, checkpoint.register("repeat", repeat));
+			Assert.assertEquals(true, checkpoint.register("sequence", sequence));
+			Assert.assertEquals(3, checkpoint.size());
+			
+			taskExecutor.add(counter);
+			taskExecutor.add(repeat);
+			taskExecutor.add(sequence);
+			
+			// Checks that the repeat task keeps its phase: it last ran 2 * STEP ago
+			timeSource.advance(STEP / 4);
+			taskExecutor.execute();
+			Assert.assertEquals(0, repeat.processed);
+			
+			timeSource.advance(STEP / 4);
+			taskExecutor.execute();
+			Assert.assertEquals(1, repeat.processed);
+			
+			// Checks that the counter and the sequence kept their progress
+			Assert.assertEquals(true, counter.isFinished());
+			Assert.assertEquals(true, sequence.isFinished());
+			
+			checkpoint.close();
+		}
+		finally
+		{
+			Files.delete(file);
+		}
+	}
+	
+	@Test
+	public void testCorrupted() throws Throwable
+	{
+		Path file = Files.createTempFile("checkpoint", ".bin");
+		
+		try
+		{
+			TestTask task = new TestTask(5);
+			task.execute(0f);
+			
+			// Saves the task
+			TaskCheckpoint checkpoint = new TaskCheckpoint(file, 2, 64);
+			checkpoint.register("task", task);
+			checkpoint.save();
+			checkpoint.close();
+			
+			// Changes a byte of its state, the first save is written in the second copy
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+			{
+				channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}), 16 + 64 + 8 + 12);
+			}
+			
+			// Checks that the task is not restored
+			checkpoint = new TaskCheckpoint(file, 2, 64);
+			Assert.assertEquals(false, checkpoint.register("task", new TestTask(5)));
+			checkpoint.close();
+			
+			// Checks that a checkpoint with another layout can not be opened
+			try
+			{
+				new TaskCheckpoint(file, 4, 64);
+				
+				Assert.fail("Expected an IOException.");
+			}
+			catch (IOException ioe)
+			{
+			}
+		}
+		finally
+		{
+			Files.delete(file);
+		}
+	}
+	
+	@Test
+	public void testTornWrite() throws Throwable
+	{
+		Path file = Files.createTempFile("checkpoint", ".bin");
+		
+		try
+		{
+			TestTask task = new TestTask(2);
+			
+			// Saves the task after each execution, the second save is written in the first copy
+			TaskCheckpoint checkpoint = new TaskCheckpoint(file, 2, 64);
+			checkpoint.register("task", task);
+			task.execute(0f);
+			checkpoint.save();
+			task.execute(0f);
+			checkpoint.save();
+			checkpoint.close();
+			
+			// Changes a byte of the second save as if the process stopped while writing it
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+			{
+				channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}), 16 + 8 + 12);
+			}
+			
+			// Checks that the task is restored from the first save
+			task = new TestTask(2);
+			checkpoint = new TaskCheckpoint(file, 2, 64);
+			Assert.assertEquals(true, checkpoint.register("task", task));
+			Assert.assertEquals(false, task.isFinished());
+			
+			task.execute(0f);
+			Assert.assertEquals(true, task.isFinished());
+			
+			// Checks that the next save overwrites the corrupted copy and is the one restored
+			checkpoint.save();
+			checkpoint.close();
+			
+			task = new TestTask(2);
+			checkpoint = new TaskCheckpoint(file, 2, 64);
+			Assert.assertEquals(true, checkpoint.register("task", task));
+			Assert.assertEquals(true, task.isFinished());
+			checkpoint.close();
+		}
+		finally
+		{
+			Files.delete(file);
+		}
+	}
+	
+	@Test
+	public void testFull() throws Throwable
+	{
+		Path file = Files.createTempFile("checkpoint", ".bin");
+		
+		try
+		{
+			TaskCheckpoint checkpoint = new TaskCheckpoint(file, 1, 32);
+			
+			// Checks that the state must fit in the slot
+			checkpoint.register("a-long-task-id", new TestTask(1));
+			try
+			{
+				checkpoint.save();
+				
+				Assert.fail("Expected an IllegalStateException.");
+			}
+			catch (IllegalStateException ise)
+			{
+			}
+			
+			// Checks that there is no slot left
+			try
+			{
+				checkpoint.register("other", new TestTask(1));
+				
+				Assert.fail("Expected an IllegalStateException.");
+			}
+			catch (IllegalStateException ise)
+			{
+			}
+			
+			// Checks that an unregistered slot can be used again
+			checkpoint.unregister("a-long-task-id");
+			checkpoint.register("task", new TestTask(1));
+			checkpoint.save();
+			
+			checkpoint.close();
+		}
+		finally
+		{
+			Files.delete(file);
+		}
+	}
+	
+	private class TestTask extends MaxRunTask
+	{
+		public TestTask(int timesToRun)
+		{
+			super(timesToRun);
+		}
+		
+		protected void doProcess() 
+		{
+		}
+	}
+	
+	private class TestRepeatTask extends PreciseRepeatTimeTask
+	{
+		private int processed = 0;
+		
+		public TestRepeatTask(float period)
+		{
+			super(period);
+		}
+		
+		protected void doProcess(float delta) 
+		{
+			processed++;
+		}
+	}
+}
@@ -0,0 +1,307 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.error.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import es.molabs.task.Task;
+import es.molabs.task.base.SingleThreadTaskExecutor;
+import es.molabs.task.error.AsyncErrorPolicy;
+import es.molabs.task.error.ErrorAction;
+import es.molabs.task.error.ErrorPolicy;
+import es.molabs.task.error.FailureLimitPolicy;
+import es.molabs.task.error.RateLimitedErrorPolicy;
+import es.molabs.task.run.MultipleRunTask;
+import es.molabs.task.time.VirtualTimeSource;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ErrorPolicyTest 
+{
+	@Test
+	public void testRemove() throws Throwable
+	{
+		ErrorPolicy policy = Mockito.mock(ErrorPolicy.class);
+		Mockito.when(policy.onError(Mockito.any(Task.class), Mockito.any(Exception.class), Mockito.anyInt())).thenReturn(ErrorAction.CONTINUE);
+		
+		Task next = Mockito.mock(Task.class);
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		taskExecutor.setErrorPolicy(new FailureLimitPolicy(policy, 3));
+		
+		FailingTask task = new FailingTask(next);
+		taskExecutor.add(task);
+		
+		// Executes the task till it reaches the limit
+		for (int i=0; i<3; i++)
+		{
+			taskExecutor.execute();
+		}
+		
+		// Checks that the task was removed after the third error without adding its next task
+		Assert.assertTrue(task.isFailed());
+		Assert.assertEquals(0, taskExecutor.size());
+		Mockito.verify(policy, Mockito.times(3)).onError(Mockito.eq(task), Mockito.any(Exception.class), Mockito.anyInt());
+		Mockito.verify(policy).onError(Mockito.eq(task), Mockito.any(Exception.class), Mockito.eq(3));
+		Mockito.verify(next, Mockito.never()).added();
+	}
+	
+	@Test
+	public void testPause() throws Throwable
+	{
+		testPause(1);
+		
+		// Checks a time source at or below 0, as System.nanoTime can be
+		testPause(0);
+		testPause(-10_000_000_000L);
+	}
+	
+	@Test
+	public void testRecover() throws Throwable
+	{
+		ErrorPolicy policy = Mockito.mock(ErrorPolicy.class);
+		Mockito.when(policy.onError(Mockito.any(Task.class), Mockito.any(Exception.class), Mockito.anyInt())).thenReturn(ErrorAction.CONTINUE);
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		taskExecutor.setErrorPolicy(new FailureLimitPolicy(policy, 2));
+		
+		FailingTask task = new FailingTask(null);
+		taskExecutor.add(task);
+		
+		// Fails, works and fails again
+		taskExecutor.execute();
+		task.failing = false;
+		taskExecutor.execute();
+		task.failing = true;
+		taskExecutor.execute();
+		
+		// Checks that the consecutive errors were counted from the start again
+		Assert.assertFalse(task.isFailed());
+		Assert.assertEquals(1, taskExecutor.size());
+		Mockito.verify(policy, Mockito.times(2)).onError(Mockito.eq(task), Mockito.any(Exception.class), Mockito.eq(1));
+	}
+	
+	@Test
+	public void testRateLimited() throws Throwable
+	{
+		ErrorPolicy policy = Mockito.mock(ErrorPolicy.class);
+		Mockito.when(policy.onError(Mockito.any(Task.class), Mockito.any(Exception.class), Mockito.anyInt())).thenReturn(ErrorAction.CONTINUE);
+		
+		VirtualTimeSource timeSource = new VirtualTimeSource();
+		RateLimitedErrorPolicy rateLimitedPolicy = new RateLimitedErrorPolicy(policy, 5, 1f, timeSource);
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		taskExecutor.setErrorPolicy(rateLimitedPolicy);
+		
+		// Adds 100 failing tasks and executes them
+		for (int i=0; i<100; i++)
+		{
+			taskExecutor.add(new FailingTask(null));
+		}
+		
+		taskExecutor.execute();
+		
+		// Checks that only 5 errors were let through
+		Mockito.verify(policy, Mockito.times(5)).onError(Mockito.any(Task.class), Mockito.any(Exception.class), Mockito.anyInt());
+		Assert.assertEquals(95, rateLimitedPolicy.getSuppressed(FailingTask.class));
+		
+		// Checks that 5 more are let through in the next interval
+		timeSource.advance(1_000_000_000L);
+		taskExecutor.execute();
+		
+		Mockito.verify(policy, Mockito.times(10)).onError(Mockito.any(Task.class), Mockito.any(Exception.class), Mockito.anyInt());
+		Assert.assertEquals(190, rateLimitedPolicy.getSuppressed(FailingTask.class));
+	}
+	
+	@Test
+	public void testRateLimitedFlush() throws Throwable
+	{
+		ErrorPolicy policy = Mockito.mock(ErrorPolicy.class);
+		Mockito.when(policy.onError(Mockito.any(Task.class), Mockito.any(Exception.class), Mockito.anyInt())).thenReturn(ErrorAction.CONTINUE);
+		
+		ScheduledExecutorService scheduler = Mockito.mock(ScheduledExecutorService.class);
+		
+		VirtualTimeSource timeSource = new VirtualTimeSource();
+		RateLimitedErrorPolicy rateLimitedPolicy = new RateLimitedErrorPolicy(policy, 5, 1f, timeSource, scheduler);
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		taskExecutor.setErrorPolicy(rateLimitedPolicy);
+		
+		// Adds 10 failing tasks and executes them
+		for (int i=0; i<10; i++)
+		{
+			taskExecutor.add(new FailingTask(null));
+		}
+		
+		taskExecutor.execute();
+		
+		// Checks that a single flush was scheduled at the end of the interval
+		ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+		Mockito.verify(scheduler, Mockito.times(1)).schedule(captor.capture(), Mockito.eq(1_000_000_000L), Mockito.eq(TimeUnit.NANOSECONDS));
+		
+		// Runs the flush at the end of the interval, so the next one starts there
+		timeSource.advance(1_000_000_000L);
+		captor.getValue().run();
+		
+		// Checks that 5 errors are let through in the middle of the next interval
+		timeSource.advance(500_000_000L);
+		taskExecutor.execute();
+		
+		Mockito.verify(policy, Mockito.times(10)).onError(Mockito.any(Task.class), Mockito.any(Exception.class), Mockito.anyInt());
+		
+		// Checks that 5 more are let through when the interval started by the flush ends
+		timeSource.advance(500_000_000L);
+		rateLimitedPolicy.flush();
+		taskExecutor.execute();
+		
+		Mockito.verify(policy, Mockito.times(15)).onError(Mockito.any(Task.class), Mockito.any(Exception.class), Mockito.anyInt());
+		Assert.assertEquals(15, rateLimitedPolicy.getSuppressed(FailingTask.class));
+	}
+	
+	@Test
+	public void testAsync() throws Throwable
+	{
+		ErrorPolicy policy = Mockito.mock(ErrorPolicy.class);
+		
+		final List<Runnable> runnableList = new ArrayList<Runnable>();
+		Executor executor = new Executor()
+		{
+			public void execute(Runnable command)
+			{
+				runnableList.add(command);
+			}
+		};
+		
+		AsyncErrorPolicy asyncPolicy = new AsyncErrorPolicy(policy, 2, executor);
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		taskExecutor.setErrorPolicy(asyncPolicy);
+		
+		// Adds 3 failing tasks and executes them
+		for (int i=0; i<3; i++)
+		{
+			taskExecutor.add(new FailingTask(null));
+		}
+		
+		taskExecutor.execute();
+		
+		// Checks that the errors were queued and not handled yet
+		Mockito.verify(policy, Mockito.never()).onError(Mockito.any(Task.class), Mockito.any(Exception.class), Mockito.anyInt());
+		Assert.assertEquals(1, runnableList.size());
+		Assert.assertEquals(2, asyncPolicy.getPending());
+		Assert.assertEquals(1, asyncPolicy.getDropped());
+		
+		// Handles the queue
+		runnableList.get(0).run();
+		
+		// Checks that the queued errors were handled
+		Mockito.verify(policy, Mockito.times(2)).onError(Mockito.any(Task.class), Mockito.any(Exception.class), Mockito.anyInt());
+		Assert.assertEquals(0, asyncPolicy.getPending());
+	}
+	
+	@Test
+	public void testAsyncRejected() throws Throwable
+	{
+		ErrorPolicy policy = Mockito.mock(ErrorPolicy.class);
+		
+		// Executor that was shut down
+		Executor executor = new Executor()
+		{
+			public void execute(Runnable command)
+			{
+				throw new RejectedExecutionException("Shut down.");
+			}
+		};
+		
+		AsyncErrorPolicy asyncPolicy = new AsyncErrorPolicy(policy, 2, executor);
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		taskExecutor.setErrorPolicy(asyncPolicy);
+		
+		// Adds 3 failing tasks and executes them
+		for (int i=0; i<3; i++)
+		{
+			taskExecutor.add(new FailingTask(null));
+		}
+		
+		taskExecutor.execute();
+		
+		// Checks that the errors were dropped without affecting the tasks
+		Mockito.verify(policy, Mockito.never()).onError(Mockito.any(Task.class), Mockito.any(Exception.class), Mockito.anyInt());
+		Assert.assertEquals(0, asyncPolicy.getPending());
+		Assert.assertEquals(3, asyncPolicy.getDropped());
+		Assert.assertEquals(3, taskExecutor.size());
+	}
+	
+	private void testPause(long startTime)
+	{
+		ErrorPolicy policy = Mockito.mock(ErrorPolicy.class);
+		Mockito.when(policy.onError(Mockito.any(Task.class), Mockito.any(Exception.class), Mockito.anyInt())).thenReturn(ErrorAction.CONTINUE);
+		
+		VirtualTimeSource timeSource = new VirtualTimeSource(startTime);
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		taskExecutor.setTimeSource(timeSource);
+		taskExecutor.setErrorPolicy(new FailureLimitPolicy(policy, 1, ErrorAction.pause(1f)));
+		
+		FailingTask task = new FailingTask(null);
+		taskExecutor.add(task);
+		
+		// Fails the first time and pauses
+		taskExecutor.execute();
+		Assert.assertTrue(task.isPaused());
+		
+		// Checks that it is not executed during the pause
+		timeSource.advance(999_999_999L);
+		taskExecutor.execute();
+		Assert.assertEquals(1, task.executions);
+		
+		// Checks that it is executed again after the pause
+		timeSource.advance(1L);
+		taskExecutor.execute();
+		Assert.assertEquals(2, task.executions);
+		Assert.assertEquals(1, taskExecutor.size());
+	}
+	
+	private class FailingTask extends MultipleRunTask
+	{
+		private int executions = 0;
+		private boolean failing = true;
+		
+		public FailingTask(Task next)
+		{
+			setNext(next);
+		}
+		
+		protected void doProcess()
+		{
+			executions++;
+			
+			if (failing) throw new IllegalStateException("Failure " + executions);
+		}
+	}
+}
@@ -0,0 +1,296 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.event.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import es.molabs.task.base.SingleThreadTaskExecutor;
+import es.molabs.task.event.Subscriber;
+import es.molabs.task.event.Subscription;
+import es.molabs.task.event.TaskEvent;
+import es.molabs.task.event.TaskEventPublisher;
+import es.molabs.task.run.MaxRunTask;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TaskEventPublisherTest 
+{
+	// Delivers the events on the publishing thread
+	private static final Executor DIRECT = new Executor()
+	{
+		public void execute(Runnable command)
+		{
+			command.run();
+		}
+	};
+	
+	@Test
+	public void testPublish() throws Throwable
+	{
+		TaskEventPublisher publisher = new TaskEventPublisher(16, 1, DIRECT);
+		TestSubscriber subscriber = new TestSubscriber();
+		publisher.subscribe(subscriber);
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		taskExecutor.setEventPublisher(publisher);
+		
+		// Adds two tasks and executes them
+		taskExecutor.add(new TestTask(1));
+		taskExecutor.add(new TestTask(1));
+		taskExecutor.execute();
+		
+		// Checks that nothing is delivered till requested
+		Assert.assertEquals(0, subscriber.eventList.size());
+		
+		// Requests some events
+		subscriber.subscription.request(4);
+		Assert.assertEquals(4, subscriber.eventList.size());
+		Assert.assertEquals(TaskEvent.ADDED, subscriber.eventList.get(0).getEvent());
+		Assert.assertEquals(TestTask.class, subscriber.eventList.get(0).getTaskClass());
+		
+		// Requests the rest
+		subscriber.subscription.request(10);
+		Assert.assertEquals(6, subscriber.eventList.size());
+		Assert.assertEquals(TaskEvent.REMOVED, subscriber.eventList.get(5).getEvent());
+		
+		// Checks that closing completes the subscriber
+		publisher.close();
+		Assert.assertEquals(true, subscriber.completed);
+		Assert.assertEquals(0, publisher.getSubscriberCount());
+		Assert.assertEquals(0, publisher.getDropped());
+	}
+	
+	@Test
+	public void testDrop() throws Throwable
+	{
+		TaskEventPublisher publisher = new TaskEventPublisher(4, 1, DIRECT);
+		TestSubscriber subscriber = new TestSubscriber();
+		publisher.subscribe(subscriber);
+		
+		// Publishes more events than the buffer holds without demand
+		TestTask task = new TestTask(1);
+		for (int i=0; i<10; i++)
+		{
+			publisher.publish(TaskEvent.EXECUTED, task, i);
+		}
+		
+		// Checks that the newest events were dropped
+		Assert.assertEquals(6, publisher.getDropped());
+		
+		subscriber.subscription.request(Long.MAX_VALUE);
+		Assert.assertEquals(4, subscriber.eventList.size());
+		Assert.assertEquals(3, subscriber.eventList.get(3).getValue());
+	}
+	
+	@Test
+	public void testRejected() throws Throwable
+	{
+		// Executor that was shut down
+		TaskEventPublisher publisher = new TaskEventPublisher(16, 1, new Executor()
+		{
+			public void execute(Runnable command)
+			{
+				throw new RejectedExecutionException("Test rejection.");
+			}
+		});
+		TestSubscriber subscriber = new TestSubscriber();
+		publisher.subscribe(subscriber);
+		subscriber.subscription.request(Long.MAX_VALUE);
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		taskExecutor.setEventPublisher(publisher);
+		
+		// Adds a task and executes it
+		taskExecutor.add(new TestTask(1));
+		taskExecutor.execute();
+		
+		// Checks that the executor was not affected and the events were dropped
+		Assert.assertEquals(0, taskExecutor.size());
+		Assert.assertEquals(3, publisher.getDropped());
+		Assert.assertEquals(0, subscriber.eventList.size());
+	}
+	
+	@Test
+	public void testSample() throws Throwable
+	{
+		TaskEventPublisher publisher = new TaskEventPublisher(8, 2, DIRECT);
+		TestSubscriber subscriber = new TestSubscriber();
+		publisher.subscribe(subscriber);
+		
+		// Publishes more events than the buffer holds without demand
+		TestTask task = new TestTask(1);
+		for (int i=0; i<20; i++)
+		{
+			publisher.publish(TaskEvent.EXECUTED, task, i);
+		}
+		
+		// Checks that the first half was kept and then one of each two events
+		subscriber.subscription.request(Long.MAX_VALUE);
+		Assert.assertEquals(8, subscriber.eventList.size());
+		Assert.assertEquals(3, subscriber.eventList.get(3).getValue());
+		Assert.assertEquals(4, subscriber.eventList.get(4).getValue());
+		Assert.assertEquals(6, subscriber.eventList.get(5).getValue());
+		Assert.assertEquals(12, publisher.getDropped());
+	}
+	
+	@Test
+	public void testInvalidRequest() throws Throwable
+	{
+		TaskEventPublisher publisher = new TaskEventPublisher(4, 1, DIRECT);
+		TestSubscriber subscriber = new TestSubscriber();
+		publisher.subscribe(subscriber);
+		
+		// Checks that an invalid request fails the subscription
+		subscriber.subscription.request(0);
+		Assert.assertTrue(subscriber.error instanceof IllegalArgumentException);
+		Assert.assertEquals(0, publisher.getSubscriberCount());
+	}
+	
+	@Test
+	public void testAsync() throws Throwable
+	{
+		int EVENTS = 1_000;
+		
+		TaskEventPublisher publisher = new TaskEventPublisher(EVENTS);
+		final CountDownLatch latch = new CountDownLatch(EVENTS);
+		final Thread publishingThread = Thread.currentThread();
+		final boolean[] sameThread = new boolean[1];
+		
+		publisher.subscribe(new TestSubscriber()
+		{
+			public void onSubscribe(Subscription subscription)
+			{
+				subscription.request(Long.MAX_VALUE);
+			}
+			
+			public void onNext(TaskEvent item)
+			{
+				if (Thread.currentThread() == publishingThread) sameThread[0] = true;
+				
+				latch.countDown();
+			}
+		});
+		
+		// Publishes the events
+		TestTask task = new TestTask(1);
+		for (int i=0; i<EVENTS; i++)
+		{
+			publisher.publish(TaskEvent.EXECUTED, task, i);
+		}
+		
+		// Checks that all the events are delivered on another thread
+		Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(false, sameThread[0]);
+	}
+	
+	@Test
+	public void testDeliveryThread() throws Throwable
+	{
+		TaskEventPublisher publisher = new TaskEventPublisher(16);
+		final CountDownLatch latch = new CountDownLatch(2);
+		final CountDownLatch completed = new CountDownLatch(1);
+		final Thread[] deliveryThread = new Thread[1];
+		
+		publisher.subscribe(new TestSubscriber()
+		{
+			public void onSubscribe(Subscription subscription)
+			{
+				subscription.request(Long.MAX_VALUE);
+			}
+			
+			public void onNext(TaskEvent item)
+			{
+				deliveryThread[0] = Thread.currentThread();
+				
+				latch.countDown();
+			}
+			
+			public void onComplete()
+			{
+				completed.countDown();
+			}
+		});
+		
+		TestTask task = new TestTask(1);
+		
+		// Publishes an event, waits for the thread to wait again and publishes another one
+		publisher.publish(TaskEvent.EXECUTED, task, 0);
+		Thread.sleep(100);
+		publisher.publish(TaskEvent.EXECUTED, task, 1);
+		
+		// Checks that both events are delivered on a daemon thread
+		Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(true, deliveryThread[0].isDaemon());
+		
+		// Closes the publisher
+		publisher.close();
+		
+		// Checks that the subscriber is completed and the thread stops
+		Assert.assertTrue(completed.await(10, TimeUnit.SECONDS));
+		deliveryThread[0].join(10_000);
+		Assert.assertEquals(false, deliveryThread[0].isAlive());
+		Assert.assertEquals(0, publisher.getSubscriberCount());
+	}
+	
+	private class TestSubscriber implements Subscriber<TaskEvent>
+	{
+		private Subscription subscription = null;
+		private List<TaskEvent> eventList = new ArrayList<TaskEvent>();
+		private Throwable error = null;
+		private boolean completed = false;
+		
+		public void onSubscribe(Subscription subscription)
+		{
+			this.subscription = subscription;
+		}
+		
+		public void onNext(TaskEvent item)
+		{
+			eventList.add(item);
+		}
+		
+		public void onError(Throwable throwable)
+		{
+			error = throwable;
+		}
+		
+		public void onComplete()
+		{
+			completed = true;
+		}
+	}
+	
+	private static class TestTask extends MaxRunTask
+	{
+		public TestTask(int timesToRun)
+		{
+			super(timesToRun);
+		}
+		
+		protected void doProcess() 
+		{
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.journal.test;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import es.molabs.task.base.SingleThreadTaskExecutor;
+import es.molabs.task.journal.TaskJournal;
+import es.molabs.task.journal.TaskJournalReader;
+import es.molabs.task.run.MaxRunTask;
+import es.molabs.task.time.VirtualTimeSource;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TaskJournalTest 
+{
+	@Test
+	public void testJournal() throws Throwable
+	{
+		int TASKS = 3;
+		int TASK_RUNS = 2;
+		long START = 1_000L;
+		long STEP = 1_000_000_000L;
+		
+		Path directory = Files.createTempDirectory("journal");
+		
+		try
+		{
+			// Uses small segments so the journal rolls
+			TaskJournal journal = new TaskJournal(directory, 8);
+			
+			// Uses a virtual time, so the events must have its time
+			VirtualTimeSource timeSource = new VirtualTimeSource(START);
+			
+			SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+			taskExecutor.setTimeSource(timeSource);
+			taskExecutor.setJournal(journal);
+			
+			// Adds the tasks and a task that fails
+			for (int i=0; i<TASKS; i++)
+			{
+				taskExecutor.add(new TestTask(TASK_RUNS, false));
+			}
+			TestTask failing = new TestTask(1, true);
+			taskExecutor.add(failing);
+			
+			// Executes till the tasks are finished
+			for (int i=0; i<TASK_RUNS; i++)
+			{
+				timeSource.advance(STEP);
+				
+				taskExecutor.execute();
+			}
+			
+			taskExecutor.remove(failing);
+			
+			journal.close();
+			
+			// Checks that the journal rolled
+			Assert.assertTrue(journal.getSegment() > 1);
+			
+			// Counts the events
+			int[] events = new int[5];
+			try (TaskJournalReader reader = new TaskJournalReader(directory))
+			{
+				long lastTime = START;
+				int failingId = 0;
+				
+				while (reader.next())
+				{
+					events[reader.getEvent()]++;
+					
+					// Checks that the records are in order, in the virtual time, and have their class
+					Assert.assertTrue(reader.getTime() >= lastTime);
+					Assert.assertTrue(reader.getTime() <= START + TASK_RUNS * STEP);
+					Assert.assertEquals(TestTask.class.getName(), reader.getTaskClass());
+					
+					// The failing task is the last one added
+					if (reader.getEvent() == TaskJournal.ADDED && events[TaskJournal.ADDED] == TASKS + 1) failingId = reader.getTaskId();
+					
+					// Checks the failing task events
+					if (reader.getTaskId() == failingId && reader.getEvent() != TaskJournal.ADDED && reader.getEvent() != TaskJournal.REMOVED)
+					{
+						Assert.assertEquals(TaskJournal.FAILED, reader.getEvent());
+					}
+					
+					lastTime = reader.getTime();
+				}
+			}
+			
+			Assert.assertEquals(TASKS + 1, events[TaskJournal.ADDED]);
+			Assert.assertEquals(TASKS * TASK_RUNS, events[TaskJournal.EXECUTED]);
+			Assert.assertEquals(TASK_RUNS, events[TaskJournal.FAILED]);
+			Assert.assertEquals(TASKS + 1, events[TaskJournal.REMOVED]);
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+	
+	@Test
+	public void testTail() throws Throwable
+	{
+		Path directory = Files.createTempDirectory("journal");
+		
+		try
+		{
+			TaskJournalReader reader = new TaskJournalReader(directory);
+			
+			// Checks that there is nothing to read
+			Assert.assertEquals(false, reader.next());
+			
+			TaskJournal journal = new TaskJournal(directory, 16);
+			Assert.assertEquals(false, reader.next());
+			
+			// Records an event
+			TestTask task = new TestTask(1, false);
+			journal.record(TaskJournal.ADDED, task, 0, 100);
+			
+			// Checks that the reader follows the journal
+			Assert.assertEquals(true, reader.next());
+			Assert.assertEquals(TaskJournal.ADDED, reader.getEvent());
+			Assert.assertEquals(task.getJournalId(), reader.getTaskId());
+			Assert.assertEquals(100, reader.getTime());
+			Assert.assertEquals(false, reader.next());
+			
+			// Records another event
+			journal.record(TaskJournal.EXECUTED, task, 10, 200);
+			
+			Assert.assertEquals(true, reader.next());
+			Assert.assertEquals(TaskJournal.EXECUTED, reader.getEvent());
+			Assert.assertEquals(10, reader.getValue());
+			Assert.assertEquals(200, reader.getTime());
+			
+			journal.close();
+			reader.close();
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+	
+	@Test
+	public void testHole() throws Throwable
+	{
+		Path directory = Files.createTempDirectory("journal");
+		
+		try
+		{
+			TaskJournal journal = new TaskJournal(directory, 16);
+			
+			// Records the events of two tasks
+			TestTask task = new TestTask(1, false);
+			TestTask otherTask = new TestTask(1, false);
+			journal.record(TaskJournal.ADDED, task, 0, 100);
+			journal.record(TaskJournal.EXECUTED, task, 10, 200);
+			
+			int taskId = task.getJournalId();
+			
+			journal.record(TaskJournal.REMOVED, task, 0, 300);
+			journal.record(TaskJournal.ADDED, otherTask, 0, 400);
+			
+			// Checks that the removed task released its id
+			Assert.assertEquals(0, task.getJournalId());
+			
+			// Clears the event of the second record as if it was not written yet, after the header and the class name
+			int record = 2 + (TestTask.class.getName().length() + 31) / 32 + 1;
+			try (FileChannel channel = FileChannel.open(directory.resolve(String.format("journal-%08d.seg", journal.getSegment())), StandardOpenOption.READ, StandardOpenOption.WRITE))
+			{
+				channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()).putInt(record * 32 + 28, 0);
+			}
+			
+			// Checks that the reader waits at the hole while the segment is written
+			TaskJournalReader reader = new TaskJournalReader(directory);
+			Assert.assertEquals(true, reader.next());
+			Assert.assertEquals(TaskJournal.ADDED, reader.getEvent());
+			Assert.assertEquals(false, reader.next());
+			
+			journal.close();
+			
+			// Checks that the hole is skipped once the segment is sealed
+			Assert.assertEquals(true, reader.next());
+			Assert.assertEquals(TaskJournal.REMOVED, reader.getEvent());
+			Assert.assertEquals(taskId, reader.getTaskId());
+			Assert.assertEquals(true, reader.next());
+			Assert.assertEquals(TaskJournal.ADDED, reader.getEvent());
+			Assert.assertEquals(otherTask.getJournalId(), reader.getTaskId());
+			Assert.assertNotEquals(taskId, reader.getTaskId());
+			Assert.assertEquals(false, reader.next());
+			
+			reader.close();
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+	
+	private void delete(Path directory) throws Throwable
+	{
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory))
+		{
+			for (Path path : stream)
+			{
+				Files.delete(path);
+			}
+		}
+		
+		Files.delete(directory);
+	}
+	
+	private static class TestTask extends MaxRunTask
+	{
+		private final boolean fail;
+		
+		public TestTask(int timesToRun, boolean fail)
+		{
+			super(timesToRun);
+			
+			this.fail = fail;
+		}
+		
+		protected void doProcess() 
+		{
+			if (fail) throw new IllegalStateException("Test error.");
+		}
+	}
+}
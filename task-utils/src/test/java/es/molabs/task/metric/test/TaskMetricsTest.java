@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.metric.test;
+
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import es.molabs.task.base.SingleThreadTaskExecutor;
+import es.molabs.task.metric.Histogram;
+import es.molabs.task.metric.TaskClassMetrics;
+import es.molabs.task.metric.TaskMetrics;
+import es.molabs.task.run.MaxRunTask;
+import es.molabs.task.run.MultipleRunTask;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TaskMetricsTest 
+{
+	@Test
+	public void testHistogram() throws Throwable
+	{
+		Histogram histogram = new Histogram();
+		
+		// Records the values from 1 to 10000
+		for (int i=1; i<=10_000; i++)
+		{
+			histogram.record(i);
+		}
+		
+		// Checks the count, mean and maximum
+		Assert.assertEquals(10_000, histogram.getCount());
+		Assert.assertEquals(5_000.5d, histogram.getMean(), 0.001d);
+		Assert.assertEquals(10_000, histogram.getMax());
+		
+		// Checks that the percentiles are within the histogram precision
+		Assert.assertEquals(5_000, histogram.getValueAtPercentile(50d), 5_000 / 16);
+		Assert.assertEquals(9_900, histogram.getValueAtPercentile(99d), 9_900 / 16);
+		Assert.assertEquals(10_000, histogram.getValueAtPercentile(100d));
+		Assert.assertEquals(1, histogram.getValueAtPercentile(0d));
+		
+		// Checks that a copy is not modified by the original
+		Histogram copy = histogram.copy();
+		histogram.reset();
+		
+		Assert.assertEquals(0, histogram.getCount());
+		Assert.assertEquals(10_000, copy.getCount());
+	}
+	
+	@Test
+	public void testHistogramOverflow() throws Throwable
+	{
+		Histogram histogram = new Histogram();
+		
+		// Records a value in the highest bucket and two that are too high for the buckets
+		histogram.record(1L << 36);
+		histogram.record(1L << 40);
+		histogram.record(Long.MAX_VALUE / 2);
+		
+		// Checks that only the values too high are counted as overflow
+		Assert.assertEquals(3, histogram.getCount());
+		Assert.assertEquals(2, histogram.getOverflowCount());
+		
+		// Checks that the bucket keeps its precision and the overflow is reported as the maximum
+		Assert.assertEquals(1L << 36, histogram.getValueAtPercentile(0d), (1L << 36) / 16);
+		Assert.assertEquals(Long.MAX_VALUE / 2, histogram.getValueAtPercentile(100d));
+		
+		// Checks that the overflow is copied and reset
+		Histogram copy = histogram.copy();
+		histogram.reset();
+		
+		Assert.assertEquals(0, histogram.getOverflowCount());
+		Assert.assertEquals(2, copy.getOverflowCount());
+	}
+	
+	@Test
+	public void testExecutorMetrics() throws Throwable
+	{
+		int TIMES = 5;
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		TaskMetrics metrics = new TaskMetrics();
+		taskExecutor.setMetrics(metrics);
+		
+		// Adds a task that runs TIMES times and another that always fails
+		taskExecutor.add(new TestTask(TIMES));
+		taskExecutor.add(new TestErrorTask());
+		
+		for (int i=0; i<TIMES; i++)
+		{
+			taskExecutor.execute();
+		}
+		
+		// Checks the metrics of each class
+		Map<Class<?>, TaskClassMetrics> snapshot = metrics.snapshot();
+		
+		Assert.assertEquals(2, snapshot.size());
+		Assert.assertEquals(TIMES, snapshot.get(TestTask.class).getInvocations());
+		Assert.assertEquals(0, snapshot.get(TestTask.class).getErrors());
+		Assert.assertEquals(TIMES, snapshot.get(TestErrorTask.class).getInvocations());
+		Assert.assertEquals(TIMES, snapshot.get(TestErrorTask.class).getErrors());
+		
+		// Resets the metrics
+		metrics.reset();
+		
+		// Checks that the live metrics are reset but not the snapshot
+		Assert.assertEquals(0, metrics.getMetrics(TestErrorTask.class).getInvocations());
+		Assert.assertEquals(0, metrics.getMetrics(TestErrorTask.class).getErrors());
+		Assert.assertEquals(TIMES, snapshot.get(TestErrorTask.class).getErrors());
+	}
+	
+	private class TestTask extends MaxRunTask
+	{
+		public TestTask(int timesToRun)
+		{
+			super(timesToRun);
+		}
+		
+		protected void doProcess() 
+		{
+		}
+	}
+	
+	private class TestErrorTask extends MultipleRunTask
+	{
+		// The same exception is thrown each time, so the errors can not be told apart by identity
+		private final IllegalStateException error = new IllegalStateException("Test error.");
+		
+		protected void doProcess() 
+		{
+			throw error;
+		}
+	}
+}
@@ -15,6 +15,10 @@
  */
 package es.molabs.task.run.test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
@@ -22,9 +26,14 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import es.molabs.task.TaskExecutor;
 import es.molabs.task.base.SingleThreadTaskExecutor;
+import es.molabs.task.run.BlockingRunTask;
+import es.molabs.task.run.BlockingSingleRunTask;
 import es.molabs.task.run.MaxRunTask;
 import es.molabs.task.run.MultipleRunTask;
+import es.molabs.task.run.RateLimitedTask;
 import es.molabs.task.run.SingleRunTask;
+import es.molabs.task.run.TokenBucket;
+import es.molabs.task.time.VirtualTimeSource;
 
 @RunWith(MockitoJUnitRunner.class)
 public class RunTaskTest 
@@ -99,6 +108,188 @@ public class RunTaskTest
 		Mockito.verify(task, Mockito.times(TIMES)).doProcess();
 	}
 	
+	@Test
+	public void testBlockingSingleRunTask() throws Throwable
+	{
+		TaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		TestBlockingSingleRunTask task = new TestBlockingSingleRunTask();
+		TestSingleRunTask next = Mockito.mock(TestSingleRunTask.class, Mockito.CALLS_REAL_METHODS);
+		task.setNext(next);
+		
+		// Adds the task
+		taskExecutor.add(task);
+		
+		for (int i=0; i<20; i++)
+		{
+			// Executes the tasks
+			taskExecutor.execute();
+		}
+		
+		// Checks that the executor keeps running while the body is blocked
+		Assert.assertTrue(task.isInFlight());
+		Assert.assertFalse(task.isFinished());
+		Assert.assertEquals(1, taskExecutor.size());
+		
+		// Unblocks the body and waits till it completes
+		task.latch.countDown();
+		while (task.isInFlight())
+		{
+			Thread.sleep(1);
+		}
+		
+		// Executes the tasks
+		taskExecutor.execute();
+		taskExecutor.execute();
+		
+		// Checks that the body was run once and the next task was executed
+		Assert.assertTrue(task.isFinished());
+		Assert.assertEquals(1, task.timesRun);
+		Mockito.verify(next, Mockito.times(1)).doProcess();
+	}
+	
+	@Test
+	public void testBlockingRunTaskError() throws Throwable
+	{
+		TaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		TestBlockingRunTask task = new TestBlockingRunTask();
+		
+		// Adds the task
+		taskExecutor.add(task);
+		
+		// Executes the tasks till the error is picked up
+		for (int i=0; i<1_000 && task.getError() == null; i++)
+		{
+			taskExecutor.execute();
+			
+			Thread.sleep(1);
+		}
+		
+		// Checks that the error thrown on the other thread was reported by the task
+		Assert.assertSame(task.error, task.getError());
+		Assert.assertFalse(task.isFinished());
+	}
+	
+	@Test
+	public void testBlockingRunTaskFinishedFromBody() throws Throwable
+	{
+		TaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		TestFinishingBlockingRunTask task = new TestFinishingBlockingRunTask();
+		TestSingleRunTask next = Mockito.mock(TestSingleRunTask.class, Mockito.CALLS_REAL_METHODS);
+		task.setNext(next);
+		
+		// Adds the task
+		taskExecutor.add(task);
+		taskExecutor.execute();
+		
+		// Waits till the body set the task as finished
+		task.finishedLatch.await();
+		
+		// Executes the tasks while the body is still running
+		taskExecutor.execute();
+		
+		// Checks that the task is kept till the body completes
+		Assert.assertFalse(task.isFinished());
+		Assert.assertEquals(1, taskExecutor.size());
+		Mockito.verify(next, Mockito.times(0)).doProcess();
+		
+		// Unblocks the body and waits till it completes
+		task.latch.countDown();
+		while (task.isInFlight())
+		{
+			Thread.sleep(1);
+		}
+		
+		// Executes the tasks
+		taskExecutor.execute();
+		taskExecutor.execute();
+		
+		// Checks that the error of the body was reported and the task finished
+		Assert.assertSame(task.error, task.getError());
+		Assert.assertTrue(task.isFinished());
+		Mockito.verify(next, Mockito.times(1)).doProcess();
+		
+		// Checks that reset clears the state of the body
+		task.reset();
+		Assert.assertFalse(task.isFinished());
+		Assert.assertFalse(task.isInFlight());
+	}
+	
+	@Test
+	public void testRateLimitedTask() throws Throwable
+	{
+		long STEP = 10_000_000L;
+		
+		VirtualTimeSource timeSource = new VirtualTimeSource(1_000_000_000L);
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		taskExecutor.setTimeSource(timeSource);
+		
+		// Two tasks share a bucket of 10 permits per second with bursts of 3
+		TokenBucket bucket = new TokenBucket(10f, 3);
+		TestRateLimitedTask taskOne = new TestRateLimitedTask(bucket);
+		TestRateLimitedTask taskTwo = new TestRateLimitedTask(bucket);
+		
+		taskExecutor.add(taskOne);
+		taskExecutor.add(taskTwo);
+		
+		// Executes twice at the same time
+		taskExecutor.execute(0f);
+		taskExecutor.execute(0f);
+		
+		// Checks that only the burst was processed
+		Assert.assertEquals(3, taskOne.processed + taskTwo.processed);
+		Assert.assertEquals(0, bucket.getAvailable(timeSource.nanoTime()));
+		
+		// Executes during one second
+		for (int i=0; i<100; i++)
+		{
+			timeSource.advance(STEP);
+			taskExecutor.execute(STEP / 1_000_000_000f);
+		}
+		
+		// Checks that the tasks were processed at the rate of the bucket
+		Assert.assertEquals(13, taskOne.processed + taskTwo.processed);
+	}
+	
+	@Test
+	public void testTokenBucket() throws Throwable
+	{
+		int THREADS = 4;
+		final int BURST = 1_000;
+		
+		final TokenBucket bucket = new TokenBucket(1f, BURST);
+		final AtomicInteger acquired = new AtomicInteger();
+		
+		// Several threads take permits at the same time
+		Thread[] threads = new Thread[THREADS];
+		for (int i=0; i<THREADS; i++)
+		{
+			threads[i] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					for (int j=0; j<BURST; j++)
+					{
+						if (bucket.tryAcquire(0)) acquired.incrementAndGet();
+					}
+				}
+			});
+			threads[i].start();
+		}
+		
+		for (int i=0; i<THREADS; i++)
+		{
+			threads[i].join();
+		}
+		
+		// Checks that exactly the burst was taken
+		Assert.assertEquals(BURST, acquired.get());
+		Assert.assertEquals(1_000_000_000L, bucket.getTimeToAcquire(0));
+		Assert.assertEquals(1, bucket.getAvailable(1_000_000_000L));
+	}
+	
 	private class TestSingleRunTask extends SingleRunTask
 	{
 		protected void doProcess() 
@@ -124,4 +315,61 @@ public class RunTaskTest
 		{
 		}		
 	}
+	
+	private class TestBlockingSingleRunTask extends BlockingSingleRunTask
+	{
+		private final CountDownLatch latch = new CountDownLatch(1);
+		
+		private volatile int timesRun = 0;
+		
+		protected void doProcess() throws Exception 
+		{
+			latch.await();
+			
+			timesRun++;
+		}
+	}
+	
+	private class TestBlockingRunTask extends BlockingRunTask
+	{
+		private final Exception error = new Exception("Test error.");
+		
+		protected void doProcess() throws Exception 
+		{
+			throw error;
+		}
+	}
+	
+	private class TestFinishingBlockingRunTask extends BlockingRunTask
+	{
+		private final CountDownLatch finishedLatch = new CountDownLatch(1);
+		private final CountDownLatch latch = new CountDownLatch(1);
+		
+		private final Exception error = new Exception("Test error.");
+		
+		protected void doProcess() throws Exception 
+		{
+			setFinished(true);
+			finishedLatch.countDown();
+			
+			latch.await();
+			
+			throw error;
+		}
+	}
+	
+	private class TestRateLimitedTask extends RateLimitedTask
+	{
+		private int processed = 0;
+		
+		public TestRateLimitedTask(TokenBucket bucket)
+		{
+			super(bucket);
+		}
+		
+		protected void doProcess()
+		{
+			processed++;
+		}
+	}
 }
@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import es.molabs.task.Task;
+import es.molabs.task.TaskAction;
+import es.molabs.task.Tasks;
+import es.molabs.task.base.SingleThreadTaskExecutor;
+import es.molabs.task.time.VirtualTimeSource;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TasksTest 
+{
+	// Time in nanoseconds
+	private static final long STEP = 50_000_000L;
+	
+	@Test
+	public void testEvery() throws Throwable
+	{
+		Counter counter = new Counter();
+		
+		// Runs for a second
+		run(Tasks.every(0.25f, counter), 20);
+		
+		// Checks that it ran at 0, 0.25, 0.5, 0.75 and 1 seconds
+		Assert.assertEquals(5, counter.count);
+	}
+	
+	@Test
+	public void testEveryWithDelay() throws Throwable
+	{
+		Counter counter = new Counter();
+		
+		// Runs for a second
+		run(Tasks.every(0.5f, 0.25f, counter), 20);
+		
+		// Checks that it ran at 0.5, 0.75 and 1 seconds
+		Assert.assertEquals(3, counter.count);
+	}
+	
+	@Test
+	public void testAfter() throws Throwable
+	{
+		final List<Float> deltaList = new ArrayList<Float>();
+		
+		// Runs for a second
+		SingleThreadTaskExecutor taskExecutor = run(Tasks.after(0.5f, new TaskAction()
+		{
+			public void run(float delta)
+			{
+				deltaList.add(delta);
+			}
+		}), 20);
+		
+		// Checks that it ran once with the time since the last execution and finished
+		Assert.assertEquals(1, deltaList.size());
+		Assert.assertEquals(STEP / 1_000_000_000f, deltaList.get(0), 0.001f);
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	@Test
+	public void testTimes() throws Throwable
+	{
+		Counter counter = new Counter();
+		
+		SingleThreadTaskExecutor taskExecutor = run(Tasks.times(3, counter), 10);
+		
+		// Checks that it ran three times and finished
+		Assert.assertEquals(3, counter.count);
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	@Test
+	public void testOnce() throws Throwable
+	{
+		Counter counter = new Counter();
+		
+		SingleThreadTaskExecutor taskExecutor = run(Tasks.once(counter), 10);
+		
+		// Checks that it ran once and finished
+		Assert.assertEquals(1, counter.count);
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	@Test
+	public void testSequence() throws Throwable
+	{
+		final StringBuilder order = new StringBuilder();
+		
+		// Runs a sequence of two tasks twice
+		run(Tasks.sequence(2, Tasks.once(new Runnable()
+		{
+			public void run()
+			{
+				order.append('a');
+			}
+		}), Tasks.times(2, new Runnable()
+		{
+			public void run()
+			{
+				order.append('b');
+			}
+		})), 10);
+		
+		// Checks the order
+		Assert.assertEquals("abbabb", order.toString());
+	}
+	
+	@Test
+	public void testParallel() throws Throwable
+	{
+		Counter counterOne = new Counter();
+		Counter counterTwo = new Counter();
+		
+		SingleThreadTaskExecutor taskExecutor = run(Tasks.parallel(Tasks.once(counterOne), Tasks.times(3, counterTwo)), 10);
+		
+		// Checks that both ran together and the group finished with the longest one
+		Assert.assertEquals(1, counterOne.count);
+		Assert.assertEquals(3, counterTwo.count);
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	private SingleThreadTaskExecutor run(Task task, int steps)
+	{
+		VirtualTimeSource timeSource = new VirtualTimeSource();
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		taskExecutor.setTimeSource(timeSource);
+		taskExecutor.add(task);
+		
+		// Executes at the start and after each step
+		taskExecutor.execute();
+		
+		for (int i=0; i<steps; i++)
+		{
+			timeSource.advance(STEP);
+			taskExecutor.execute();
+		}
+		
+		return taskExecutor;
+	}
+	
+	private class Counter implements Runnable
+	{
+		private int count = 0;
+		
+		public void run()
+		{
+			count++;
+		}
+	}
+}
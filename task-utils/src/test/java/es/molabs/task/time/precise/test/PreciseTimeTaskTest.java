@@ -15,6 +15,7 @@
  */
 package es.molabs.task.time.precise.test;
 
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
@@ -22,6 +23,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import es.molabs.task.TaskExecutor;
 import es.molabs.task.base.SingleThreadTaskExecutor;
+import es.molabs.task.time.VirtualTimeSource;
 import es.molabs.task.time.precise.PreciseMaxTimeTask;
 import es.molabs.task.time.precise.PreciseRepeatTimeTask;
 import es.molabs.task.time.precise.PreciseTimeTask;
@@ -170,6 +172,34 @@ public class PreciseTimeTaskTest
 		Mockito.verify(taskTwo, Mockito.times(0)).doProcess(Mockito.anyFloat());
 	}
 	
+	@Test
+	public void testTimeToProcess() throws Throwable
+	{
+		VirtualTimeSource timeSource = new VirtualTimeSource();
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		taskExecutor.setTimeSource(timeSource);
+		
+		TestWaitTimeTask waitTask = new TestWaitTimeTask(10f);
+		TestRepeatTimeTask repeatTask = new TestRepeatTimeTask(5f, 1f);
+		
+		// Adds the tasks
+		taskExecutor.add(waitTask);
+		taskExecutor.add(repeatTask);
+		
+		// Checks that the tasks that were not executed yet have to be executed right away to start their time
+		Assert.assertEquals(0f, waitTask.getTimeToProcess(), 0f);
+		Assert.assertEquals(0f, repeatTask.getTimeToProcess(), 0f);
+		Assert.assertEquals(0f, taskExecutor.getTimeToProcess(), 0f);
+		
+		// Executes the tasks
+		taskExecutor.execute();
+		
+		// Checks that their time is counted from the first execution
+		Assert.assertEquals(10f, waitTask.getTimeToProcess(), 0f);
+		Assert.assertEquals(5f, repeatTask.getTimeToProcess(), 0f);
+		Assert.assertEquals(5f, taskExecutor.getTimeToProcess(), 0f);
+	}
+	
 	private class TestTimeTask extends PreciseTimeTask
 	{
 		protected void doProcess(float delta) 
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.time.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import es.molabs.task.TimeSource;
+import es.molabs.task.base.SequenceTask;
+import es.molabs.task.base.SingleThreadTaskExecutor;
+import es.molabs.task.time.precise.PreciseRepeatTimeTask;
+import es.molabs.task.time.precise.PreciseTimeTask;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TimeSourceTest 
+{
+	@Test
+	public void testTickTime() throws Throwable
+	{
+		int TASKS = 100;
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		TestTimeSource timeSource = new TestTimeSource();
+		taskExecutor.setTimeSource(timeSource);
+		
+		// Adds the tasks, half of them inside a sequence
+		TestTimeTask[] tasks = new TestTimeTask[TASKS];
+		for (int i=0; i<TASKS; i++)
+		{
+			tasks[i] = new TestTimeTask();
+		}
+		
+		for (int i=0; i<TASKS/2; i++)
+		{
+			taskExecutor.add(tasks[i]);
+		}
+		
+		taskExecutor.add(new SequenceTask(tasks[TASKS/2]));
+		
+		timeSource.reads = 0;
+		
+		// Executes the tasks
+		taskExecutor.execute();
+		
+		// Checks that the clock was read only at the beginning and the end of the tick
+		Assert.assertEquals(2, timeSource.reads);
+		
+		// Checks that every task read the same time
+		for (int i=0; i<=TASKS/2; i++)
+		{
+			Assert.assertEquals(taskExecutor.getTimeSource().nanoTime(), tasks[i].time);
+		}
+	}
+	
+	@Test
+	public void testRepeatTimeTask() throws Throwable
+	{
+		long PERIOD = 100_000_000;
+		
+		SingleThreadTaskExecutor taskExecutor = new SingleThreadTaskExecutor();
+		
+		TestTimeSource timeSource = new TestTimeSource();
+		taskExecutor.setTimeSource(timeSource);
+		
+		TestRepeatTimeTask task = new TestRepeatTimeTask(PERIOD / 1_000_000_000f);
+		taskExecutor.add(task);
+		
+		// Executes the tasks advancing the time a tenth of the period each time
+		for (int i=0; i<100; i++)
+		{
+			timeSource.time += PERIOD / 10;
+			
+			taskExecutor.execute();
+		}
+		
+		// Checks that the task was processed once per period
+		Assert.assertEquals(10, task.timesProcessed);
+	}
+	
+	private class TestTimeSource implements TimeSource
+	{
+		private long time = 1;
+		private int reads = 0;
+		
+		public long nanoTime()
+		{
+			reads++;
+			
+			return time;
+		}
+	}
+	
+	private class TestTimeTask extends PreciseTimeTask
+	{
+		private long time = 0;
+		
+		protected void doProcess(float delta) 
+		{
+			time = getTimeSource().nanoTime();
+		}
+	}
+	
+	private class TestRepeatTimeTask extends PreciseRepeatTimeTask
+	{
+		private int timesProcessed = 0;
+		
+		public TestRepeatTimeTask(float period)
+		{
+			super(period);
+		}
+		
+		protected void doProcess(float delta) 
+		{
+			timesProcessed++;
+		}
+	}
+}
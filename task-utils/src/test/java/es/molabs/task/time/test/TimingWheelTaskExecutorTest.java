@@ -0,0 +1,266 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.time.test;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import es.molabs.task.time.TimingWheelTaskExecutor;
+import es.molabs.task.time.VirtualTimeSource;
+import es.molabs.task.time.precise.PreciseWaitTimeTask;
+import es.molabs.task.time.simple.SimpleTimeTask;
+import es.molabs.task.time.simple.SimpleWaitTimeTask;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TimingWheelTaskExecutorTest 
+{
+	@Test
+	public void testWaitTimeTask() throws Throwable
+	{
+		float WAIT_TIME = 300f;
+		
+		TimingWheelTaskExecutor taskExecutor = new TimingWheelTaskExecutor();
+		
+		TestWaitTimeTask task = Mockito.spy(new TestWaitTimeTask(WAIT_TIME));
+		
+		// Adds the task
+		taskExecutor.add(task);
+		
+		// Executes the tasks till one second before the wait time
+		for (int i=1; i<WAIT_TIME; i++)
+		{
+			taskExecutor.execute(1f);
+		}
+		
+		// Checks that the task is waiting and was only visited in the first call
+		Assert.assertEquals(1, taskExecutor.size());
+		Assert.assertEquals(1, taskExecutor.getWaitingSize());
+		Mockito.verify(task, Mockito.times(1)).execute(Mockito.anyFloat());
+		Mockito.verify(task, Mockito.times(0)).doProcess(Mockito.anyFloat());
+		
+		// Executes the tasks
+		taskExecutor.execute(1f);
+		
+		// Checks that the task was processed with the time passed since the first call and removed
+		Mockito.verify(task, Mockito.times(2)).execute(Mockito.anyFloat());
+		Mockito.verify(task, Mockito.times(1)).doProcess(WAIT_TIME - 1f);
+		Mockito.verify(task, Mockito.times(1)).onDispose();
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	@Test
+	public void testManyWaitTimeTasks() throws Throwable
+	{
+		int TASKS = 2_000;
+		float DELTA = 0.016f;
+		
+		TimingWheelTaskExecutor taskExecutor = new TimingWheelTaskExecutor();
+		
+		// Creates and adds the tasks with random wait times of up to 10 minutes
+		Random random = new Random(0);
+		TestWaitTimeTask[] tasks = new TestWaitTimeTask[TASKS];
+		for (int i=0; i<TASKS; i++)
+		{
+			tasks[i] = new TestWaitTimeTask(random.nextFloat() * 600f);
+			
+			taskExecutor.add(tasks[i]);
+		}
+		
+		// Executes the tasks till all of them are finished
+		int calls = 0;
+		while (taskExecutor.size() > 0 && calls < 50_000)
+		{
+			taskExecutor.execute(DELTA);
+			
+			calls++;
+		}
+		
+		// Checks that every task was processed once, after its wait time and not later than one call
+		Assert.assertEquals(0, taskExecutor.size());
+		for (int i=0; i<TASKS; i++)
+		{
+			Assert.assertEquals(1, tasks[i].processed);
+			Assert.assertTrue(tasks[i].processedAt >= tasks[i].getWaitTime());
+			Assert.assertTrue(tasks[i].processedAt - tasks[i].getWaitTime() < DELTA * 2);
+		}
+	}
+	
+	@Test
+	public void testEveryTimeTask() throws Throwable
+	{
+		TimingWheelTaskExecutor taskExecutor = new TimingWheelTaskExecutor();
+		
+		TestTimeTask task = Mockito.spy(new TestTimeTask());
+		
+		// Adds the task
+		taskExecutor.add(task);
+		
+		for (int i=0; i<10; i++)
+		{
+			taskExecutor.execute(1f);
+		}
+		
+		// Checks that the task was executed every time and never waited in the wheel
+		Mockito.verify(task, Mockito.times(10)).doProcess(1f);
+		Assert.assertEquals(0, taskExecutor.getWaitingSize());
+	}
+	
+	@Test
+	public void testRemoveClear() throws Throwable
+	{
+		TimingWheelTaskExecutor taskExecutor = new TimingWheelTaskExecutor();
+		
+		TestWaitTimeTask taskOne = Mockito.spy(new TestWaitTimeTask(10f));
+		TestWaitTimeTask taskTwo = Mockito.spy(new TestWaitTimeTask(10f));
+		
+		// Adds the tasks and executes them so they are moved to the wheel
+		taskExecutor.add(taskOne);
+		taskExecutor.add(taskTwo);
+		taskExecutor.execute(1f);
+		Assert.assertEquals(2, taskExecutor.getWaitingSize());
+		
+		// Removes the first task
+		taskExecutor.remove(taskOne);
+		
+		// Checks that it was removed
+		Mockito.verify(taskOne, Mockito.times(1)).onDispose();
+		Assert.assertEquals(1, taskExecutor.size());
+		
+		// Clears the executor
+		taskExecutor.clear();
+		
+		// Checks that it was removed
+		Mockito.verify(taskTwo, Mockito.times(1)).onDispose();
+		Assert.assertEquals(0, taskExecutor.size());
+		
+		// Checks that the removed tasks are not executed anymore
+		for (int i=0; i<20; i++)
+		{
+			taskExecutor.execute(1f);
+		}
+		
+		Mockito.verify(taskOne, Mockito.times(0)).doProcess(Mockito.anyFloat());
+		Mockito.verify(taskTwo, Mockito.times(0)).doProcess(Mockito.anyFloat());
+	}
+	
+	@Test
+	public void testPreciseWaitTimeTask() throws Throwable
+	{
+		VirtualTimeSource timeSource = new VirtualTimeSource();
+		TimingWheelTaskExecutor taskExecutor = new TimingWheelTaskExecutor();
+		taskExecutor.setTimeSource(timeSource);
+		
+		TestPreciseWaitTimeTask task = new TestPreciseWaitTimeTask(10f);
+		
+		// Adds the task and executes it so it starts counting its time
+		taskExecutor.add(task);
+		taskExecutor.execute(1f);
+		
+		long startTime = timeSource.nanoTime();
+		
+		// Executes with a fixed delta that is behind the time source till the task is processed
+		for (int i=0; i<20 && task.processedAt == 0; i++)
+		{
+			timeSource.advance(2_000_000_000L);
+			taskExecutor.execute(1f);
+		}
+		
+		// Checks that it waited in the wheel and was processed after the wait time of the time source
+		Assert.assertEquals(startTime + 10_000_000_000L, task.processedAt);
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	@Test(timeout=10_000)
+	public void testLongWait() throws Throwable
+	{
+		float DAY = 86_400f;
+		
+		// Wheel with a resolution of 1 nanosecond, so a day is 8.64 * 10^13 ticks
+		TimingWheelTaskExecutor taskExecutor = new TimingWheelTaskExecutor(1);
+		
+		TestWaitTimeTask taskOne = new TestWaitTimeTask(DAY);
+		TestWaitTimeTask taskTwo = new TestWaitTimeTask(2 * DAY);
+		
+		// Adds the tasks and executes them so they are moved to the wheel
+		taskExecutor.add(taskOne);
+		taskExecutor.add(taskTwo);
+		taskExecutor.execute(0f);
+		Assert.assertEquals(2, taskExecutor.getWaitingSize());
+		
+		// Checks that the wheel jumps the empty ticks to each deadline
+		taskExecutor.execute(DAY);
+		Assert.assertEquals(1, taskOne.processed);
+		Assert.assertEquals(0, taskTwo.processed);
+		Assert.assertEquals(DAY, taskExecutor.getTimeToProcess(), 0.01f);
+		
+		taskExecutor.execute(DAY);
+		Assert.assertEquals(1, taskTwo.processed);
+		Assert.assertEquals(0, taskExecutor.size());
+	}
+	
+	private class TestTimeTask extends SimpleTimeTask
+	{
+		protected void doProcess(float delta) 
+		{		
+		}	
+	}
+	
+	private class TestWaitTimeTask extends SimpleWaitTimeTask
+	{
+		private int processed = 0;
+		private float processedAt = 0f;
+		
+		protected TestWaitTimeTask(float waitTime) 
+		{
+			super(waitTime);
+		}
+		
+		public float getWaitTime()
+		{
+			return super.getWaitTime();
+		}
+
+		protected void doProcess(float delta) 
+		{
+			processed++;
+			processedAt = getTimePassed();
+		}
+		
+		protected void onDispose()
+		{			
+		}
+	}
+	
+	private class TestPreciseWaitTimeTask extends PreciseWaitTimeTask
+	{
+		private long processedAt = 0;
+		
+		protected TestPreciseWaitTimeTask(float waitTime) 
+		{
+			super(waitTime);
+		}
+		
+		protected void doProcess(float delta) 
+		{
+			processedAt = getTimeSource().nanoTime();
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.task.time.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import es.molabs.task.base.AbstractTaskExecutor;
+import es.molabs.task.base.SingleThreadTaskExecutor;
+import es.molabs.task.time.TimingWheelTaskExecutor;
+import es.molabs.task.time.VirtualTimeSource;
+import es.molabs.task.time.precise.PreciseRepeatTimeTask;
+import es.molabs.task.time.precise.PreciseWaitTimeTask;
+
+@RunWith(MockitoJUnitRunner.class)
+public class VirtualTimeSourceTest 
+{
+	// Times in nanoseconds
+	private static final long DAY = 86_400_000_000_000L;
+	private static final long HOUR = 3_600_000_000_000L;
+	private static final long RESOLUTION = 1_000_000L;
+	
+	// Times in seconds
+	private static final float PERIOD = 60f;
+	private static final float WAIT_TIME = 86_400f;
+	private static final float NEXT_WAIT_TIME = 3_600f;
+	
+	// Time where the runs start, in nanoseconds
+	private static final long START = 1;
+	
+	@Test
+	public void testFastForward() throws Throwable
+	{
+		testFastForward(new SingleThreadTaskExecutor(), 0);
+		testFastForward(new TimingWheelTaskExecutor(), RESOLUTION);
+	}
+	
+	@Test
+	public void testReproducible() throws Throwable
+	{
+		List<Long> firstRepeatTimes = new ArrayList<Long>();
+		List<Long> firstWaitTimes = new ArrayList<Long>();
+		List<Long> secondRepeatTimes = new ArrayList<Long>();
+		List<Long> secondWaitTimes = new ArrayList<Long>();
+		
+		// Runs two days twice
+		long firstExecutions = run(new TimingWheelTaskExecutor(), firstRepeatTimes, firstWaitTimes);
+		long secondExecutions = run(new TimingWheelTaskExecutor(), secondRepeatTimes, secondWaitTimes);
+		
+		// Checks that both runs are the same
+		Assert.assertEquals(firstExecutions, secondExecutions);
+		Assert.assertEquals(firstRepeatTimes, secondRepeatTimes);
+		Assert.assertEquals(firstWaitTimes, secondWaitTimes);
+	}
+	
+	@Test
+	public void testFirstExecution() throws Throwable
+	{
+		testFirstExecution(new SingleThreadTaskExecutor(), 0);
+		testFirstExecution(new TimingWheelTaskExecutor(), RESOLUTION);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testBackwards() throws Throwable
+	{
+		new VirtualTimeSource().advance(-1);
+	}
+	
+	private void testFastForward(AbstractTaskExecutor taskExecutor, long resolution)
+	{
+		List<Long> repeatTimes = new ArrayList<Long>();
+		List<Long> waitTimes = new ArrayList<Long>();
+		
+		// Runs two days
+		long executions = run(taskExecutor, repeatTimes, waitTimes);
+		
+		// Checks that the wait task was processed once a day after the start
+		Assert.assertEquals(1, waitTimes.size());
+		assertDeadline(START + DAY, waitTimes.get(0), WAIT_TIME, resolution);
+		
+		// Checks that the repeat task was processed about every minute
+		int repeatCount = repeatTimes.size();
+		Assert.assertTrue("Processed " + repeatCount + " times.", repeatCount >= 2 * 24 * 60 - 1 && repeatCount <= 2 * 24 * 60 + 1);
+		
+		// Checks that the executor was only executed around the deadlines and not every millisecond
+		Assert.assertTrue("Executed " + executions + " times.", executions <= 2 * (repeatCount + 1));
+	}
+	
+	private void testFirstExecution(AbstractTaskExecutor taskExecutor, long resolution)
+	{
+		List<Long> waitTimes = new ArrayList<Long>();
+		
+		VirtualTimeSource timeSource = new VirtualTimeSource(START);
+		taskExecutor.setTimeSource(timeSource);
+		
+		// Adds a wait task that was never executed and continues with another one
+		TestWaitTimeTask task = new TestWaitTimeTask(WAIT_TIME, waitTimes);
+		task.setNext(new TestWaitTimeTask(NEXT_WAIT_TIME, waitTimes));
+		taskExecutor.add(task);
+		
+		// Runs two days without executing the tasks before
+		timeSource.run(taskExecutor, 2 * DAY, 2 * DAY);
+		
+		// Checks that the first task was processed a day after the start and the next one an hour after it
+		Assert.assertEquals(2, waitTimes.size());
+		assertDeadline(START + DAY, waitTimes.get(0), WAIT_TIME, resolution);
+		assertDeadline(waitTimes.get(0) + HOUR, waitTimes.get(1), NEXT_WAIT_TIME, resolution);
+	}
+	
+	private void assertDeadline(long deadline, long time, float waitTime, long resolution)
+	{
+		// The tasks report the time left in seconds, so they are precise to the float precision of their wait time
+		long precision = (long) Math.ceil(Math.ulp(waitTime) * 1_000_000_000d);
+		
+		// The timing wheel rounds the deadlines up to its resolution
+		Assert.assertTrue("Processed at " + time + " instead of " + deadline + ".", time >= deadline - precision && time <= deadline + precision + resolution);
+	}
+	
+	private long run(AbstractTaskExecutor taskExecutor, List<Long> repeatTimes, List<Long> waitTimes)
+	{
+		VirtualTimeSource timeSource = new VirtualTimeSource(START);
+		taskExecutor.setTimeSource(timeSource);
+		
+		// Adds the tasks without executing them, they start counting their time in the first step
+		taskExecutor.add(new TestRepeatTimeTask(PERIOD, repeatTimes));
+		taskExecutor.add(new TestWaitTimeTask(WAIT_TIME, waitTimes));
+		
+		return timeSource.run(taskExecutor, 2 * DAY, HOUR);
+	}
+	
+	private class TestRepeatTimeTask extends PreciseRepeatTimeTask
+	{
+		private List<Long> processTimes = null;
+		
+		public TestRepeatTimeTask(float period, List<Long> processTimes)
+		{
+			super(period);
+			
+			this.processTimes = processTimes;
+		}
+		
+		protected void doProcess(float delta) 
+		{
+			processTimes.add(getTimeSource().nanoTime());
+		}
+	}
+	
+	private class TestWaitTimeTask extends PreciseWaitTimeTask
+	{
+		private List<Long> processTimes = null;
+		
+		public TestWaitTimeTask(float waitTime, List<Long> processTimes)
+		{
+			super(waitTime);
+			
+			this.processTimes = processTimes;
+		}
+		
+		protected void doProcess(float delta) 
+		{
+			processTimes.add(getTimeSource().nanoTime());
+		}
+	}
+}